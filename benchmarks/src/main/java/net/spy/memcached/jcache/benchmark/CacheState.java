@@ -0,0 +1,98 @@
+package net.spy.memcached.jcache.benchmark;
+
+import com.thimbleware.jmemcached.LocalCacheElement;
+import com.thimbleware.jmemcached.MemCacheDaemon;
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.jcache.OverflowPolicy;
+import net.spy.memcached.jcache.SpyCache;
+import net.spy.memcached.jcache.SpyMutableConfiguration;
+import net.spy.memcached.jcache.spi.SpyCachingProvider;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * a cache on an embedded memcached, seeded with keyCount values of valueSize characters
+ *
+ * @author linux_china
+ */
+@State(Scope.Benchmark)
+public class CacheState {
+    static final int PORT = 11311;
+    static final int BATCH_SIZE = 10;
+
+    @Param({"1000", "100000"})
+    public int keyCount;
+
+    @Param({"100", "10000"})
+    public int valueSize;
+
+    MemCacheDaemon<LocalCacheElement> daemon;
+    CacheManager cacheManager;
+    Cache<String, String> cache;
+    String[] keys;
+    String value;
+    Set<String> batchKeys;
+    Map<String, String> batchValues;
+
+    @Setup
+    public void setUp() throws Exception {
+        daemon = EmbeddedMemcached.start(PORT, keyCount * 2, (long) keyCount * valueSize * 4);
+        cacheManager = new SpyCachingProvider().getCacheManager(URI.create("cache:memcached:localhost:" + PORT), null);
+        cache = cacheManager.createCache("benchmark", configure(new SpyMutableConfiguration<String, String>()));
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "key" + i;
+        }
+        char[] chars = new char[valueSize];
+        Random random = new Random(42);
+        for (int i = 0; i < valueSize; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        value = new String(chars);
+        //seed synchronously, one set at a time
+        MemcachedClient client = cache.unwrap(MemcachedClient.class);
+        SpyCache<String, String> spyCache = cache.unwrap(SpyCache.class);
+        for (String key : keys) {
+            client.set(spyCache.getCompositeKey(key), 0, value).get();
+        }
+        batchKeys = new LinkedHashSet<String>();
+        batchValues = new HashMap<String, String>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batchKeys.add(keys[i]);
+            batchValues.put(keys[i], value);
+        }
+    }
+
+    /**
+     * configure the benchmarked cache, the asynchronous writes are bounded so that a write benchmark
+     * measures the throughput of memcached instead of filling the queues of the client
+     *
+     * @param configuration configuration
+     * @return configuration
+     */
+    protected SpyMutableConfiguration<String, String> configure(SpyMutableConfiguration<String, String> configuration) {
+        return configuration.setMaxInFlightOperations(64).setInFlightOverflowPolicy(OverflowPolicy.BLOCK);
+    }
+
+    @TearDown
+    public void tearDown() {
+        cacheManager.close();
+        daemon.stop();
+    }
+
+    String key(int index) {
+        return keys[index % keyCount];
+    }
+}
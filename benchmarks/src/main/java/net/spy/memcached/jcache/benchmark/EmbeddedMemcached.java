@@ -0,0 +1,38 @@
+package net.spy.memcached.jcache.benchmark;
+
+import com.thimbleware.jmemcached.CacheImpl;
+import com.thimbleware.jmemcached.Key;
+import com.thimbleware.jmemcached.LocalCacheElement;
+import com.thimbleware.jmemcached.MemCacheDaemon;
+import com.thimbleware.jmemcached.storage.CacheStorage;
+import com.thimbleware.jmemcached.storage.hash.ConcurrentLinkedHashMap;
+
+import java.net.InetSocketAddress;
+
+/**
+ * in-process jmemcached daemon the benchmarks run against, as in the tests of the library
+ *
+ * @author linux_china
+ */
+public final class EmbeddedMemcached {
+
+    private EmbeddedMemcached() {
+    }
+
+    /**
+     * start a daemon
+     *
+     * @param port     port
+     * @param maxItems max number of items
+     * @param maxBytes max number of bytes
+     * @return started daemon
+     */
+    public static MemCacheDaemon<LocalCacheElement> start(int port, int maxItems, long maxBytes) {
+        MemCacheDaemon<LocalCacheElement> daemon = new MemCacheDaemon<LocalCacheElement>();
+        CacheStorage<Key, LocalCacheElement> storage = ConcurrentLinkedHashMap.create(ConcurrentLinkedHashMap.EvictionPolicy.FIFO, maxItems, maxBytes);
+        daemon.setCache(new CacheImpl(storage));
+        daemon.setAddr(new InetSocketAddress("localhost", port));
+        daemon.start();
+        return daemon;
+    }
+}
@@ -0,0 +1,75 @@
+package net.spy.memcached.jcache.benchmark;
+
+import net.spy.memcached.jcache.FaultInjectingMemcached;
+import net.spy.memcached.jcache.SpyMutableConfiguration;
+import net.spy.memcached.jcache.spi.SpyCachingProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * latency distribution of get against a node with injected latency and dropped packets, the percentiles of
+ * the sample time mode show the tail
+ *
+ * @author linux_china
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FaultInjectionBenchmark {
+    static final int PORT = 11313;
+    static final int KEY_COUNT = 1000;
+
+    @State(Scope.Benchmark)
+    public static class FaultyNode {
+        @Param({"0", "1"})
+        public long latencyMillis;
+
+        @Param({"0", "0.01"})
+        public double dropRate;
+
+        FaultInjectingMemcached node;
+        CacheManager cacheManager;
+        Cache<String, String> cache;
+
+        @Setup
+        public void setUp() throws Exception {
+            node = new FaultInjectingMemcached(PORT);
+            node.start();
+            cacheManager = new SpyCachingProvider().getCacheManager(URI.create("cache:memcached:localhost:" + PORT), null);
+            cache = cacheManager.createCache("faults", new SpyMutableConfiguration<String, String>());
+            for (int i = 0; i < KEY_COUNT; i++) {
+                cache.put("key" + i, "value" + i);
+            }
+            node.setLatency(latencyMillis, 0);
+            node.setDropRate(dropRate, 200);
+        }
+
+        @TearDown
+        public void tearDown() {
+            cacheManager.close();
+            node.stop();
+        }
+    }
+
+    @Benchmark
+    public String get(FaultyNode node, KeyCursor cursor) {
+        return node.cache.get("key" + (cursor.next() % KEY_COUNT));
+    }
+}
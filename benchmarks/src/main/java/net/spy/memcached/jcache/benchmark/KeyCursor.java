@@ -0,0 +1,19 @@
+package net.spy.memcached.jcache.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * per thread pseudo random walk over the keys, cheaper than a random generator
+ *
+ * @author linux_china
+ */
+@State(Scope.Thread)
+public class KeyCursor {
+    private int next = System.identityHashCode(this) & 0xffff;
+
+    int next() {
+        next = next * 1103515245 + 12345;
+        return next >>> 1;
+    }
+}
@@ -0,0 +1,65 @@
+package net.spy.memcached.jcache.benchmark;
+
+import net.spy.memcached.jcache.SpyMutableConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.cache.configuration.Factory;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * throughput of puts raising updated events to a synchronous or an asynchronous listener
+ *
+ * @author linux_china
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ListenerState extends CacheState {
+        @Param({"true", "false"})
+        public boolean synchronous;
+
+        final AtomicLong events = new AtomicLong();
+
+        @Override
+        protected SpyMutableConfiguration<String, String> configure(SpyMutableConfiguration<String, String> configuration) {
+            final CacheEntryUpdatedListener<String, String> listener = new CacheEntryUpdatedListener<String, String>() {
+                public void onUpdated(Iterable<CacheEntryEvent<? extends String, ? extends String>> updated) {
+                    for (CacheEntryEvent<? extends String, ? extends String> ignored : updated) {
+                        events.incrementAndGet();
+                    }
+                }
+            };
+            configuration.addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<String, String>(
+                    new Factory<CacheEntryListener<? super String, ? super String>>() {
+                        public CacheEntryListener<? super String, ? super String> create() {
+                            return listener;
+                        }
+                    }, null, false, synchronous));
+            return super.configure(configuration);
+        }
+    }
+
+    @Benchmark
+    public void putWithListener(ListenerState state, KeyCursor cursor) {
+        state.cache.put(state.key(cursor.next()), state.value);
+    }
+}
@@ -0,0 +1,68 @@
+package net.spy.memcached.jcache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.EntryProcessorException;
+import javax.cache.processor.MutableEntry;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * throughput of the operations of SpyCache against an embedded jmemcached, run the thread counts with -t
+ *
+ * @author linux_china
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpyCacheBenchmark {
+    private static final EntryProcessor<String, String, Integer> LENGTH = new EntryProcessor<String, String, Integer>() {
+        public Integer process(MutableEntry<String, String> entry, Object... arguments) throws EntryProcessorException {
+            return entry.exists() ? entry.getValue().length() : 0;
+        }
+    };
+
+    @Benchmark
+    public String get(CacheState state, KeyCursor cursor) {
+        return state.cache.get(state.key(cursor.next()));
+    }
+
+    @Benchmark
+    public Map<String, String> getAll(CacheState state) {
+        return state.cache.getAll(state.batchKeys);
+    }
+
+    @Benchmark
+    public void put(CacheState state, KeyCursor cursor) {
+        state.cache.put(state.key(cursor.next()), state.value);
+    }
+
+    @Benchmark
+    public void putAll(CacheState state) {
+        state.cache.putAll(state.batchValues);
+    }
+
+    @Benchmark
+    public boolean putIfAbsent(CacheState state, KeyCursor cursor) {
+        return state.cache.putIfAbsent(state.key(cursor.next()), state.value);
+    }
+
+    @Benchmark
+    public boolean replace(CacheState state, KeyCursor cursor) {
+        return state.cache.replace(state.key(cursor.next()), state.value);
+    }
+
+    @Benchmark
+    public Integer invoke(CacheState state, KeyCursor cursor) {
+        return state.cache.invoke(state.key(cursor.next()), LENGTH);
+    }
+}
@@ -0,0 +1,109 @@
+package net.spy.memcached.jcache.loadgen;
+
+import java.util.Random;
+
+/**
+ * popularity of the keys, chooses the index of the next key in [0, keyCount)
+ *
+ * @author linux_china
+ */
+public abstract class KeyChooser {
+
+    /**
+     * @param random random of the calling thread
+     * @return index of the next key
+     */
+    public abstract int next(Random random);
+
+    /**
+     * parse a key distribution
+     *
+     * @param distribution uniform or zipfian, optionally with its constant such as zipfian:0.99
+     * @param keyCount     number of keys
+     * @return key chooser
+     */
+    public static KeyChooser parse(String distribution, int keyCount) {
+        if (distribution.equals("uniform")) {
+            return new Uniform(keyCount);
+        }
+        if (distribution.startsWith("zipfian")) {
+            int colon = distribution.indexOf(':');
+            double theta = colon < 0 ? Zipfian.DEFAULT_THETA : Double.parseDouble(distribution.substring(colon + 1));
+            return new Zipfian(keyCount, theta);
+        }
+        throw new IllegalArgumentException("unknown key distribution " + distribution);
+    }
+
+    /**
+     * every key is equally popular
+     */
+    public static class Uniform extends KeyChooser {
+        private final int keyCount;
+
+        public Uniform(int keyCount) {
+            this.keyCount = keyCount;
+        }
+
+        public int next(Random random) {
+            return random.nextInt(keyCount);
+        }
+
+        @Override
+        public String toString() {
+            return "uniform";
+        }
+    }
+
+    /**
+     * key of rank i chosen with a probability proportional to 1/i^theta, key 0 is the most popular.
+     * Uses the rejection free algorithm of Gray et al. "Quickly generating billion-record synthetic databases"
+     * as YCSB does, the zeta constant is computed once in O(keyCount).
+     */
+    public static class Zipfian extends KeyChooser {
+        public static final double DEFAULT_THETA = 0.99;
+        private final int keyCount;
+        private final double theta;
+        private final double zetaN;
+        private final double alpha;
+        private final double eta;
+        private final double halfPowTheta;
+
+        public Zipfian(int keyCount, double theta) {
+            if (theta <= 0 || theta >= 1) {
+                throw new IllegalArgumentException("zipfian constant should be in (0, 1)");
+            }
+            this.keyCount = keyCount;
+            this.theta = theta;
+            this.zetaN = zeta(keyCount, theta);
+            this.alpha = 1 / (1 - theta);
+            this.halfPowTheta = Math.pow(0.5, theta);
+            double zeta2 = 1 + halfPowTheta;
+            this.eta = (1 - Math.pow(2.0 / keyCount, 1 - theta)) / (1 - zeta2 / zetaN);
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        public int next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + halfPowTheta) {
+                return 1;
+            }
+            return (int) Math.min(keyCount - 1, (long) (keyCount * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        @Override
+        public String toString() {
+            return "zipfian:" + theta;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package net.spy.memcached.jcache.loadgen;
+
+import com.thimbleware.jmemcached.LocalCacheElement;
+import com.thimbleware.jmemcached.MemCacheDaemon;
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.jcache.OverflowPolicy;
+import net.spy.memcached.jcache.SpyCache;
+import net.spy.memcached.jcache.SpyMutableConfiguration;
+import net.spy.memcached.jcache.benchmark.EmbeddedMemcached;
+import net.spy.memcached.jcache.management.LatencyHistogram;
+import net.spy.memcached.jcache.management.LatencySnapshot;
+import net.spy.memcached.jcache.spi.SpyCachingProvider;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * open loop load generator driving SpyCache through the JCache API with a read/write mix, Zipfian or uniform
+ * key popularity and a value size distribution at a target rate.
+ * <p/>
+ * Each thread sends at a fixed rate on its own schedule, the latency of an operation is measured from its
+ * intended start time rather than from when it was actually sent, so a stall is charged to all the operations
+ * it delayed instead of hiding them (coordinated omission). The service time from the actual start is reported
+ * next to it. Run it with the shaded jar of the benchmarks module:
+ * <pre>
+ * java -cp target/benchmarks.jar net.spy.memcached.jcache.loadgen.LoadGenerator --rate=20000 --readRatio=0.8
+ * </pre>
+ *
+ * @author linux_china
+ */
+public class LoadGenerator {
+    private static final int EMBEDDED_PORT = 11312;
+    private static final int VALUE_POOL_SIZE = 1024;
+    private final LoadOptions options;
+    private final KeyChooser keyChooser;
+    private final String[] keys;
+    private final String[] values;
+    private final LatencyHistogram getLatency = new LatencyHistogram("get");
+    private final LatencyHistogram getService = new LatencyHistogram("get");
+    private final LatencyHistogram putLatency = new LatencyHistogram("put");
+    private final LatencyHistogram putService = new LatencyHistogram("put");
+    private final AtomicLong getHits = new AtomicLong();
+    private final AtomicLong getErrors = new AtomicLong();
+    private final AtomicLong putErrors = new AtomicLong();
+    private volatile boolean recording;
+    private volatile boolean running = true;
+
+    public LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.keyChooser = KeyChooser.parse(options.keyDistribution, options.keys);
+        this.keys = new String[options.keys];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+        }
+        //a pool of values drawn from the distribution, so that writes do not allocate them
+        ValueSizes valueSizes = ValueSizes.parse(options.valueSize);
+        Random random = new Random(options.seed);
+        this.values = new String[VALUE_POOL_SIZE];
+        for (int i = 0; i < values.length; i++) {
+            char[] chars = new char[valueSizes.next(random)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) ('a' + random.nextInt(26));
+            }
+            values[i] = new String(chars);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        MemCacheDaemon<LocalCacheElement> daemon = null;
+        String uri = options.server;
+        if (options.server.equals("embedded")) {
+            daemon = EmbeddedMemcached.start(EMBEDDED_PORT, options.keys * 2, 1L << 30);
+            uri = "cache:memcached:localhost:" + EMBEDDED_PORT;
+        }
+        CacheManager cacheManager = new SpyCachingProvider().getCacheManager(URI.create(uri), null);
+        try {
+            SpyMutableConfiguration<String, String> configuration = new SpyMutableConfiguration<String, String>()
+                    .setMaxInFlightOperations(options.maxInFlight).setInFlightOverflowPolicy(OverflowPolicy.BLOCK);
+            Cache<String, String> cache = cacheManager.createCache("loadgen", configuration);
+            String report = new LoadGenerator(options).run(cache);
+            System.out.print(report);
+        } finally {
+            cacheManager.close();
+            if (daemon != null) {
+                daemon.stop();
+            }
+        }
+    }
+
+    /**
+     * preload the keys, warm up, then run and write the report
+     *
+     * @param cache cache
+     * @return the report
+     * @throws Exception if the run is interrupted or the report can not be written
+     */
+    public String run(final Cache<String, String> cache) throws Exception {
+        if (options.preload) {
+            preload(cache);
+        }
+        final CountDownLatch done = new CountDownLatch(options.threads);
+        Thread[] workers = new Thread[options.threads];
+        final long start = System.nanoTime();
+        for (int i = 0; i < workers.length; i++) {
+            final int index = i;
+            final Random random = new Random(options.seed + i + 1);
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        work(cache, random, start, index);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "loadgen-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        TimeUnit.SECONDS.sleep(options.warmupSeconds);
+        resetHistograms();
+        recording = true;
+        long measureStart = System.nanoTime();
+        TimeUnit.SECONDS.sleep(options.durationSeconds);
+        recording = false;
+        long elapsed = System.nanoTime() - measureStart;
+        running = false;
+        done.await();
+        String report = report(elapsed);
+        writeReport(report);
+        return report;
+    }
+
+    private void preload(Cache<String, String> cache) throws Exception {
+        //one synchronous set at a time, jmemcached does not keep up with long pipelines
+        MemcachedClient client = cache.unwrap(MemcachedClient.class);
+        SpyCache<?, ?> spyCache = cache.unwrap(SpyCache.class);
+        for (int i = 0; i < keys.length; i++) {
+            client.set(spyCache.getCompositeKey(keys[i]), 0, values[i % values.length]).get();
+        }
+    }
+
+    private void work(Cache<String, String> cache, Random random, long start, int index) {
+        long period = options.rate > 0 ? TimeUnit.SECONDS.toNanos(1) * options.threads / options.rate : 0;
+        //spread the schedules of the threads over one period, so the requests are not sent in bursts of threads
+        long intended = start + period * index / options.threads;
+        while (running) {
+            if (period > 0) {
+                intended += period;
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            String key = keys[keyChooser.next(random)];
+            boolean read = random.nextDouble() < options.readRatio;
+            long sent = System.nanoTime();
+            if (period == 0) {
+                intended = sent;
+            }
+            boolean error = false;
+            try {
+                if (read) {
+                    if (cache.get(key) != null && recording) {
+                        getHits.incrementAndGet();
+                    }
+                } else {
+                    cache.put(key, values[random.nextInt(values.length)]);
+                }
+            } catch (RuntimeException e) {
+                error = true;
+            }
+            long end = System.nanoTime();
+            if (recording) {
+                if (read) {
+                    getLatency.record(end - intended);
+                    getService.record(end - sent);
+                    if (error) {
+                        getErrors.incrementAndGet();
+                    }
+                } else {
+                    putLatency.record(end - intended);
+                    putService.record(end - sent);
+                    if (error) {
+                        putErrors.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private void resetHistograms() {
+        getLatency.reset();
+        getService.reset();
+        putLatency.reset();
+        putService.reset();
+    }
+
+    /**
+     * the report lists the options then the results as name=value lines in a fixed order, latencies are
+     * in microseconds
+     *
+     * @param elapsedNanos duration of the measurement
+     * @return report
+     */
+    private String report(long elapsedNanos) {
+        StringWriter buffer = new StringWriter();
+        PrintWriter out = new PrintWriter(buffer);
+        out.println("# spymemcached-jcache load generator report, latencies in microseconds");
+        out.println("date=" + new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+        out.println("java=" + System.getProperty("java.version"));
+        out.println("processors=" + Runtime.getRuntime().availableProcessors());
+        for (Map.Entry<String, Object> option : options.toMap().entrySet()) {
+            out.println(option.getKey() + "=" + option.getValue());
+        }
+        long count = getLatency.getCount() + putLatency.getCount();
+        double seconds = elapsedNanos / 1e9;
+        out.println("achievedRate=" + Math.round(count / seconds));
+        out.println("get.hits=" + getHits.get());
+        out.println("get.errors=" + getErrors.get());
+        out.println("put.errors=" + putErrors.get());
+        print(out, "get.latency", getLatency.getSnapshot());
+        print(out, "get.service", getService.getSnapshot());
+        print(out, "put.latency", putLatency.getSnapshot());
+        print(out, "put.service", putService.getSnapshot());
+        out.flush();
+        return buffer.toString();
+    }
+
+    private static void print(PrintWriter out, String prefix, LatencySnapshot snapshot) {
+        out.println(prefix + ".count=" + snapshot.getCount());
+        out.println(prefix + ".mean=" + snapshot.getMean());
+        out.println(prefix + ".p50=" + snapshot.getPercentile50());
+        out.println(prefix + ".p90=" + snapshot.getPercentile90());
+        out.println(prefix + ".p99=" + snapshot.getPercentile99());
+        out.println(prefix + ".p999=" + snapshot.getPercentile999());
+        out.println(prefix + ".max=" + snapshot.getMax());
+    }
+
+    private void writeReport(String report) throws IOException {
+        File directory = new File(options.reportDir);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create " + directory);
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        FileWriter writer = new FileWriter(new File(directory, options.name + "-" + timestamp + ".properties"));
+        try {
+            writer.write(report);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net.spy.memcached.jcache.loadgen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * options of a load generator run, given on the command line as --name=value
+ *
+ * @author linux_china
+ */
+public class LoadOptions {
+    /**
+     * name of the run, prefix of the report file
+     */
+    String name = "run";
+    /**
+     * embedded to start jmemcached in the JVM, or the uri of the cache manager such as memcached://localhost:11211
+     */
+    String server = "embedded";
+    int threads = 4;
+    /**
+     * target rate in operations per second over all the threads, 0 to run closed loop as fast as possible
+     */
+    int rate = 10000;
+    double readRatio = 0.9;
+    int keys = 100000;
+    String keyDistribution = "zipfian";
+    String valueSize = "100-4096";
+    int warmupSeconds = 10;
+    int durationSeconds = 60;
+    boolean preload = true;
+    int maxInFlight = 64;
+    long seed = 42;
+    String reportDir = "reports";
+
+    /**
+     * parse the command line
+     *
+     * @param args arguments as --name=value
+     * @return options
+     */
+    public static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("argument should be --name=value: " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (name.equals("name")) {
+                options.name = value;
+            } else if (name.equals("server")) {
+                options.server = value;
+            } else if (name.equals("threads")) {
+                options.threads = Integer.parseInt(value);
+            } else if (name.equals("rate")) {
+                options.rate = Integer.parseInt(value);
+            } else if (name.equals("readRatio")) {
+                options.readRatio = Double.parseDouble(value);
+            } else if (name.equals("keys")) {
+                options.keys = Integer.parseInt(value);
+            } else if (name.equals("keyDistribution")) {
+                options.keyDistribution = value;
+            } else if (name.equals("valueSize")) {
+                options.valueSize = value;
+            } else if (name.equals("warmupSeconds")) {
+                options.warmupSeconds = Integer.parseInt(value);
+            } else if (name.equals("durationSeconds")) {
+                options.durationSeconds = Integer.parseInt(value);
+            } else if (name.equals("preload")) {
+                options.preload = Boolean.parseBoolean(value);
+            } else if (name.equals("maxInFlight")) {
+                options.maxInFlight = Integer.parseInt(value);
+            } else if (name.equals("seed")) {
+                options.seed = Long.parseLong(value);
+            } else if (name.equals("reportDir")) {
+                options.reportDir = value;
+            } else {
+                throw new IllegalArgumentException("unknown option " + name);
+            }
+        }
+        if (options.threads < 1 || options.keys < 1 || options.readRatio < 0 || options.readRatio > 1) {
+            throw new IllegalArgumentException("threads and keys should be positive, readRatio in [0, 1]");
+        }
+        return options;
+    }
+
+    /**
+     * @return the options in a fixed order, written at the head of the report so that runs can be compared
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("name", name);
+        map.put("server", server);
+        map.put("threads", threads);
+        map.put("rate", rate);
+        map.put("readRatio", readRatio);
+        map.put("keys", keys);
+        map.put("keyDistribution", keyDistribution);
+        map.put("valueSize", valueSize);
+        map.put("warmupSeconds", warmupSeconds);
+        map.put("durationSeconds", durationSeconds);
+        map.put("preload", preload);
+        map.put("maxInFlight", maxInFlight);
+        map.put("seed", seed);
+        return map;
+    }
+}
@@ -0,0 +1,72 @@
+package net.spy.memcached.jcache.loadgen;
+
+import java.util.Random;
+
+/**
+ * distribution of the sizes of the written values
+ *
+ * @author linux_china
+ */
+public abstract class ValueSizes {
+
+    /**
+     * @param random random of the calling thread
+     * @return size of the next value in characters
+     */
+    public abstract int next(Random random);
+
+    /**
+     * parse a value size distribution
+     *
+     * @param distribution fixed size such as 1024, uniform range such as 100-4096, or exponential with its mean
+     *                     and cap such as exp:1024:65536
+     * @return value sizes
+     */
+    public static ValueSizes parse(String distribution) {
+        final String description = distribution;
+        if (distribution.startsWith("exp:")) {
+            String[] parts = distribution.split(":");
+            final double mean = Double.parseDouble(parts[1]);
+            final int cap = parts.length > 2 ? Integer.parseInt(parts[2]) : Integer.MAX_VALUE;
+            return new ValueSizes() {
+                public int next(Random random) {
+                    return (int) Math.min(cap, 1 + (long) (-mean * Math.log(1 - random.nextDouble())));
+                }
+
+                @Override
+                public String toString() {
+                    return description;
+                }
+            };
+        }
+        int dash = distribution.indexOf('-');
+        if (dash > 0) {
+            final int min = Integer.parseInt(distribution.substring(0, dash));
+            final int max = Integer.parseInt(distribution.substring(dash + 1));
+            if (max < min) {
+                throw new IllegalArgumentException("empty value size range " + distribution);
+            }
+            return new ValueSizes() {
+                public int next(Random random) {
+                    return min + random.nextInt(max - min + 1);
+                }
+
+                @Override
+                public String toString() {
+                    return description;
+                }
+            };
+        }
+        final int size = Integer.parseInt(distribution);
+        return new ValueSizes() {
+            public int next(Random random) {
+                return size;
+            }
+
+            @Override
+            public String toString() {
+                return description;
+            }
+        };
+    }
+}
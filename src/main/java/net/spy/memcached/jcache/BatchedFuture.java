@@ -0,0 +1,112 @@
+package net.spy.memcached.jcache;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * future of one key submitted to a {@link Batcher}, completed when its batch is executed
+ *
+ * @author linux_china
+ */
+public class BatchedFuture<K, V> implements Future<V> {
+    private static final int PENDING = 0;
+    private static final int COMPLETING = 1;
+    private static final int COMPLETED = 2;
+    private static final int FAILED = 3;
+    private static final int CANCELLED = 4;
+    private final K key;
+    private final CountDownLatch latch = new CountDownLatch(1);
+    /**
+     * leaves PENDING once by a CAS, the value or exception is written in COMPLETING and published by the terminal state
+     */
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private V value;
+    private Throwable exception;
+
+    public BatchedFuture(K key) {
+        this.key = key;
+    }
+
+    public K getKey() {
+        return key;
+    }
+
+    /**
+     * complete the future, ignored when it is already done
+     *
+     * @param value value
+     * @return true if the future was completed by this call
+     */
+    public boolean complete(V value) {
+        if (!state.compareAndSet(PENDING, COMPLETING)) {
+            return false;
+        }
+        this.value = value;
+        state.set(COMPLETED);
+        latch.countDown();
+        return true;
+    }
+
+    /**
+     * fail the future, ignored when it is already done
+     *
+     * @param exception cause of the failure
+     * @return true if the future was failed by this call
+     */
+    public boolean fail(Throwable exception) {
+        if (!state.compareAndSet(PENDING, COMPLETING)) {
+            return false;
+        }
+        this.exception = exception;
+        state.set(FAILED);
+        latch.countDown();
+        return true;
+    }
+
+    /**
+     * the batch is shared with other callers, so cancel only stops waiting for it
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!state.compareAndSet(PENDING, CANCELLED)) {
+            return false;
+        }
+        latch.countDown();
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    public boolean isDone() {
+        return state.get() != PENDING;
+    }
+
+    public V get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return getValue();
+    }
+
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException("Timeout waiting for batched key " + key);
+        }
+        return getValue();
+    }
+
+    private V getValue() throws ExecutionException {
+        switch (state.get()) {
+            case CANCELLED:
+                throw new CancellationException("Cancelled waiting for batched key " + key);
+            case FAILED:
+                throw new ExecutionException(exception);
+            default:
+                return value;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package net.spy.memcached.jcache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * micro batcher merging the keys submitted by concurrent callers within a short window, or up to a batch size,
+ * into one batch. A full batch is flushed on the submitting thread, otherwise the first key of a batch
+ * schedules the flush at the end of the window. Without scheduler the submitter of the first key leads: it waits
+ * for the window and executes on its own thread only the keys pending when the window closed, the keys
+ * submitted afterwards are led by their first submitter, so a caller is not held by the batches of others,
+ * which suits batches blocking for a long time.
+ *
+ * @author linux_china
+ */
+public abstract class Batcher<K, V> {
+    private final int batchSize;
+    private final long windowMicros;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentLinkedQueue<BatchedFuture<K, V>> pending = new ConcurrentLinkedQueue<BatchedFuture<K, V>>();
+    private final AtomicInteger pendingSize = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * construct a batcher
+     *
+     * @param batchSize    maximal keys of a batch
+     * @param windowMicros time to wait for more keys
+     * @param scheduler    scheduler of the window flushes, null to flush on the thread of the first submitter
+     */
+    protected Batcher(int batchSize, long windowMicros, ScheduledExecutorService scheduler) {
+        this.batchSize = batchSize;
+        this.windowMicros = windowMicros;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * submit a key to the next batch
+     *
+     * @param key key
+     * @return future completed when the batch is executed
+     */
+    public BatchedFuture<K, V> submit(K key) {
+        BatchedFuture<K, V> future = new BatchedFuture<K, V>(key);
+        pending.offer(future);
+        if (pendingSize.incrementAndGet() >= batchSize) {
+            if (scheduler != null) {
+                flush();
+            } else {
+                execute(batchSize);
+            }
+        } else if (scheduled.compareAndSet(false, true)) {
+            if (scheduler != null) {
+                scheduler.schedule(flushTask, windowMicros, TimeUnit.MICROSECONDS);
+            } else {
+                try {
+                    TimeUnit.MICROSECONDS.sleep(windowMicros);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                //the keys submitted from now on elect their own leader
+                scheduled.set(false);
+                execute(pendingSize.get());
+            }
+        }
+        return future;
+    }
+
+    /**
+     * execute all pending keys
+     */
+    public void flush() {
+        scheduled.set(false);
+        execute(Integer.MAX_VALUE);
+    }
+
+    /**
+     * execute pending keys in batches
+     *
+     * @param count maximal keys to execute
+     */
+    private void execute(int count) {
+        int remaining = count;
+        while (remaining > 0) {
+            List<BatchedFuture<K, V>> batch = new ArrayList<BatchedFuture<K, V>>(Math.min(Math.min(batchSize, remaining), Math.max(1, pendingSize.get())));
+            BatchedFuture<K, V> future;
+            while (batch.size() < batchSize && batch.size() < remaining && (future = pending.poll()) != null) {
+                pendingSize.decrementAndGet();
+                batch.add(future);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            remaining -= batch.size();
+            try {
+                execute(batch);
+            } catch (Throwable e) {
+                for (BatchedFuture<K, V> batched : batch) {
+                    batched.fail(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * execute a batch, every future of the batch must be completed or failed
+     *
+     * @param batch batched futures
+     */
+    protected abstract void execute(List<BatchedFuture<K, V>> batch);
+}
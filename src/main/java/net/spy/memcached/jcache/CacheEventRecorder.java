@@ -0,0 +1,46 @@
+package net.spy.memcached.jcache;
+
+/**
+ * recorder of the operations of a cache as profiling events, such as Java Flight Recorder events.
+ * <p/>
+ * {@link #begin(Kind)} returns null when the kind of event is not recorded, the cache passes the returned
+ * event back to an end method, so that an operation costs one check when nothing is recorded.
+ *
+ * @author linux_china
+ */
+public interface CacheEventRecorder {
+
+    /**
+     * kinds of recorded operations
+     */
+    enum Kind {
+        GET, BULK_GET, PUT, REPLACE, LOAD, WRITE_THROUGH, LISTENER_DISPATCH
+    }
+
+    /**
+     * begin an event
+     *
+     * @param kind kind of operation
+     * @return event, null if the kind is not recorded
+     */
+    Object begin(Kind kind);
+
+    /**
+     * end the event of an operation on one key
+     *
+     * @param event        event returned by begin, may be null
+     * @param compositeKey memcached key
+     * @param value        value written or read, encoded to get its size only when the event is committed
+     * @param outcome      outcome of the operation
+     */
+    void end(Object event, String compositeKey, Object value, String outcome);
+
+    /**
+     * end the event of an operation on several entries
+     *
+     * @param event   event returned by begin, may be null
+     * @param count   number of entries
+     * @param outcome outcome of the operation
+     */
+    void end(Object event, int count, String outcome);
+}
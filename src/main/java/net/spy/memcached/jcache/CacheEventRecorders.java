@@ -0,0 +1,63 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.transcoders.Transcoder;
+
+/**
+ * factory of the {@link CacheEventRecorder}s, the Java Flight Recorder recorder is loaded by reflection
+ * only when the jdk.jfr API is present, so the library still runs on JVMs without it
+ *
+ * @author linux_china
+ */
+public final class CacheEventRecorders {
+    /**
+     * recorder recording nothing
+     */
+    public static final CacheEventRecorder NOOP = new CacheEventRecorder() {
+        public Object begin(Kind kind) {
+            return null;
+        }
+
+        public void end(Object event, String compositeKey, Object value, String outcome) {
+        }
+
+        public void end(Object event, int count, String outcome) {
+        }
+    };
+    private static final String JFR_RECORDER = "net.spy.memcached.jcache.jfr.JfrCacheEventRecorder";
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    private CacheEventRecorders() {
+        //prevent construction
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * create the recorder of a cache
+     *
+     * @param cacheName   cache name
+     * @param nodeLocator node locator, to find the node owning a key
+     * @param transcoder  transcoder, to get the size of a value
+     * @param jfr         record Java Flight Recorder events if the JVM supports them
+     * @return recorder, NOOP if events are not recorded
+     */
+    public static CacheEventRecorder create(String cacheName, NodeLocatorCache nodeLocator, Transcoder<Object> transcoder, boolean jfr) {
+        if (!jfr || !JFR_AVAILABLE) {
+            return NOOP;
+        }
+        try {
+            return (CacheEventRecorder) Class.forName(JFR_RECORDER)
+                    .getConstructor(String.class, NodeLocatorCache.class, Transcoder.class)
+                    .newInstance(cacheName, nodeLocator, transcoder);
+        } catch (Throwable e) {
+            return NOOP;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package net.spy.memcached.jcache;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * probabilistic early expiration of the values of a cache, in the style of XFetch (Vattani et al., "Optimal
+ * Probabilistic Cache Stampede Prevention"), and jitter of their time to live.
+ * <p/>
+ * A read recomputes the value early when now - computeTime * beta * ln(random) reaches the expiry time, so the
+ * chance rises as expiry approaches and the slower the value is to compute, the earlier. With a beta of 1 a
+ * single recompute happens in most cases before expiry, larger favours earlier recomputes. The compute time of
+ * a value written without loading it is the moving average of the recent loads.
+ *
+ * @author linux_china
+ */
+public class EarlyExpiration {
+    private final double beta;
+    private final double ttlJitter;
+    private final Random random = new Random();
+    private final AtomicLong earlyRecomputes = new AtomicLong();
+    private volatile double meanComputeMillis;
+
+    /**
+     * construct an early expiration
+     *
+     * @param beta      weight of the compute time, 0 to only jitter the time to live
+     * @param ttlJitter max fraction of the time to live removed at random, in [0, 1)
+     */
+    public EarlyExpiration(double beta, double ttlJitter) {
+        this.beta = beta;
+        this.ttlJitter = ttlJitter;
+    }
+
+    /**
+     * @return true if the values are stamped for the early recompute
+     */
+    public boolean isEarlyRecompute() {
+        return beta > 0;
+    }
+
+    /**
+     * shorten a time to live by a random fraction so that the values written together do not expire together
+     *
+     * @param seconds time to live in seconds
+     * @return jittered time to live, at least 1
+     */
+    public long jitter(long seconds) {
+        if (ttlJitter <= 0) {
+            return seconds;
+        }
+        return Math.max(1, seconds - (long) (seconds * ttlJitter * random.nextDouble()));
+    }
+
+    /**
+     * decide if a read recomputes its value early
+     *
+     * @param stamped    stamped value
+     * @param nowMillis current time in milliseconds
+     * @return true if the value should be recomputed
+     */
+    public boolean shouldRecompute(StampedValue stamped, long nowMillis) {
+        if (beta <= 0) {
+            return false;
+        }
+        //-ln(u) is exponentially distributed with mean 1
+        double gap = -stamped.getComputeMillis() * beta * Math.log(1 - random.nextDouble());
+        if (nowMillis + gap >= stamped.getExpiryMillis()) {
+            earlyRecomputes.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * record the time a load took, folded in the moving average
+     *
+     * @param nanos load time in nanoseconds
+     */
+    public void recordComputeTime(long nanos) {
+        double millis = nanos / 1e6;
+        double mean = meanComputeMillis;
+        meanComputeMillis = mean == 0 ? millis : mean + (millis - mean) / 8;
+    }
+
+    /**
+     * @param computeNanos compute time of the value in nanoseconds, negative if unknown
+     * @return compute time in milliseconds to store with the value
+     */
+    public int getComputeMillis(long computeNanos) {
+        if (computeNanos >= 0) {
+            return (int) Math.min(Integer.MAX_VALUE, computeNanos / 1000000);
+        }
+        return (int) Math.round(meanComputeMillis);
+    }
+
+    /**
+     * @return number of reads which triggered an early recompute
+     */
+    public long getEarlyRecomputes() {
+        return earlyRecomputes.get();
+    }
+
+    /**
+     * @return moving average of the load times in milliseconds
+     */
+    public double getMeanComputeMillis() {
+        return meanComputeMillis;
+    }
+}
@@ -0,0 +1,273 @@
+package net.spy.memcached.jcache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * hierarchical timer wheel tracking the expiry time of keys, with a tick of one second like memcached.
+ * <p/>
+ * Four wheels of 64 slots cover 64 seconds, 68 minutes, 3 days and 194 days, a key is put in the slot of
+ * the finest wheel covering its delay and cascades to finer wheels as time advances, so scheduling, cancelling
+ * and advancing one tick are O(1). Expiries beyond the coarsest wheel are not tracked. The wheels are striped
+ * by key so that concurrent writes rarely contend, the number of tracked keys is capped over all the stripes
+ * and keys are sampled by hash code.
+ *
+ * @param <K> the type of keys
+ */
+public class ExpiryTimerWheel<K> {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long RANGE = 1L << (BITS * LEVELS);
+    private static final int MAX_STRIPES = 16;
+    private final Stripe<K>[] stripes;
+    private final int maxKeys;
+    private final int sampleThreshold;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong untracked = new AtomicLong();
+    private final Object advanceLock = new Object();
+    private long currentTick;
+
+    /**
+     * construct a timer wheel
+     *
+     * @param maxKeys     max number of tracked keys
+     * @param sampleRate  fraction of the keys tracked, in (0, 1]
+     * @param nowSeconds current time in seconds
+     */
+    public ExpiryTimerWheel(int maxKeys, double sampleRate, long nowSeconds) {
+        this.maxKeys = maxKeys;
+        this.sampleThreshold = (int) Math.min(Integer.MAX_VALUE, Math.ceil(sampleRate * (1L << 31)));
+        this.currentTick = nowSeconds;
+        int count = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors(), 2) - 1) << 1);
+        this.stripes = newStripes(count);
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<K>(nowSeconds);
+        }
+    }
+
+    /**
+     * track the expiry of a key, replacing its previous expiry
+     *
+     * @param key             key
+     * @param expirySeconds expiry time in seconds, 0 for eternal
+     * @return true if the key is tracked
+     */
+    public boolean schedule(K key, long expirySeconds) {
+        int hash = spread(key);
+        Stripe<K> stripe = stripes[hash & (stripes.length - 1)];
+        synchronized (stripe) {
+            Node<K> node = stripe.nodes.get(key);
+            if (expirySeconds <= 0 || expirySeconds - stripe.currentTick >= RANGE) {
+                if (node != null) {
+                    stripe.remove(node);
+                    size.decrementAndGet();
+                }
+                if (expirySeconds > 0) {
+                    //beyond the coarsest wheel
+                    untracked.incrementAndGet();
+                }
+                return false;
+            }
+            if (node == null) {
+                if ((hash & Integer.MAX_VALUE) >= sampleThreshold) {
+                    return false;
+                }
+                if (!reserve()) {
+                    untracked.incrementAndGet();
+                    return false;
+                }
+                node = new Node<K>(key, expirySeconds);
+                stripe.nodes.put(key, node);
+            } else {
+                stripe.unlink(node);
+                node.expiry = expirySeconds;
+            }
+            stripe.link(node, stripe.currentTick + 1);
+            return true;
+        }
+    }
+
+    /**
+     * stop tracking a key
+     *
+     * @param key key
+     */
+    public void cancel(K key) {
+        Stripe<K> stripe = stripes[spread(key) & (stripes.length - 1)];
+        synchronized (stripe) {
+            Node<K> node = stripe.nodes.get(key);
+            if (node != null) {
+                stripe.remove(node);
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * advance the wheels to the current time
+     *
+     * @param nowSeconds current time in seconds
+     * @return the keys expired since the last advance, oldest first
+     */
+    public List<K> advance(long nowSeconds) {
+        List<K> expired = new ArrayList<K>();
+        synchronized (advanceLock) {
+            while (currentTick < nowSeconds) {
+                currentTick++;
+                for (Stripe<K> stripe : stripes) {
+                    synchronized (stripe) {
+                        int before = expired.size();
+                        stripe.tick(expired);
+                        size.addAndGet(before - expired.size());
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return number of tracked keys
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return number of keys not tracked because the cap was reached or their expiry is beyond the wheels
+     */
+    public long getUntracked() {
+        return untracked.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> Stripe<K>[] newStripes(int length) {
+        return (Stripe<K>[]) new Stripe<?>[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> Node<K>[][] newWheels() {
+        return (Node<K>[][]) new Node<?>[LEVELS][SLOTS];
+    }
+
+    private boolean reserve() {
+        int current;
+        do {
+            current = size.get();
+            if (current >= maxKeys) {
+                return false;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private static int spread(Object key) {
+        int hash = key.hashCode() * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * wheels of the keys of one stripe, guarded by its monitor
+     */
+    private static final class Stripe<K> {
+        private final Node<K>[][] wheels;
+        private final Map<K, Node<K>> nodes = new HashMap<K, Node<K>>();
+        private long currentTick;
+
+        private Stripe(long nowSeconds) {
+            this.currentTick = nowSeconds;
+            this.wheels = newWheels();
+            for (int level = 0; level < LEVELS; level++) {
+                for (int slot = 0; slot < SLOTS; slot++) {
+                    Node<K> sentinel = new Node<K>(null, 0);
+                    sentinel.previous = sentinel;
+                    sentinel.next = sentinel;
+                    wheels[level][slot] = sentinel;
+                }
+            }
+        }
+
+        /**
+         * advance one tick
+         *
+         * @param expired list receiving the expired keys
+         */
+        private void tick(List<K> expired) {
+            currentTick++;
+            //cascade the coarser wheels whose slot boundary is reached, coarsest first
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+                    Node<K> sentinel = wheels[level][(int) (currentTick >>> (BITS * level)) & MASK];
+                    Node<K> node = sentinel.next;
+                    sentinel.next = sentinel;
+                    sentinel.previous = sentinel;
+                    while (node != sentinel) {
+                        Node<K> next = node.next;
+                        link(node, currentTick);
+                        node = next;
+                    }
+                }
+            }
+            Node<K> sentinel = wheels[0][(int) currentTick & MASK];
+            Node<K> node = sentinel.next;
+            while (node != sentinel) {
+                Node<K> next = node.next;
+                remove(node);
+                expired.add(node.key);
+                node = next;
+            }
+        }
+
+        /**
+         * put a node in the slot of its expiry
+         *
+         * @param node     node
+         * @param earliest earliest tick of the slot, keys already due expire on that tick
+         */
+        private void link(Node<K> node, long earliest) {
+            long expiry = Math.max(node.expiry, earliest);
+            long delay = expiry - currentTick;
+            int level = 0;
+            while (level < LEVELS - 1 && delay >= (1L << (BITS * (level + 1)))) {
+                level++;
+            }
+            Node<K> sentinel = wheels[level][(int) (expiry >>> (BITS * level)) & MASK];
+            node.previous = sentinel.previous;
+            node.next = sentinel;
+            sentinel.previous.next = node;
+            sentinel.previous = node;
+        }
+
+        private void unlink(Node<K> node) {
+            if (node.previous != null) {
+                node.previous.next = node.next;
+                node.next.previous = node.previous;
+                node.previous = null;
+                node.next = null;
+            }
+        }
+
+        private void remove(Node<K> node) {
+            unlink(node);
+            nodes.remove(node.key);
+        }
+    }
+
+    private static final class Node<K> {
+        private final K key;
+        private long expiry;
+        private Node<K> previous;
+        private Node<K> next;
+
+        private Node(K key, long expiry) {
+            this.key = key;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.BulkGetCompletionListener;
+import net.spy.memcached.internal.BulkGetFuture;
+import net.spy.memcached.transcoders.Transcoder;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * batcher merging concurrent single key gets into one asyncGetBulk, which spymemcached
+ * splits into one multi-get operation per node
+ *
+ * @author linux_china
+ */
+public class GetBatcher extends Batcher<String, Object> {
+    private final MemcachedClient mClient;
+    private final Transcoder<Object> transcoder;
+
+    public GetBatcher(MemcachedClient mClient, Transcoder<Object> transcoder, int batchSize, long windowMicros, ScheduledExecutorService scheduler) {
+        super(batchSize, windowMicros, scheduler);
+        this.mClient = mClient;
+        this.transcoder = transcoder;
+    }
+
+    @Override
+    protected void execute(final List<BatchedFuture<String, Object>> batch) {
+        Set<String> keys = new LinkedHashSet<String>();
+        for (BatchedFuture<String, Object> future : batch) {
+            keys.add(future.getKey());
+        }
+        mClient.asyncGetBulk(keys, transcoder).addListener(new BulkGetCompletionListener() {
+            public void onComplete(BulkGetFuture<?> bulkFuture) throws Exception {
+                try {
+                    Map<String, ?> values = bulkFuture.get();
+                    for (BatchedFuture<String, Object> future : batch) {
+                        future.complete(values.get(future.getKey()));
+                    }
+                } catch (Exception e) {
+                    for (BatchedFuture<String, Object> future : batch) {
+                        future.fail(e);
+                    }
+                }
+            }
+        });
+    }
+}
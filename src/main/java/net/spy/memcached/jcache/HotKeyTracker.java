@@ -0,0 +1,199 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.jcache.management.HotKey;
+import net.spy.memcached.jcache.management.HotKeysMXBean;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * heavy hitters of the memcached keys of a cache, counted by a count-min sketch over a sample of the accesses.
+ * <p/>
+ * A sampled access increments one counter in each of the four rows of the sketch and takes the smallest as its
+ * estimate, only an estimate above the smallest of the top K candidates takes the lock to enter the candidates.
+ * An access to a key already tracked only takes the lock when its estimate grew by an eighth, the smallest
+ * estimate is recomputed when a candidate is evicted, and the estimates are read back from the sketch when
+ * the hot keys are listed. The sketch and the candidates are cleared at the end of each window, the candidates of the completed window are
+ * kept as the hot keys. Memory is bounded by the width of the sketch and K.
+ */
+public class HotKeyTracker implements HotKeysMXBean {
+    private static final int DEPTH = 4;
+    /**
+     * xorshift state of each thread, a random draw per access samples the accesses of each tracker independently
+     * of the accesses of the thread to the other caches
+     */
+    private static final ThreadLocal<long[]> SAMPLE_RANDOM = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[]{(System.nanoTime() ^ Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) | 1};
+        }
+    };
+    private static final Comparator<Map.Entry<String, Integer>> HOTTEST_FIRST = new Comparator<Map.Entry<String, Integer>>() {
+        public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+            return o2.getValue().compareTo(o1.getValue());
+        }
+    };
+    private final NodeLocatorCache nodeLocator;
+    private final int topK;
+    private final int samplePeriod;
+    private final long windowMillis;
+    private final int width;
+    private final AtomicIntegerArray sketch;
+    /**
+     * candidates and their estimate when last offered, modified with the lock held, read without it
+     */
+    private final Map<String, Integer> candidates = new ConcurrentHashMap<String, Integer>();
+    private volatile int threshold;
+    private volatile long windowStart = System.currentTimeMillis();
+    private volatile List<HotKey> hotKeys = Collections.emptyList();
+
+    /**
+     * construct a tracker
+     *
+     * @param nodeLocator   node locator, to find the node owning a key
+     * @param topK          max number of hot keys
+     * @param samplePeriod  one access in the period is counted
+     * @param width         counters per row of the sketch, rounded up to a power of two
+     * @param windowSeconds duration of a window
+     */
+    public HotKeyTracker(NodeLocatorCache nodeLocator, int topK, int samplePeriod, int width, long windowSeconds) {
+        this.nodeLocator = nodeLocator;
+        this.topK = topK;
+        this.samplePeriod = samplePeriod;
+        this.windowMillis = windowSeconds * 1000;
+        this.width = Integer.highestOneBit(Math.max(width, 2) - 1) << 1;
+        this.sketch = new AtomicIntegerArray(DEPTH * this.width);
+    }
+
+    /**
+     * count an access
+     *
+     * @param compositeKey memcached key
+     */
+    public void record(String compositeKey) {
+        if (samplePeriod > 1 && !isSampled()) {
+            return;
+        }
+        int hash = compositeKey.hashCode() * 0x9e3779b9;
+        int step = (hash >>> 16 | hash << 16) * 0x85ebca6b | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * width + ((hash + row * step) & (width - 1));
+            estimate = Math.min(estimate, sketch.incrementAndGet(index));
+        }
+        if (estimate > threshold) {
+            Integer tracked = candidates.get(compositeKey);
+            if (tracked == null || estimate - tracked >= Math.max(1, tracked >>> 3)) {
+                offer(compositeKey, estimate);
+            }
+        }
+    }
+
+    private boolean isSampled() {
+        long[] state = SAMPLE_RANDOM.get();
+        long x = state[0];
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        state[0] = x;
+        return (x >>> 1) % samplePeriod == 0;
+    }
+
+    private synchronized void offer(String compositeKey, int estimate) {
+        if (candidates.containsKey(compositeKey)) {
+            //the smallest estimate only grows, the threshold may lag until the next eviction
+            candidates.put(compositeKey, estimate);
+            return;
+        }
+        if (candidates.size() < topK) {
+            candidates.put(compositeKey, estimate);
+            if (candidates.size() < topK) {
+                return;
+            }
+        } else {
+            String coldest = null;
+            int coldestEstimate = Integer.MAX_VALUE;
+            for (Map.Entry<String, Integer> entry : candidates.entrySet()) {
+                if (entry.getValue() < coldestEstimate) {
+                    coldest = entry.getKey();
+                    coldestEstimate = entry.getValue();
+                }
+            }
+            if (estimate <= coldestEstimate) {
+                return;
+            }
+            candidates.remove(coldest);
+            candidates.put(compositeKey, estimate);
+        }
+        threshold = Collections.min(candidates.values());
+    }
+
+    /**
+     * @param compositeKey memcached key
+     * @return estimated sampled accesses of the key in the window in progress
+     */
+    private int estimate(String compositeKey) {
+        int hash = compositeKey.hashCode() * 0x9e3779b9;
+        int step = (hash >>> 16 | hash << 16) * 0x85ebca6b | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch.get(row * width + ((hash + row * step) & (width - 1))));
+        }
+        return estimate;
+    }
+
+    /**
+     * complete the window in progress, its candidates become the hot keys
+     */
+    public synchronized void rotate() {
+        long now = System.currentTimeMillis();
+        hotKeys = toHotKeys(now);
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.set(i, 0);
+        }
+        candidates.clear();
+        threshold = 0;
+        windowStart = now;
+    }
+
+    private synchronized List<HotKey> toHotKeys(long now) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(candidates.size());
+        for (String compositeKey : candidates.keySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<String, Integer>(compositeKey, estimate(compositeKey)));
+        }
+        Collections.sort(entries, HOTTEST_FIRST);
+        double seconds = Math.max(now - windowStart, 1) / 1000.0;
+        List<HotKey> keys = new ArrayList<HotKey>(entries.size());
+        for (Map.Entry<String, Integer> entry : entries) {
+            String node = String.valueOf(nodeLocator.getNode(entry.getKey()));
+            keys.add(new HotKey(entry.getKey(), entry.getValue() * (double) samplePeriod / seconds, node));
+        }
+        return keys;
+    }
+
+    public List<HotKey> getHotKeys() {
+        return hotKeys;
+    }
+
+    public List<HotKey> getCurrentHotKeys() {
+        return toHotKeys(System.currentTimeMillis());
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public int getSamplePeriod() {
+        return samplePeriod;
+    }
+
+    public long getWindowSeconds() {
+        return windowMillis / 1000;
+    }
+}
@@ -0,0 +1,136 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.internal.OperationCompletionListener;
+import net.spy.memcached.internal.OperationFuture;
+
+import javax.cache.CacheException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * bound of the asynchronous memcached operations in flight for one cache, so a burst of writes
+ * on one cache can not fill the input queue of the memcached client shared with the other caches.
+ *
+ * @author linux_china
+ */
+public class InFlightLimiter implements OperationCompletionListener {
+    private final int limit;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutMillis;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<OperationFuture<?>> inFlight = new ConcurrentLinkedQueue<OperationFuture<?>>();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+
+    /**
+     * construct a limiter
+     *
+     * @param limit              maximal operations in flight
+     * @param policy             overflow policy
+     * @param blockTimeoutMillis maximal time to wait for a permit with {@link OverflowPolicy#BLOCK}
+     */
+    public InFlightLimiter(int limit, OverflowPolicy policy, long blockTimeoutMillis) {
+        this.limit = limit;
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.permits = new Semaphore(limit);
+    }
+
+    /**
+     * acquire a permit before issuing an operation, the operation must be passed to {@link #track(OperationFuture)}
+     *
+     * @throws CacheException if the operation is rejected or no permit was available in time
+     */
+    public void acquire() {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        try {
+            switch (policy) {
+                case REJECT:
+                    rejections.incrementAndGet();
+                    throw new CacheException("Too many operations in flight, limit is " + limit);
+                case DROP_OLDEST:
+                    OperationFuture<?> oldest;
+                    while (!permits.tryAcquire()) {
+                        oldest = inFlight.poll();
+                        if (oldest == null) {
+                            //the oldest operations are completing right now
+                            if (permits.tryAcquire(blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                                return;
+                            }
+                            throw new CacheException("Timeout waiting for operations in flight, limit is " + limit);
+                        }
+                        if (oldest.cancel()) {
+                            drops.incrementAndGet();
+                        }
+                    }
+                    return;
+                default:
+                    if (!permits.tryAcquire(blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        rejections.incrementAndGet();
+                        throw new CacheException("Timeout waiting for operations in flight, limit is " + limit);
+                    }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException("Interrupted waiting for operations in flight", e);
+        }
+    }
+
+    /**
+     * release a permit when the operation could not be issued
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * track an issued operation, the permit is released when it completes
+     *
+     * @param future operation future
+     */
+    public void track(OperationFuture<?> future) {
+        if (policy == OverflowPolicy.DROP_OLDEST) {
+            inFlight.offer(future);
+            OperationFuture<?> head;
+            while ((head = inFlight.peek()) != null && head.isDone()) {
+                inFlight.remove(head);
+            }
+        }
+        future.addListener(this);
+    }
+
+    /**
+     * release the permit of a completed or cancelled operation
+     *
+     * @param future completed operation future
+     */
+    @Override
+    public void onComplete(OperationFuture<?> future) throws Exception {
+        permits.release();
+    }
+
+    /**
+     * @return operations in flight
+     */
+    public int getInFlight() {
+        return limit - permits.availablePermits();
+    }
+
+    /**
+     * @return number of rejected operations
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    /**
+     * @return number of cancelled oldest operations
+     */
+    public long getDrops() {
+        return drops.get();
+    }
+}
@@ -0,0 +1,104 @@
+package net.spy.memcached.jcache;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * latency budget derived from a percentile of the recently observed latencies
+ * <p/>
+ * A get exceeding the budget is not waited for, its real latency is unknown but above the budget, so it is
+ * recorded as twice the budget: when the latencies rise the budget doubles until the gets fit in it again,
+ * instead of staying at the percentile of a faster period. The percentile is recalculated off the gets.
+ *
+ * @author linux_china
+ */
+public class LatencyBudget {
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int RECALCULATE_INTERVAL = 128;
+    private final double percentile;
+    private final long minNanos;
+    private final long maxNanos;
+    private final Executor executor;
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLE_SIZE);
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicBoolean recalculating = new AtomicBoolean();
+    private final Runnable recalculateTask = new Runnable() {
+        public void run() {
+            try {
+                recalculate((int) Math.min(recorded.get(), SAMPLE_SIZE));
+            } finally {
+                recalculating.set(false);
+            }
+        }
+    };
+    private volatile long budgetNanos;
+
+    /**
+     * construct a latency budget, the max bound is used until enough samples are recorded
+     *
+     * @param percentile percentile of recent latencies, such as 99.0
+     * @param minMillis  lower bound of the budget
+     * @param maxMillis  upper bound of the budget
+     * @param executor   executor of the recalculations
+     */
+    public LatencyBudget(double percentile, long minMillis, long maxMillis, Executor executor) {
+        this.percentile = percentile;
+        this.minNanos = TimeUnit.MILLISECONDS.toNanos(minMillis);
+        this.maxNanos = Math.max(minNanos, TimeUnit.MILLISECONDS.toNanos(maxMillis));
+        this.executor = executor;
+        this.budgetNanos = maxNanos;
+    }
+
+    /**
+     * current budget
+     *
+     * @return budget in nanoseconds
+     */
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    /**
+     * record the latency of a get completed within the budget, the budget is recalculated every
+     * {@value #RECALCULATE_INTERVAL} samples
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long count = recorded.getAndIncrement();
+        samples.lazySet((int) (count % SAMPLE_SIZE), nanos);
+        if ((count + 1) % RECALCULATE_INTERVAL == 0 && recalculating.compareAndSet(false, true)) {
+            try {
+                executor.execute(recalculateTask);
+            } catch (RejectedExecutionException e) {
+                //shutting down
+                recalculating.set(false);
+            }
+        }
+    }
+
+    /**
+     * record a get which exceeded the budget
+     *
+     * @param budgetNanos budget the get exceeded
+     */
+    public void recordTimeout(long budgetNanos) {
+        record(Math.min(maxNanos, Math.max(2 * budgetNanos, 1)));
+    }
+
+    private void recalculate(int size) {
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        long value = sorted[Math.max(0, Math.min(index, size - 1))];
+        this.budgetNanos = Math.max(minNanos, Math.min(maxNanos, value));
+    }
+}
@@ -0,0 +1,59 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.jcache.management.CacheOperation;
+
+import javax.cache.Cache;
+import javax.cache.integration.CacheLoader;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * batcher merging the concurrent read-through misses into one {@link CacheLoader#loadAll(Iterable)},
+ * the loaded values are fanned out to the waiting callers and written back to the cache with
+ * asynchronous sets, which spymemcached pipelines.
+ *
+ * @author linux_china
+ */
+public class LoaderBatcher<K, V> extends Batcher<K, V> {
+    private final Cache<K, V> cache;
+    private final CacheLoader<K, V> cacheLoader;
+
+    /**
+     * construct a loader batcher, the loads run on the thread of the first caller of each batch
+     *
+     * @param cache        cache to write the loaded values back
+     * @param cacheLoader  cache loader
+     * @param batchSize    maximal keys of a batch
+     * @param windowMicros time to wait for more misses
+     */
+    public LoaderBatcher(Cache<K, V> cache, CacheLoader<K, V> cacheLoader, int batchSize, long windowMicros) {
+        super(batchSize, windowMicros, null);
+        this.cache = cache;
+        this.cacheLoader = cacheLoader;
+    }
+
+    @Override
+    protected void execute(List<BatchedFuture<K, V>> batch) {
+        Set<K> keys = new LinkedHashSet<K>();
+        for (BatchedFuture<K, V> future : batch) {
+            keys.add(future.getKey());
+        }
+        long start = System.nanoTime();
+        Map<K, V> loaded = cacheLoader.loadAll(keys);
+        if (cache instanceof SpyCache) {
+            ((SpyCache<K, V>) cache).recordLatency(CacheOperation.LOAD, start);
+        }
+        for (BatchedFuture<K, V> future : batch) {
+            future.complete(loaded == null ? null : loaded.get(future.getKey()));
+        }
+        if (loaded != null) {
+            for (Map.Entry<K, V> entry : loaded.entrySet()) {
+                if (entry.getValue() != null) {
+                    cache.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+}
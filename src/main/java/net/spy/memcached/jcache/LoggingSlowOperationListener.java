@@ -0,0 +1,18 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.compat.log.Logger;
+import net.spy.memcached.compat.log.LoggerFactory;
+import net.spy.memcached.jcache.management.SlowOperation;
+
+/**
+ * slow operation listener logging a warning through the logger of spymemcached
+ *
+ * @author linux_china
+ */
+public class LoggingSlowOperationListener implements SlowOperationListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoggingSlowOperationListener.class);
+
+    public void onSlowOperation(String cacheName, SlowOperation operation) {
+        LOGGER.warn("Slow operation on cache " + cacheName + ": " + operation);
+    }
+}
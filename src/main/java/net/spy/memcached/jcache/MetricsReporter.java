@@ -0,0 +1,135 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.jcache.management.CacheOperation;
+import net.spy.memcached.jcache.management.LatencySnapshot;
+import net.spy.memcached.jcache.management.PayloadStatisticsMXBean;
+import net.spy.memcached.jcache.management.RICacheStatisticsMXBean;
+import net.spy.memcached.jcache.management.SpyCacheStatisticsMXBean;
+import net.spy.memcached.jcache.metrics.CacheMetrics;
+import net.spy.memcached.jcache.metrics.MetricsSink;
+import net.spy.memcached.jcache.metrics.MetricsSnapshot;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * publishes the metrics of the caches of a cache manager to its {@link MetricsSink}s periodically.
+ * <p/>
+ * The counters are the numeric attributes of the statistics and payload MXBeans, read through their
+ * interfaces so that every attribute added to them is published.
+ *
+ * @author linux_china
+ */
+public class MetricsReporter implements Runnable {
+    private static final Method[] STATISTICS_ATTRIBUTES = numericAttributes(SpyCacheStatisticsMXBean.class);
+    private static final Method[] PAYLOAD_ATTRIBUTES = numericAttributes(PayloadStatisticsMXBean.class);
+    private final SpyCacheManager cacheManager;
+    private final List<MetricsSink> sinks = new CopyOnWriteArrayList<MetricsSink>();
+    private final ScheduledFuture<?> reportTask;
+    private final AtomicLong errors = new AtomicLong();
+
+    public MetricsReporter(SpyCacheManager cacheManager, long intervalMillis, ScheduledExecutorService scheduler) {
+        this.cacheManager = cacheManager;
+        this.reportTask = scheduler.scheduleAtFixedRate(this, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static Method[] numericAttributes(Class<?> mxbeanInterface) {
+        List<Method> methods = new ArrayList<Method>();
+        for (Method method : mxbeanInterface.getMethods()) {
+            Class<?> type = method.getReturnType();
+            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0
+                    && (type == long.class || type == int.class || type == float.class)) {
+                methods.add(method);
+            }
+        }
+        return methods.toArray(new Method[methods.size()]);
+    }
+
+    public void addSink(MetricsSink sink) {
+        sinks.add(sink);
+    }
+
+    public void removeSink(MetricsSink sink) {
+        sinks.remove(sink);
+    }
+
+    public void run() {
+        report();
+    }
+
+    /**
+     * publish a snapshot to every sink, a failing sink does not prevent the others from receiving it
+     */
+    public void report() {
+        if (sinks.isEmpty()) {
+            return;
+        }
+        MetricsSnapshot snapshot = snapshot(cacheManager.getSpyCaches());
+        for (MetricsSink sink : sinks) {
+            try {
+                sink.publish(snapshot);
+            } catch (Exception e) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    private MetricsSnapshot snapshot(Collection<SpyCache<?, ?>> caches) {
+        List<CacheMetrics> metrics = new ArrayList<CacheMetrics>();
+        for (SpyCache<?, ?> cache : caches) {
+            if (!cache.getCacheMXBean().isStatisticsEnabled()) {
+                continue;
+            }
+            RICacheStatisticsMXBean statistics = cache.getCacheStatisticsMXBean();
+            Map<String, Number> counters = new LinkedHashMap<String, Number>();
+            collect(statistics, STATISTICS_ATTRIBUTES, counters);
+            collect(statistics.getPayloadStatistics(), PAYLOAD_ATTRIBUTES, counters);
+            Map<String, LatencySnapshot> latencies = new LinkedHashMap<String, LatencySnapshot>();
+            for (CacheOperation operation : CacheOperation.values()) {
+                latencies.put(operation.getOperationName(), statistics.getLatencyHistogram(operation).getSnapshot());
+            }
+            metrics.add(new CacheMetrics(cache.getName(), counters, latencies));
+        }
+        return new MetricsSnapshot(cacheManager.getURI(), System.currentTimeMillis(), metrics);
+    }
+
+    private void collect(Object mxbean, Method[] attributes, Map<String, Number> counters) {
+        for (Method attribute : attributes) {
+            try {
+                counters.put(attribute.getName().substring(3), (Number) attribute.invoke(mxbean));
+            } catch (Exception e) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return number of sink or attribute failures
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * stop publishing and close the sinks
+     */
+    public void close() {
+        reportTask.cancel(false);
+        for (MetricsSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (Exception ignore) {
+            }
+        }
+        sinks.clear();
+    }
+}
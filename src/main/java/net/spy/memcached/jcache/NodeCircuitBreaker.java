@@ -0,0 +1,245 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.internal.OperationCompletionListener;
+import net.spy.memcached.internal.OperationFuture;
+import net.spy.memcached.jcache.management.NodeCircuitBreakerMXBean;
+import net.spy.memcached.ops.OperationStatus;
+import net.spy.memcached.ops.StatusCode;
+
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * circuit breaker of one memcached node, trips open on the timeout and error rate of a time window
+ * and lets a single probe through after the open period (half open).
+ * <p/>
+ * A probe which records no outcome, because the request was rejected before reaching the node or the
+ * caller gave up waiting, is released by {@link #releaseProbe()}; a probe neither recorded nor released
+ * expires after the open period and another one is let through. In half open state the outcomes of the
+ * requests issued before the probe are ignored, so a late success can not close the breaker.
+ *
+ * @author linux_china
+ */
+public class NodeCircuitBreaker implements NodeCircuitBreakerMXBean {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final SocketAddress node;
+    private final int failurePercentageThreshold;
+    private final int minimumCalls;
+    private final long windowMillis;
+    private final long openMillis;
+    private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+    /**
+     * start time of the probe in flight, 0 if none
+     */
+    private final AtomicLong probeStartedAt = new AtomicLong();
+    private final AtomicLong windowStart = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong trips = new AtomicLong();
+    private volatile long openedAt;
+
+    public NodeCircuitBreaker(SocketAddress node, int failurePercentageThreshold, int minimumCalls, long windowMillis, long openMillis) {
+        this.node = node;
+        this.failurePercentageThreshold = failurePercentageThreshold;
+        this.minimumCalls = minimumCalls;
+        this.windowMillis = windowMillis;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * check whether a call to the node is allowed
+     *
+     * @return false if the call should fail fast
+     */
+    public boolean allowRequest() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (current == State.OPEN && now - openedAt >= openMillis) {
+            state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+        if (state.get() == State.HALF_OPEN) {
+            long probe = probeStartedAt.get();
+            if ((probe == 0 || now - probe >= openMillis) && probeStartedAt.compareAndSet(probe, now)) {
+                return true;
+            }
+        }
+        rejections.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * release the probe of a request allowed by {@link #allowRequest()} which ends without outcome,
+     * so that the next request probes the node
+     */
+    public void releaseProbe() {
+        if (state.get() == State.HALF_OPEN) {
+            probeStartedAt.set(0);
+        }
+    }
+
+    public void recordSuccess() {
+        recordSuccess(System.currentTimeMillis());
+    }
+
+    /**
+     * record a success
+     *
+     * @param issuedAt time the request was issued
+     */
+    public void recordSuccess(long issuedAt) {
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            if (!isStale(issuedAt)) {
+                reset();
+            }
+        } else {
+            roll();
+            calls.incrementAndGet();
+        }
+    }
+
+    public void recordTimeout() {
+        recordTimeout(System.currentTimeMillis());
+    }
+
+    /**
+     * record a timeout
+     *
+     * @param issuedAt time the request was issued
+     */
+    public void recordTimeout(long issuedAt) {
+        timeouts.incrementAndGet();
+        recordFailure(issuedAt);
+    }
+
+    public void recordFailure() {
+        recordFailure(System.currentTimeMillis());
+    }
+
+    /**
+     * record a failure
+     *
+     * @param issuedAt time the request was issued
+     */
+    public void recordFailure(long issuedAt) {
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            if (!isStale(issuedAt)) {
+                trip(State.HALF_OPEN);
+            }
+            return;
+        }
+        roll();
+        long totalCalls = calls.incrementAndGet();
+        long totalFailures = failures.incrementAndGet();
+        if (current == State.CLOSED && totalCalls >= minimumCalls
+                && totalFailures * 100 >= totalCalls * failurePercentageThreshold) {
+            trip(State.CLOSED);
+        }
+    }
+
+    /**
+     * @param issuedAt time a request was issued
+     * @return true if the request was issued before the probe in flight
+     */
+    private boolean isStale(long issuedAt) {
+        long probe = probeStartedAt.get();
+        return probe != 0 && issuedAt < probe;
+    }
+
+    /**
+     * get a listener recording the outcome of an asynchronous operation, misses and lost races are not failures
+     *
+     * @param issuedAt time the operation was issued
+     * @return completion listener
+     */
+    public OperationCompletionListener outcomeListener(final long issuedAt) {
+        return new OperationCompletionListener() {
+            public void onComplete(OperationFuture<?> future) throws Exception {
+                OperationStatus status = future.getStatus();
+                StatusCode code = status.getStatusCode();
+                if (status.isSuccess() || code == StatusCode.ERR_NOT_FOUND || code == StatusCode.ERR_EXISTS
+                        || code == StatusCode.ERR_NOT_STORED) {
+                    recordSuccess(issuedAt);
+                } else if (code == StatusCode.TIMEDOUT) {
+                    recordTimeout(issuedAt);
+                } else {
+                    recordFailure(issuedAt);
+                }
+            }
+        };
+    }
+
+    public String getNode() {
+        return String.valueOf(node);
+    }
+
+    public String getState() {
+        return state.get().name();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public float getFailurePercentage() {
+        long totalCalls = calls.get();
+        if (totalCalls == 0) {
+            return 0;
+        }
+        return (float) failures.get() / totalCalls * 100.0f;
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    public long getTrips() {
+        return trips.get();
+    }
+
+    public void reset() {
+        calls.set(0);
+        failures.set(0);
+        windowStart.set(System.currentTimeMillis());
+        state.set(State.CLOSED);
+        probeStartedAt.set(0);
+    }
+
+    private void trip(State expected) {
+        if (state.compareAndSet(expected, State.OPEN)) {
+            openedAt = System.currentTimeMillis();
+            trips.incrementAndGet();
+        }
+        probeStartedAt.set(0);
+    }
+
+    /**
+     * start a new window when the current one elapsed
+     */
+    private void roll() {
+        long start = windowStart.get();
+        long now = System.currentTimeMillis();
+        if (now - start >= windowMillis && windowStart.compareAndSet(start, now)) {
+            calls.set(0);
+            failures.set(0);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.jcache.management.MBeanServerRegistrationUtility;
+
+import javax.cache.CacheManager;
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * circuit breakers of the memcached nodes of one cache manager, each breaker is registered as MXBean
+ *
+ * @author linux_china
+ */
+public class NodeCircuitBreakerRegistry {
+    private final CacheManager cacheManager;
+    private final NodeLocatorCache nodeLocator;
+    private final int failurePercentageThreshold;
+    private final int minimumCalls;
+    private final long windowMillis;
+    private final long openMillis;
+    private final ConcurrentMap<SocketAddress, NodeCircuitBreaker> breakers = new ConcurrentHashMap<SocketAddress, NodeCircuitBreaker>();
+
+    public NodeCircuitBreakerRegistry(CacheManager cacheManager, NodeLocatorCache nodeLocator, int failurePercentageThreshold,
+                                      int minimumCalls, long windowMillis, long openMillis) {
+        this.cacheManager = cacheManager;
+        this.nodeLocator = nodeLocator;
+        this.failurePercentageThreshold = failurePercentageThreshold;
+        this.minimumCalls = minimumCalls;
+        this.windowMillis = windowMillis;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * get the circuit breaker of the node owning the key
+     *
+     * @param compositeKey memcached key
+     * @return circuit breaker
+     */
+    public NodeCircuitBreaker getCircuitBreaker(String compositeKey) {
+        SocketAddress node = nodeLocator.getNode(compositeKey);
+        NodeCircuitBreaker breaker = breakers.get(node);
+        if (breaker == null) {
+            breaker = new NodeCircuitBreaker(node, failurePercentageThreshold, minimumCalls, windowMillis, openMillis);
+            NodeCircuitBreaker existing = breakers.putIfAbsent(node, breaker);
+            if (existing != null) {
+                breaker = existing;
+            } else {
+                MBeanServerRegistrationUtility.registerNodeObject(cacheManager, node, breaker,
+                        MBeanServerRegistrationUtility.ObjectNameType.CircuitBreaker);
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * unregister the circuit breaker MXBeans
+     */
+    public void close() {
+        for (SocketAddress node : breakers.keySet()) {
+            MBeanServerRegistrationUtility.unregisterNodeObject(cacheManager, node,
+                    MBeanServerRegistrationUtility.ObjectNameType.CircuitBreaker);
+        }
+        breakers.clear();
+    }
+}
@@ -0,0 +1,59 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.ConnectionObserver;
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.NodeLocator;
+
+import java.net.SocketAddress;
+
+/**
+ * read only copy of the node locator of a memcached client, shared by the per operation lookups of the node
+ * owning a key.
+ * <p/>
+ * {@link MemcachedClient#getNodeLocator()} copies the whole locator on each call, so the copy is kept and only
+ * taken again when a connection is established or lost, which is when the nodes of the client may change.
+ *
+ * @author linux_china
+ */
+public class NodeLocatorCache implements ConnectionObserver {
+    private final MemcachedClient mClient;
+    private volatile NodeLocator locator;
+
+    public NodeLocatorCache(MemcachedClient mClient) {
+        this.mClient = mClient;
+        this.locator = mClient.getNodeLocator();
+        mClient.addObserver(this);
+    }
+
+    /**
+     * get the node owning a key
+     *
+     * @param compositeKey memcached key
+     * @return address of the primary node of the key
+     */
+    public SocketAddress getNode(String compositeKey) {
+        return locator.getPrimary(compositeKey).getSocketAddress();
+    }
+
+    /**
+     * @return read only locator
+     */
+    public NodeLocator getLocator() {
+        return locator;
+    }
+
+    public void connectionEstablished(SocketAddress sa, int reconnectCount) {
+        refresh();
+    }
+
+    public void connectionLost(SocketAddress sa) {
+        refresh();
+    }
+
+    /**
+     * take a new copy of the locator
+     */
+    public void refresh() {
+        this.locator = mClient.getNodeLocator();
+    }
+}
@@ -0,0 +1,113 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.jcache.management.NodeStatsMXBean;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * last statistics polled from a memcached node
+ *
+ * @author linux_china
+ */
+public class NodeStats implements NodeStatsMXBean {
+    private static final float NANOSECONDS_IN_A_MILLISECOND = 1000000f;
+    private final SocketAddress node;
+    private volatile Map<String, String> stats = Collections.emptyMap();
+    private volatile boolean reachable;
+    private volatile long lastPollTime;
+    private volatile long statsLatencyNanos;
+
+    public NodeStats(SocketAddress node) {
+        this.node = node;
+    }
+
+    /**
+     * update with the result of a poll
+     *
+     * @param stats        statistics of the node, null if it did not answer
+     * @param latencyNanos duration of the stats call
+     */
+    void update(Map<String, String> stats, long latencyNanos) {
+        this.statsLatencyNanos = latencyNanos;
+        if (stats == null || stats.isEmpty()) {
+            this.reachable = false;
+        } else {
+            this.stats = stats;
+            this.reachable = true;
+            this.lastPollTime = System.currentTimeMillis();
+        }
+    }
+
+    private long getLong(String name) {
+        String value = stats.get(name);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public String getNode() {
+        return String.valueOf(node);
+    }
+
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    public long getLastPollTime() {
+        return lastPollTime;
+    }
+
+    public float getStatsLatency() {
+        return statsLatencyNanos / NANOSECONDS_IN_A_MILLISECOND;
+    }
+
+    public long getEvictions() {
+        return getLong("evictions");
+    }
+
+    public long getBytes() {
+        return getLong("bytes");
+    }
+
+    public long getLimitMaxBytes() {
+        return getLong("limit_maxbytes");
+    }
+
+    public float getMemoryUsagePercentage() {
+        long limit = getLimitMaxBytes();
+        return limit == 0 ? 0 : (float) getBytes() / limit * 100.0f;
+    }
+
+    public long getCurrItems() {
+        return getLong("curr_items");
+    }
+
+    public long getGetHits() {
+        return getLong("get_hits");
+    }
+
+    public long getGetMisses() {
+        return getLong("get_misses");
+    }
+
+    public float getHitPercentage() {
+        long hits = getGetHits();
+        long gets = hits + getGetMisses();
+        return gets == 0 ? 0 : (float) hits / gets * 100.0f;
+    }
+
+    public long getCurrConnections() {
+        return getLong("curr_connections");
+    }
+
+    public Map<String, String> getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,169 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.BroadcastOpFactory;
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.MemcachedNode;
+import net.spy.memcached.OperationFactory;
+import net.spy.memcached.jcache.management.MBeanServerRegistrationUtility;
+import net.spy.memcached.ops.Operation;
+import net.spy.memcached.ops.OperationStatus;
+import net.spy.memcached.ops.StatsOperation;
+
+import javax.cache.CacheManager;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * polls the stats of the memcached nodes of one cache manager, the stats of each node are registered as MXBean.
+ * <p/>
+ * The scheduler only hands the poll to the blocking task pool, one poll at a time. The stats command is
+ * broadcast to the nodes and the latency of each node is measured up to its own response.
+ *
+ * @author linux_china
+ */
+public class NodeStatsPoller implements Runnable {
+    private final CacheManager cacheManager;
+    private final MemcachedClient mClient;
+    private final OperationFactory opFactory;
+    private final ExecutorService executor;
+    private final ConcurrentMap<SocketAddress, NodeStats> nodeStats = new ConcurrentHashMap<SocketAddress, NodeStats>();
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private final ScheduledFuture<?> pollTask;
+    /**
+     * set by close, a poll still running when the poller is closed does not register MXBeans any more
+     */
+    private volatile boolean closed;
+    private final Runnable pollRunnable = new Runnable() {
+        public void run() {
+            try {
+                poll();
+            } catch (Exception ignore) {
+                //keep polling
+            } finally {
+                polling.set(false);
+            }
+        }
+    };
+
+    /**
+     * construct a poller
+     *
+     * @param cacheManager   cache manager
+     * @param mClient        memcached client
+     * @param opFactory      operation factory of the memcached client
+     * @param intervalMillis interval between two polls
+     * @param scheduler      scheduler of the polls
+     * @param executor       pool running the polls
+     */
+    public NodeStatsPoller(CacheManager cacheManager, MemcachedClient mClient, OperationFactory opFactory, long intervalMillis,
+                           ScheduledExecutorService scheduler, ExecutorService executor) {
+        this.cacheManager = cacheManager;
+        this.mClient = mClient;
+        this.opFactory = opFactory;
+        this.executor = executor;
+        this.pollTask = scheduler.scheduleWithFixedDelay(this, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void run() {
+        if (polling.compareAndSet(false, true)) {
+            try {
+                executor.execute(pollRunnable);
+            } catch (RejectedExecutionException e) {
+                //saturated, skip this poll
+                polling.set(false);
+            }
+        }
+    }
+
+    /**
+     * poll the stats of all the nodes
+     *
+     * @throws InterruptedException if interrupted waiting for the nodes
+     */
+    public void poll() throws InterruptedException {
+        if (closed) {
+            return;
+        }
+        final long start = System.nanoTime();
+        final Map<SocketAddress, Map<String, String>> stats = new ConcurrentHashMap<SocketAddress, Map<String, String>>();
+        final Map<SocketAddress, Long> latencies = new ConcurrentHashMap<SocketAddress, Long>();
+        CountDownLatch latch = mClient.broadcastOp(new BroadcastOpFactory() {
+            public Operation newOp(final MemcachedNode node, final CountDownLatch latch) {
+                final SocketAddress address = node.getSocketAddress();
+                final Map<String, String> nodeStats = new HashMap<String, String>();
+                return opFactory.stats(null, new StatsOperation.Callback() {
+                    public void gotStat(String name, String value) {
+                        nodeStats.put(name, value);
+                    }
+
+                    public void receivedStatus(OperationStatus status) {
+                        latencies.put(address, System.nanoTime() - start);
+                        if (status.isSuccess()) {
+                            stats.put(address, nodeStats);
+                        }
+                    }
+
+                    public void complete() {
+                        latch.countDown();
+                    }
+                });
+            }
+        });
+        latch.await(mClient.getOperationTimeout(), TimeUnit.MILLISECONDS);
+        long elapsed = System.nanoTime() - start;
+        for (MemcachedNode node : mClient.getNodeLocator().getAll()) {
+            SocketAddress address = node.getSocketAddress();
+            Long latency = latencies.get(address);
+            getNodeStats(address).update(stats.get(address), latency == null ? elapsed : latency);
+        }
+    }
+
+    /**
+     * get the stats of a node
+     *
+     * @param node node address
+     * @return stats, registered as MXBean on creation, not registered once the poller is closed
+     */
+    public NodeStats getNodeStats(SocketAddress node) {
+        NodeStats stats = nodeStats.get(node);
+        if (stats == null) {
+            synchronized (this) {
+                if (closed) {
+                    return new NodeStats(node);
+                }
+                stats = nodeStats.get(node);
+                if (stats == null) {
+                    //registered before it is published, the stats found without the lock are registered
+                    stats = new NodeStats(node);
+                    MBeanServerRegistrationUtility.registerNodeObject(cacheManager, node, stats,
+                            MBeanServerRegistrationUtility.ObjectNameType.NodeStats);
+                    nodeStats.put(node, stats);
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * stop polling and unregister the MXBeans
+     */
+    public synchronized void close() {
+        closed = true;
+        pollTask.cancel(false);
+        for (SocketAddress node : nodeStats.keySet()) {
+            MBeanServerRegistrationUtility.unregisterNodeObject(cacheManager, node,
+                    MBeanServerRegistrationUtility.ObjectNameType.NodeStats);
+        }
+        nodeStats.clear();
+    }
+}
@@ -0,0 +1,21 @@
+package net.spy.memcached.jcache;
+
+/**
+ * what to do when a bounded queue of pending work is full
+ *
+ * @author linux_china
+ */
+public enum OverflowPolicy {
+    /**
+     * wait for room in the queue
+     */
+    BLOCK,
+    /**
+     * cancel the oldest pending work to make room
+     */
+    DROP_OLDEST,
+    /**
+     * refuse the new work
+     */
+    REJECT
+}
@@ -0,0 +1,48 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.CachedData;
+import net.spy.memcached.jcache.management.PayloadStatistics;
+import net.spy.memcached.transcoders.Transcoder;
+
+import javax.cache.configuration.CompleteConfiguration;
+
+/**
+ * transcoder of a cache recording the encoded size of its values when statistics are enabled, the encoding is
+ * delegated to the outer transcoder of the cache so that the sizes are the sizes stored in memcached
+ *
+ * @author linux_china
+ */
+public class SizeRecordingTranscoder implements Transcoder<Object> {
+    private final Transcoder<Object> delegate;
+    private final CompleteConfiguration<?, ?> configuration;
+    private final PayloadStatistics statistics;
+
+    public SizeRecordingTranscoder(Transcoder<Object> delegate, CompleteConfiguration<?, ?> configuration, PayloadStatistics statistics) {
+        this.delegate = delegate;
+        this.configuration = configuration;
+        this.statistics = statistics;
+    }
+
+    public boolean asyncDecode(CachedData d) {
+        return delegate.asyncDecode(d);
+    }
+
+    public CachedData encode(Object o) {
+        CachedData data = delegate.encode(o);
+        if (configuration.isStatisticsEnabled()) {
+            statistics.recordValueWritten(data.getData().length);
+        }
+        return data;
+    }
+
+    public Object decode(CachedData d) {
+        if (configuration.isStatisticsEnabled()) {
+            statistics.recordValueRead(d.getData().length);
+        }
+        return delegate.decode(d);
+    }
+
+    public int getMaxSize() {
+        return delegate.getMaxSize();
+    }
+}
@@ -0,0 +1,17 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.jcache.management.SlowOperation;
+
+/**
+ * hook called on the thread of an operation slower than the slow operation threshold of its cache
+ *
+ * @author linux_china
+ */
+public interface SlowOperationListener {
+
+    /**
+     * @param cacheName name of the cache
+     * @param operation the slow operation
+     */
+    void onSlowOperation(String cacheName, SlowOperation operation);
+}
@@ -0,0 +1,106 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.jcache.management.CacheOperation;
+import net.spy.memcached.jcache.management.SlowOperation;
+import net.spy.memcached.jcache.management.SlowOperationLogMXBean;
+import net.spy.memcached.transcoders.Transcoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * bounded lock free ring of the operations of a cache slower than a threshold.
+ * <p/>
+ * A fast operation only compares its latency with the threshold, a slow one claims a slot with one atomic
+ * increment and overwrites the oldest entry. The node and the encoded value size are only computed for
+ * slow operations.
+ *
+ * @author linux_china
+ */
+public class SlowOperationLog implements SlowOperationLogMXBean {
+    private static final long NANOSECONDS_IN_A_MICROSECOND = 1000L;
+    private final String cacheName;
+    private final NodeLocatorCache nodeLocator;
+    private final Transcoder<Object> transcoder;
+    private final long thresholdNanos;
+    private final boolean hashKeys;
+    private final SlowOperationListener listener;
+    private final AtomicReferenceArray<SlowOperation> ring;
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * construct a log
+     *
+     * @param cacheName       cache name
+     * @param nodeLocator     node locator, to find the node owning a key
+     * @param transcoder      transcoder, to get the size of a value
+     * @param thresholdMillis threshold of a slow operation
+     * @param capacity        number of slow operations kept
+     * @param hashKeys        keep the hash code of the keys instead of the keys
+     * @param listener        hook called for each slow operation, may be null
+     */
+    public SlowOperationLog(String cacheName, NodeLocatorCache nodeLocator, Transcoder<Object> transcoder, long thresholdMillis,
+                            int capacity, boolean hashKeys, SlowOperationListener listener) {
+        this.cacheName = cacheName;
+        this.nodeLocator = nodeLocator;
+        this.transcoder = transcoder;
+        this.thresholdNanos = thresholdMillis * 1000000L;
+        this.hashKeys = hashKeys;
+        this.listener = listener;
+        this.ring = new AtomicReferenceArray<SlowOperation>(Math.max(capacity, 1));
+    }
+
+    /**
+     * record an operation if it is slow
+     *
+     * @param operation      operation
+     * @param start          start time in nanoseconds
+     * @param compositeKey   memcached key
+     * @param value          value written or read, may be null
+     * @param queueWaitNanos time blocked before the operation was sent
+     */
+    public void record(CacheOperation operation, long start, String compositeKey, Object value, long queueWaitNanos) {
+        long latency = System.nanoTime() - start;
+        if (latency < thresholdNanos) {
+            return;
+        }
+        String key = hashKeys ? Integer.toHexString(compositeKey.hashCode()) : compositeKey;
+        String node = String.valueOf(nodeLocator.getNode(compositeKey));
+        int valueSize = value == null ? 0 : transcoder.encode(value).getData().length;
+        SlowOperation slowOperation = new SlowOperation(System.currentTimeMillis(), operation.getOperationName(), key, node,
+                valueSize, latency / NANOSECONDS_IN_A_MICROSECOND, queueWaitNanos / NANOSECONDS_IN_A_MICROSECOND);
+        ring.set((int) (count.getAndIncrement() % ring.length()), slowOperation);
+        if (listener != null) {
+            listener.onSlowOperation(cacheName, slowOperation);
+        }
+    }
+
+    public List<SlowOperation> getSlowOperations() {
+        long last = count.get();
+        List<SlowOperation> operations = new ArrayList<SlowOperation>();
+        for (long i = last - 1; i >= 0 && i >= last - ring.length(); i--) {
+            SlowOperation operation = ring.get((int) (i % ring.length()));
+            if (operation != null) {
+                operations.add(operation);
+            }
+        }
+        return operations;
+    }
+
+    public long getSlowOperationCount() {
+        return count.get();
+    }
+
+    public long getThresholdMillis() {
+        return thresholdNanos / 1000000L;
+    }
+
+    public void clear() {
+        for (int i = 0; i < ring.length(); i++) {
+            ring.set(i, null);
+        }
+        count.set(0);
+    }
+}
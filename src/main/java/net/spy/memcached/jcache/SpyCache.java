@@ -1,21 +1,28 @@
 package net.spy.memcached.jcache;
 
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.OperationTimeoutException;
 import net.spy.memcached.internal.OperationFuture;
+import net.spy.memcached.jcache.event.CacheEntryJournal;
+import net.spy.memcached.jcache.event.CacheEntryListenerExecutor;
+import net.spy.memcached.jcache.event.CacheEntryListenerIndex;
 import net.spy.memcached.jcache.event.RICacheEntryEvent;
 import net.spy.memcached.jcache.event.RICacheEntryListenerRegistration;
 import net.spy.memcached.jcache.event.RICacheEventDispatcher;
+import net.spy.memcached.jcache.invalidation.Invalidation;
+import net.spy.memcached.jcache.invalidation.InvalidationBus;
+import net.spy.memcached.jcache.management.CacheOperation;
 import net.spy.memcached.jcache.management.MBeanServerRegistrationUtility;
 import net.spy.memcached.jcache.management.RICacheMXBean;
 import net.spy.memcached.jcache.management.RICacheStatisticsMXBean;
+import net.spy.memcached.transcoders.Transcoder;
 
 import javax.cache.Cache;
+import javax.cache.CacheException;
 import javax.cache.CacheManager;
 import javax.cache.configuration.CacheEntryListenerConfiguration;
 import javax.cache.configuration.CompleteConfiguration;
 import javax.cache.configuration.Configuration;
-import javax.cache.event.CacheEntryRemovedListener;
-import javax.cache.event.CacheEntryUpdatedListener;
 import javax.cache.event.EventType;
 import javax.cache.expiry.Duration;
 import javax.cache.integration.*;
@@ -23,9 +30,17 @@ import javax.cache.processor.EntryProcessor;
 import javax.cache.processor.EntryProcessorException;
 import javax.cache.processor.EntryProcessorResult;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static javax.cache.event.EventType.CREATED;
+import static javax.cache.event.EventType.EXPIRED;
 import static javax.cache.event.EventType.REMOVED;
 
 
@@ -36,14 +51,44 @@ import static javax.cache.event.EventType.REMOVED;
  */
 @SuppressWarnings("unchecked")
 public class SpyCache<K, V> implements Cache<K, V> {
+    /**
+     * marker returned when a get did not complete within the latency budget
+     */
+    private static final Object BUDGET_EXCEEDED = new Object();
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    private static final long UNKNOWN_COMPUTE_TIME = -1;
+    /**
+     * memcached reads larger expirations, 30 days, as Unix timestamps
+     */
+    private static final int MAX_RELATIVE_EXPIRATION = 60 * 60 * 24 * 30;
     private CacheManager cacheManager;
     private MemcachedClient mClient;
     private String cacheName;
     private String seperator;
     private SpyMutableConfiguration<K, V> configuration;
     private final CopyOnWriteArrayList<RICacheEntryListenerRegistration<K, V>> listenerRegistrations;
-    private final RICacheMXBean cacheMXBean;
+    private final RICacheMXBean<K, V> cacheMXBean;
     private final RICacheStatisticsMXBean statistics;
+    private final Transcoder<Object> transcoder;
+    private final CacheEventRecorder eventRecorder;
+    private final SlowOperationLog slowOperationLog;
+    private final LatencyBudget latencyBudget;
+    private final NodeCircuitBreakerRegistry circuitBreakerRegistry;
+    private final InFlightLimiter inFlightLimiter;
+    private final GetBatcher getBatcher;
+    private final LoaderBatcher<K, V> loaderBatcher;
+    private final WriteBehindQueue<K, V> writeBehindQueue;
+    private final CacheEntryListenerExecutor<K, V> listenerExecutor;
+    private final CacheEntryListenerIndex<K, V> listenerIndex = new CacheEntryListenerIndex<K, V>();
+    private final InvalidationBus invalidationBus;
+    private final ExpiryTimerWheel<K> expiryTimerWheel;
+    private final ScheduledFuture<?> expiryTask;
+    private final CacheEntryJournal<K> journal;
+    private final HotKeyTracker hotKeyTracker;
+    private final ScheduledFuture<?> hotKeyTask;
+    private final TouchScheduler touchScheduler;
+    private final EarlyExpiration earlyExpiration;
+    private final ConcurrentHashMap<K, Boolean> recomputing = new ConcurrentHashMap<K, Boolean>();
     private boolean isClosed;
 
     public SpyCache(CacheManager cacheManager, MemcachedClient mClient, String cacheName, String seperator, CompleteConfiguration<K, V> configuration) {
@@ -52,9 +97,106 @@ public class SpyCache<K, V> implements Cache<K, V> {
         this.cacheName = cacheName;
         this.seperator = seperator;
         this.configuration = new SpyMutableConfiguration<K, V>(configuration);
-        this.cacheMXBean = new RICacheMXBean(this);
-        this.statistics = new RICacheStatisticsMXBean(this);
+        this.cacheMXBean = new RICacheMXBean<K, V>(this);
+        this.statistics = new RICacheStatisticsMXBean(this, this.configuration.getItemSizeLimit());
+        //the stamped values of the early recompute are decoded even if it is disabled since they were written,
+        //the sizes are recorded outermost to count the stamp header as memcached stores it
+        this.transcoder = new SizeRecordingTranscoder(new StampedValueTranscoder(mClient.getTranscoder()), this.configuration,
+                statistics.getPayloadStatistics());
+        this.statistics.setTimingSamplePeriod(this.configuration.getStatisticsTimingSamplePeriod());
         this.listenerRegistrations = new CopyOnWriteArrayList<RICacheEntryListenerRegistration<K, V>>();
+        SpyCacheManager spyCacheManager = (SpyCacheManager) cacheManager;
+        this.eventRecorder = CacheEventRecorders.create(cacheName, spyCacheManager.getNodeLocatorCache(), mClient.getTranscoder(),
+                Boolean.valueOf(spyCacheManager.getParameter("jfrEvents", "true")));
+        this.listenerExecutor = new CacheEntryListenerExecutor<K, V>(spyCacheManager.getListenerExecutor(),
+                Integer.valueOf(spyCacheManager.getParameter("listenerQueueSize", "1000")),
+                OverflowPolicy.valueOf(spyCacheManager.getParameter("listenerOverflowPolicy", OverflowPolicy.BLOCK.name())),
+                Long.valueOf(spyCacheManager.getParameter("listenerBlockTimeoutMillis", String.valueOf(mClient.getOperationTimeout()))));
+        if (this.configuration.isLatencyBudgetEnabled()) {
+            long maxMillis = this.configuration.getLatencyBudgetMaxMillis() > 0 ? this.configuration.getLatencyBudgetMaxMillis() : mClient.getOperationTimeout();
+            this.latencyBudget = new LatencyBudget(this.configuration.getLatencyBudgetPercentile(), this.configuration.getLatencyBudgetMinMillis(), maxMillis,
+                    spyCacheManager.getScheduledExecutor());
+        } else {
+            this.latencyBudget = null;
+        }
+        this.circuitBreakerRegistry = spyCacheManager.getCircuitBreakerRegistry();
+        this.invalidationBus = spyCacheManager.getInvalidationBus();
+        if (this.configuration.getMaxInFlightOperations() > 0) {
+            this.inFlightLimiter = new InFlightLimiter(this.configuration.getMaxInFlightOperations(),
+                    this.configuration.getInFlightOverflowPolicy(), mClient.getOperationTimeout());
+        } else {
+            this.inFlightLimiter = null;
+        }
+        if (this.configuration.isGetBatchingEnabled()) {
+            this.getBatcher = new GetBatcher(mClient, transcoder, this.configuration.getGetBatchSize(), this.configuration.getGetBatchWindowMicros(),
+                    spyCacheManager.getScheduledExecutor());
+        } else {
+            this.getBatcher = null;
+        }
+        if (this.configuration.isLoaderBatchingEnabled() && this.configuration.getCacheLoader() != null) {
+            this.loaderBatcher = new LoaderBatcher<K, V>(this, this.configuration.getCacheLoader(),
+                    this.configuration.getLoaderBatchSize(), this.configuration.getLoaderBatchWindowMicros());
+        } else {
+            this.loaderBatcher = null;
+        }
+        if (this.configuration.isWriteBehindSupport()) {
+            this.writeBehindQueue = new WriteBehindQueue<K, V>(this, this.configuration.getCacheWriter(),
+                    this.configuration.getWriteBehindBatchSize(), this.configuration.getWriteBehindFlushIntervalMillis(),
+                    this.configuration.getWriteBehindMaxQueueSize(), this.configuration.getWriteBehindMaxRetries(),
+                    this.configuration.getWriteBehindRetryBackoffMillis(), mClient.getOperationTimeout(),
+                    spyCacheManager.getScheduledExecutor());
+        } else {
+            this.writeBehindQueue = null;
+        }
+        if (this.configuration.isExpiryTrackingEnabled()) {
+            this.expiryTimerWheel = new ExpiryTimerWheel<K>(this.configuration.getExpiryTrackingMaxKeys(),
+                    this.configuration.getExpiryTrackingSampleRate(), System.currentTimeMillis() / 1000);
+            this.expiryTask = spyCacheManager.getScheduledExecutor().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    expireTrackedKeys();
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        } else {
+            this.expiryTimerWheel = null;
+            this.expiryTask = null;
+        }
+        if (this.configuration.isJournalEnabled()) {
+            this.journal = new CacheEntryJournal<K>(this.configuration.getJournalCapacity(),
+                    this.configuration.getJournalMaxKeyBytes(), mClient.getTranscoder());
+        } else {
+            this.journal = null;
+        }
+        if (this.configuration.isSlowOperationLogEnabled()) {
+            this.slowOperationLog = new SlowOperationLog(cacheName, spyCacheManager.getNodeLocatorCache(), mClient.getTranscoder(),
+                    this.configuration.getSlowOperationThresholdMillis(), this.configuration.getSlowOperationLogSize(),
+                    this.configuration.isSlowOperationHashKeys(), this.configuration.getSlowOperationListener());
+        } else {
+            this.slowOperationLog = null;
+        }
+        if (this.configuration.isHotKeyTrackingEnabled()) {
+            this.hotKeyTracker = new HotKeyTracker(spyCacheManager.getNodeLocatorCache(), this.configuration.getHotKeyTopK(), this.configuration.getHotKeySamplePeriod(),
+                    this.configuration.getHotKeySketchWidth(), this.configuration.getHotKeyWindowSeconds());
+            this.hotKeyTask = spyCacheManager.getScheduledExecutor().scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    hotKeyTracker.rotate();
+                }
+            }, this.configuration.getHotKeyWindowSeconds(), this.configuration.getHotKeyWindowSeconds(), TimeUnit.SECONDS);
+        } else {
+            this.hotKeyTracker = null;
+            this.hotKeyTask = null;
+        }
+        if (this.configuration.getExpiryPolicy().getExpiryForAccess() != null) {
+            this.touchScheduler = new TouchScheduler(mClient, this.configuration.getTouchIntervalMillis(),
+                    this.configuration.getTouchFlushIntervalMillis(), this.configuration.getTouchMaxPending(),
+                    spyCacheManager.getScheduledExecutor());
+        } else {
+            this.touchScheduler = null;
+        }
+        if (this.configuration.isEarlyExpirationEnabled()) {
+            this.earlyExpiration = new EarlyExpiration(this.configuration.getEarlyRecomputeBeta(), this.configuration.getTtlJitter());
+        } else {
+            this.earlyExpiration = null;
+        }
         //establish all of the listeners
         for (CacheEntryListenerConfiguration<K, V> listenerConfiguration :
                 this.configuration.getCacheEntryListenerConfigurations()) {
@@ -74,13 +216,21 @@ public class SpyCache<K, V> implements Cache<K, V> {
     public void setStatisticsEnabled(boolean enabled) {
         if (enabled) {
             MBeanServerRegistrationUtility.registerCacheObject(this, MBeanServerRegistrationUtility.ObjectNameType.Statistics);
+            MBeanServerRegistrationUtility.registerLatencyObjects(this);
+            MBeanServerRegistrationUtility.registerCacheObject(this, MBeanServerRegistrationUtility.ObjectNameType.HotKeys);
+            MBeanServerRegistrationUtility.registerCacheObject(this, MBeanServerRegistrationUtility.ObjectNameType.Payload);
+            MBeanServerRegistrationUtility.registerCacheObject(this, MBeanServerRegistrationUtility.ObjectNameType.SlowOperations);
         } else {
             MBeanServerRegistrationUtility.unregisterCacheObject(this, MBeanServerRegistrationUtility.ObjectNameType.Statistics);
+            MBeanServerRegistrationUtility.unregisterLatencyObjects(this);
+            MBeanServerRegistrationUtility.unregisterCacheObject(this, MBeanServerRegistrationUtility.ObjectNameType.HotKeys);
+            MBeanServerRegistrationUtility.unregisterCacheObject(this, MBeanServerRegistrationUtility.ObjectNameType.Payload);
+            MBeanServerRegistrationUtility.unregisterCacheObject(this, MBeanServerRegistrationUtility.ObjectNameType.SlowOperations);
         }
         configuration.setStatisticsEnabled(enabled);
     }
 
-    public RICacheMXBean getCacheMXBean() {
+    public RICacheMXBean<K, V> getCacheMXBean() {
         return cacheMXBean;
     }
 
@@ -88,28 +238,283 @@ public class SpyCache<K, V> implements Cache<K, V> {
         return statistics;
     }
 
+    /**
+     * get the limiter of the operations in flight
+     *
+     * @return limiter, null if the operations in flight are unbounded
+     */
+    public InFlightLimiter getInFlightLimiter() {
+        return inFlightLimiter;
+    }
+
+    /**
+     * get the tracker of the most accessed keys
+     *
+     * @return hot key tracker, null if hot key tracking is not enabled
+     */
+    public HotKeyTracker getHotKeyTracker() {
+        return hotKeyTracker;
+    }
+
+    /**
+     * get the log of the slow operations
+     *
+     * @return slow operation log, null if it is not enabled
+     */
+    public SlowOperationLog getSlowOperationLog() {
+        return slowOperationLog;
+    }
+
+    /**
+     * get the write-behind queue of the cache writer
+     *
+     * @return write-behind queue, null if write behind is not enabled
+     */
+    public WriteBehindQueue<K, V> getWriteBehindQueue() {
+        return writeBehindQueue;
+    }
+
+    /**
+     * get the executor of the asynchronous listeners
+     *
+     * @return listener executor
+     */
+    public CacheEntryListenerExecutor<K, V> getListenerExecutor() {
+        return listenerExecutor;
+    }
+
     public V get(K key) {
-        long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
-        V value = (V) mClient.get(getCompositeKey(key));
+        long start = startTiming();
+        String compositeKey = getCompositeKey(key);
+        recordAccess(compositeKey);
+        long slowStart = startSlowTiming();
+        Object event = eventRecorder.begin(CacheEventRecorder.Kind.GET);
+        NodeCircuitBreaker breaker = getCircuitBreaker(compositeKey);
+        boolean circuitOpen = breaker != null && !breaker.allowRequest();
+        long issuedAt = breaker == null ? 0 : System.currentTimeMillis();
+        V value;
+        if (circuitOpen) {
+            //fail fast as a miss
+            value = null;
+        } else if (latencyBudget == null) {
+            value = unstamp(key, getFromMemcached(compositeKey, breaker, issuedAt));
+        } else {
+            Future<Object> future;
+            try {
+                future = getBatcher == null ? mClient.asyncGet(compositeKey, transcoder) : getBatcher.submit(compositeKey);
+            } catch (RuntimeException e) {
+                if (breaker != null) {
+                    breaker.recordFailure(issuedAt);
+                }
+                throw e;
+            }
+            Object result = awaitWithinBudget(future, breaker, issuedAt);
+            if (result == BUDGET_EXCEEDED) {
+                V hedged = hedge(key, future, start);
+                eventRecorder.end(event, compositeKey, hedged, "hedged");
+                recordSlow(CacheOperation.GET, slowStart, compositeKey, hedged, 0);
+                return hedged;
+            }
+            value = unstamp(key, result);
+        }
         if (configuration.isStatisticsEnabled()) {
-            statistics.addGetTimeNano(System.nanoTime() - start);
+            if (start != NOT_TIMED) {
+                long elapsed = System.nanoTime() - start;
+                statistics.addGetTimeNano(elapsed);
+                statistics.recordLatency(CacheOperation.GET, elapsed);
+            }
             if (value != null) {
                 statistics.increaseCacheHits(1);
             } else {
                 statistics.increaseCacheMisses(1);
             }
         }
+        eventRecorder.end(event, compositeKey, value, circuitOpen ? "circuit-open" : value != null ? "hit" : "miss");
+        recordSlow(CacheOperation.GET, slowStart, compositeKey, value, 0);
+        if (value != null) {
+            touchAccessed(key, compositeKey);
+        }
         //load value from cache loader
-        if (configuration.isReadThroughSupport()) {
-            value = configuration.getCacheLoader().load(key);
+        if (value == null && configuration.isReadThroughSupport() && (!circuitOpen || configuration.isCircuitOpenReadThrough())) {
+            value = load(key);
+        }
+        return value;
+    }
+
+    /**
+     * load value from cache loader, batched with concurrent misses if enabled, and write it back to the cache
+     *
+     * @param key key
+     * @return loaded value
+     */
+    private V load(K key) {
+        if (loaderBatcher == null) {
+            long start = startTiming();
+            long slowStart = startSlowTiming();
+            Object event = eventRecorder.begin(CacheEventRecorder.Kind.LOAD);
+            long computeStart = System.nanoTime();
+            V value = configuration.getCacheLoader().load(key);
+            long computeNanos = System.nanoTime() - computeStart;
+            if (earlyExpiration != null) {
+                earlyExpiration.recordComputeTime(computeNanos);
+            }
+            recordLatency(CacheOperation.LOAD, start);
+            eventRecorder.end(event, getCompositeKey(key), value, value != null ? "loaded" : "not-found");
+            recordSlow(CacheOperation.LOAD, slowStart, getCompositeKey(key), value, 0);
             if (value != null) {
-                put(key, value);
+                put(key, value, null, computeNanos);
+            }
+            return value;
+        }
+        BatchedFuture<K, V> future = loaderBatcher.submit(key);
+        try {
+            return future.get(configuration.getLoaderBatchTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new CacheLoaderException("Timeout waiting for loaded value", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheLoaderException("Interrupted waiting for loaded value", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CacheLoaderException("Exception loading value", e.getCause());
+        }
+    }
+
+    /**
+     * get value from memcached, batched with concurrent gets if enabled, and record the outcome in the circuit breaker
+     *
+     * @param compositeKey memcached key
+     * @param breaker      circuit breaker, null if disabled
+     * @param issuedAt     time the get was allowed by the circuit breaker
+     * @return value
+     */
+    private Object getFromMemcached(String compositeKey, NodeCircuitBreaker breaker, long issuedAt) {
+        if (breaker == null) {
+            return getBatcher == null ? mClient.get(compositeKey, transcoder) : awaitBatched(getBatcher.submit(compositeKey));
+        }
+        try {
+            Object value = getFromMemcached(compositeKey, null, issuedAt);
+            breaker.recordSuccess(issuedAt);
+            return value;
+        } catch (OperationTimeoutException e) {
+            breaker.recordTimeout(issuedAt);
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.recordFailure(issuedAt);
+            throw e;
+        }
+    }
+
+    /**
+     * wait for a batched get within the operation timeout
+     *
+     * @param future batched future
+     * @return value
+     */
+    private Object awaitBatched(Future<Object> future) {
+        try {
+            return future.get(mClient.getOperationTimeout(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new OperationTimeoutException("Timeout waiting for value", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException("Interrupted waiting for value", e);
+        } catch (ExecutionException e) {
+            throw new CacheException("Exception waiting for value", e);
+        }
+    }
+
+    /**
+     * wait for the get future within the latency budget, an exceeded budget counts as timeout for the circuit breaker
+     *
+     * @param future   get future
+     * @param breaker  circuit breaker, null if disabled
+     * @param issuedAt time the get was allowed by the circuit breaker
+     * @return value or {@link #BUDGET_EXCEEDED} if the budget elapsed
+     */
+    private Object awaitWithinBudget(Future<Object> future, NodeCircuitBreaker breaker, long issuedAt) {
+        long budget = latencyBudget.getBudgetNanos();
+        long start = System.nanoTime();
+        try {
+            Object value = future.get(budget, TimeUnit.NANOSECONDS);
+            latencyBudget.record(System.nanoTime() - start);
+            if (breaker != null) {
+                breaker.recordSuccess(issuedAt);
+            }
+            return value;
+        } catch (TimeoutException e) {
+            latencyBudget.recordTimeout(budget);
+            if (breaker != null) {
+                breaker.recordTimeout(issuedAt);
+            }
+            return BUDGET_EXCEEDED;
+        } catch (InterruptedException e) {
+            if (breaker != null) {
+                breaker.releaseProbe();
+            }
+            Thread.currentThread().interrupt();
+            throw new CacheException("Interrupted waiting for value", e);
+        } catch (ExecutionException e) {
+            if (breaker != null) {
+                breaker.recordFailure(issuedAt);
+            }
+            throw new CacheException("Exception waiting for value", e);
+        }
+    }
+
+    /**
+     * hedge a get which exceeded the latency budget: memcached has no replica, so the
+     * cache loader is raced against the pending get, without cache loader it is a miss.
+     *
+     * @param key    key
+     * @param future pending get future
+     * @param start  start time for statistics
+     * @return value
+     */
+    private V hedge(K key, Future<Object> future, long start) {
+        V value = null;
+        boolean hedgeWin = false;
+        if (configuration.isReadThroughSupport()) {
+            V loaded = load(key);
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    value = unstamp(key, future.get());
+                } catch (Exception ignore) {
+                }
+            }
+            if (value == null && loaded != null) {
+                value = loaded;
+                hedgeWin = true;
+            }
+        }
+        if (!future.isDone()) {
+            future.cancel(false);
+        }
+        if (configuration.isStatisticsEnabled()) {
+            if (start != NOT_TIMED) {
+                long elapsed = System.nanoTime() - start;
+                statistics.addGetTimeNano(elapsed);
+                statistics.recordLatency(CacheOperation.GET, elapsed);
+            }
+            statistics.increaseCacheHedges(1);
+            if (hedgeWin) {
+                statistics.increaseCacheHedgeWins(1);
+                statistics.increaseCacheMisses(1);
+            } else if (value != null) {
+                statistics.increaseCacheHits(1);
+            } else {
+                statistics.increaseCacheMisses(1);
             }
         }
         return value;
     }
 
     public Map<K, V> getAll(Set<? extends K> keys) {
+        long start = startTiming();
+        Object event = eventRecorder.begin(CacheEventRecorder.Kind.BULK_GET);
         Map<K, V> map = new HashMap<K, V>();
         for (K key : keys) {
             V v = get(key);
@@ -117,6 +522,8 @@ public class SpyCache<K, V> implements Cache<K, V> {
                 map.put(key, v);
             }
         }
+        recordLatency(CacheOperation.GET_ALL, start);
+        eventRecorder.end(event, keys.size(), "completed");
         return map;
     }
 
@@ -142,10 +549,16 @@ public class SpyCache<K, V> implements Cache<K, V> {
                         keysToLoad.add(key);
                     }
                 }
+                long start = startTiming();
+                Object event = eventRecorder.begin(CacheEventRecorder.Kind.LOAD);
                 Map<? extends K, ? extends V> loaded = configuration.getCacheLoader().loadAll(keysToLoad);
+                recordLatency(CacheOperation.LOAD, start);
+                eventRecorder.end(event, loaded.size(), "loaded");
+                RICacheEventDispatcher<K, V> dispatcher = new RICacheEventDispatcher<K, V>(listenerExecutor);
                 for (Map.Entry<? extends K, ? extends V> entry : loaded.entrySet()) {
-                    put(entry.getKey(), entry.getValue());
+                    put(entry.getKey(), entry.getValue(), dispatcher);
                 }
+                dispatch(dispatcher);
                 if (completionListener != null) {
                     completionListener.onCompletion();
                 }
@@ -158,23 +571,58 @@ public class SpyCache<K, V> implements Cache<K, V> {
     }
 
     public void put(K key, V value) {
-        //number of seconds since January 1, 1970
-        long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
-        mClient.set(getCompositeKey(key), getExpiredTimeStamp(), value);
+        put(key, value, null);
+    }
+
+    /**
+     * put a value, a bulk operation passes its dispatcher to collect the events and deliver them once
+     *
+     * @param key        key
+     * @param value      value
+     * @param dispatcher dispatcher of the bulk operation, null to dispatch the event at once
+     */
+    private void put(K key, V value, RICacheEventDispatcher<K, V> dispatcher) {
+        put(key, value, dispatcher, UNKNOWN_COMPUTE_TIME);
+    }
+
+    /**
+     * put a value computed in the specified time
+     *
+     * @param key          key
+     * @param value        value
+     * @param dispatcher   dispatcher of the bulk operation, null to dispatch the event at once
+     * @param computeNanos time to compute the value, UNKNOWN_COMPUTE_TIME if it was not loaded
+     */
+    private void put(K key, V value, RICacheEventDispatcher<K, V> dispatcher, long computeNanos) {
+        long start = startTiming();
+        long slowStart = startSlowTiming();
+        Object event = eventRecorder.begin(CacheEventRecorder.Kind.PUT);
+        int expiration = getWriteExpiration(configuration.getExpiryPolicy().getExpiryForCreation());
+        String compositeKey = getCompositeKey(key);
+        long queueWait = setAsync(compositeKey, expiration, stamp(value, expiration, computeNanos));
+        eventRecorder.end(event, compositeKey, value, "sent");
+        recordSlow(CacheOperation.PUT, slowStart, compositeKey, value, queueWait);
+        if (expiryTimerWheel != null) {
+            expiryTimerWheel.schedule(key, toTimestamp(expiration));
+        }
         if (configuration.isStatisticsEnabled()) {
-            statistics.addPutTimeNano(System.nanoTime() - start);
+            if (start != NOT_TIMED) {
+                long elapsed = System.nanoTime() - start;
+                statistics.addPutTimeNano(elapsed);
+                statistics.recordLatency(CacheOperation.PUT, elapsed);
+            }
             statistics.increaseCachePuts(1);
         }
         //write through
         if (configuration.isWriteThroughSupport()) {
-            configuration.getCacheWriter().write(new SpyEntry<K, V>(this, key, value));
+            writeThrough(key, value);
         }
         //fire updated event
-        if (!listenerRegistrations.isEmpty()) {
-            RICacheEventDispatcher<K, V> dispatcher = new RICacheEventDispatcher<K, V>();
-            dispatcher.addEvent(CacheEntryUpdatedListener.class, new RICacheEntryEvent<K, V>(this, key, value, null, EventType.UPDATED));
-            dispatcher.dispatch(listenerRegistrations);
+        journal(key, EventType.UPDATED);
+        if (listenerIndex.hasListeners(EventType.UPDATED)) {
+            dispatchEvent(new RICacheEntryEvent<K, V>(this, key, value, null, EventType.UPDATED), dispatcher);
         }
+        publishInvalidation(key, EventType.UPDATED);
     }
 
     public V getAndPut(K key, V value) {
@@ -184,19 +632,22 @@ public class SpyCache<K, V> implements Cache<K, V> {
     }
 
     public void putAll(Map<? extends K, ? extends V> map) {
+        long start = startTiming();
+        RICacheEventDispatcher<K, V> dispatcher = new RICacheEventDispatcher<K, V>(listenerExecutor);
         for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
-            put(entry.getKey(), entry.getValue());
+            put(entry.getKey(), entry.getValue(), dispatcher);
         }
+        recordLatency(CacheOperation.PUT_ALL, start);
+        dispatch(dispatcher);
     }
 
     public boolean putIfAbsent(K key, V value) {
         if (!containsKey(key)) {
             put(key, value);
             //raise "created" event
-            if (!listenerRegistrations.isEmpty()) {
-                RICacheEventDispatcher<K, V> dispatcher = new RICacheEventDispatcher<K, V>();
-                dispatcher.addEvent(CacheEntryRemovedListener.class, new RICacheEntryEvent<K, V>(this, key, value, CREATED));
-                dispatcher.dispatch(listenerRegistrations);
+            journal(key, CREATED);
+            if (listenerIndex.hasListeners(CREATED)) {
+                dispatchEvent(new RICacheEntryEvent<K, V>(this, key, value, CREATED));
             }
             return true;
         } else {
@@ -205,22 +656,43 @@ public class SpyCache<K, V> implements Cache<K, V> {
     }
 
     public boolean remove(K key) {
-        long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
-        mClient.delete(getCompositeKey(key));
+        return remove(key, (RICacheEventDispatcher<K, V>) null);
+    }
+
+    /**
+     * remove a value, a bulk operation passes its dispatcher to collect the events and deliver them once
+     *
+     * @param key        key
+     * @param dispatcher dispatcher of the bulk operation, null to dispatch the event at once
+     * @return true
+     */
+    private boolean remove(K key, RICacheEventDispatcher<K, V> dispatcher) {
+        long start = startTiming();
+        long slowStart = startSlowTiming();
+        String compositeKey = getCompositeKey(key);
+        long queueWait = deleteAsync(compositeKey);
+        recordSlow(CacheOperation.REMOVE, slowStart, compositeKey, null, queueWait);
+        if (expiryTimerWheel != null) {
+            expiryTimerWheel.cancel(key);
+        }
         if (configuration.isStatisticsEnabled()) {
-            statistics.addRemoveTimeNano(System.nanoTime() - start);
+            if (start != NOT_TIMED) {
+                long elapsed = System.nanoTime() - start;
+                statistics.addRemoveTimeNano(elapsed);
+                statistics.recordLatency(CacheOperation.REMOVE, elapsed);
+            }
             statistics.increaseCacheRemovals(1);
         }
         //delete cache entry
-        if (configuration.isWriteThrough() && this.configuration.getCacheWriter() != null) {
-            configuration.getCacheWriter().delete(key);
+        if (configuration.isWriteThroughSupport()) {
+            deleteThrough(key);
         }
         //raise "remove" event
-        if (!listenerRegistrations.isEmpty()) {
-            RICacheEventDispatcher<K, V> dispatcher = new RICacheEventDispatcher<K, V>();
-            dispatcher.addEvent(CacheEntryRemovedListener.class, new RICacheEntryEvent<K, V>(this, key, null, REMOVED));
-            dispatcher.dispatch(listenerRegistrations);
+        journal(key, REMOVED);
+        if (listenerIndex.hasListeners(REMOVED)) {
+            dispatchEvent(new RICacheEntryEvent<K, V>(this, key, null, REMOVED), dispatcher);
         }
+        publishInvalidation(key, REMOVED);
         return true;
     }
 
@@ -250,30 +722,69 @@ public class SpyCache<K, V> implements Cache<K, V> {
     }
 
     public boolean replace(K key, V value) {
-        //number of seconds since January 1, 1970
-        long start = configuration.isStatisticsEnabled() ? System.nanoTime() : 0;
-        OperationFuture<Boolean> future = mClient.replace(getCompositeKey(key), getExpiredTimeStamp(), value);
+        long start = startTiming();
+        String compositeKey = getCompositeKey(key);
+        recordAccess(compositeKey);
+        long slowStart = startSlowTiming();
+        Object event = eventRecorder.begin(CacheEventRecorder.Kind.REPLACE);
+        NodeCircuitBreaker breaker = getCircuitBreaker(compositeKey);
+        if (breaker != null && !breaker.allowRequest()) {
+            if (configuration.isStatisticsEnabled()) {
+                statistics.increaseCacheMisses(1);
+            }
+            eventRecorder.end(event, compositeKey, value, "circuit-open");
+            return false;
+        }
+        //the entry exists, its expiration is updated, memcached can not keep the previous one
+        Duration expiryForUpdate = configuration.getExpiryPolicy().getExpiryForUpdate();
+        int expiration = getWriteExpiration(expiryForUpdate != null ? expiryForUpdate : configuration.getExpiryPolicy().getExpiryForCreation());
+        long issuedAt = breaker == null ? 0 : System.currentTimeMillis();
+        OperationFuture<Boolean> future;
+        try {
+            future = mClient.replace(compositeKey, expiration, stamp(value, expiration, UNKNOWN_COMPUTE_TIME), transcoder);
+        } catch (RuntimeException e) {
+            if (breaker != null) {
+                breaker.recordFailure(issuedAt);
+            }
+            throw e;
+        }
+        if (breaker != null) {
+            future.addListener(breaker.outcomeListener(issuedAt));
+        }
         boolean result = false;
         try {
             result = future.get();
             //write through
-            if (configuration.isWriteThrough() && configuration.getCacheWriter() != null) {
-                configuration.getCacheWriter().write(new SpyEntry<K, V>(this, key, value));
+            if (configuration.isWriteThroughSupport()) {
+                writeThrough(key, value);
             }
             //fire updated event
-            if (!listenerRegistrations.isEmpty()) {
-                RICacheEventDispatcher<K, V> dispatcher = new RICacheEventDispatcher<K, V>();
-                dispatcher.addEvent(CacheEntryUpdatedListener.class, new RICacheEntryEvent<K, V>(this, key, value, null, EventType.UPDATED));
-                dispatcher.dispatch(listenerRegistrations);
+            if (listenerIndex.hasListeners(EventType.UPDATED)) {
+                dispatchEvent(new RICacheEntryEvent<K, V>(this, key, value, null, EventType.UPDATED));
+            }
+            if (result) {
+                journal(key, EventType.UPDATED);
+                publishInvalidation(key, EventType.UPDATED);
+                if (expiryTimerWheel != null) {
+                    expiryTimerWheel.schedule(key, toTimestamp(expiration));
+                }
             }
         } catch (Exception ignore) {
         } finally {
+            eventRecorder.end(event, compositeKey, value, result ? "replaced" : "not-replaced");
+            recordSlow(CacheOperation.REPLACE, slowStart, compositeKey, value, 0);
             if (configuration.isStatisticsEnabled()) {
-                statistics.addGetTimeNano(System.nanoTime() - start);
+                if (start != NOT_TIMED) {
+                    long elapsed = System.nanoTime() - start;
+                    statistics.addGetTimeNano(elapsed);
+                    statistics.recordLatency(CacheOperation.REPLACE, elapsed);
+                    if (result) {
+                        statistics.addPutTimeNano(elapsed);
+                    }
+                }
                 if (result) {
                     statistics.increaseCachePuts(1);
                     statistics.increaseCacheHits(1);
-                    statistics.addPutTimeNano(System.nanoTime() - start);
                 } else {
                     statistics.increaseCacheMisses(1);
                 }
@@ -289,9 +800,11 @@ public class SpyCache<K, V> implements Cache<K, V> {
     }
 
     public void removeAll(Set<? extends K> keys) {
+        RICacheEventDispatcher<K, V> dispatcher = new RICacheEventDispatcher<K, V>(listenerExecutor);
         for (K key : keys) {
-            remove(key);
+            remove(key, dispatcher);
         }
+        dispatch(dispatcher);
     }
 
     public void removeAll() {
@@ -303,7 +816,7 @@ public class SpyCache<K, V> implements Cache<K, V> {
     }
 
     public <C extends Configuration<K, V>> C getConfiguration(Class<C> clazz) {
-        if (clazz.isAssignableFrom(this.getClass())) {
+        if (clazz.isAssignableFrom(this.configuration.getClass())) {
             return (C) this.configuration;
         }
         return null;
@@ -341,6 +854,21 @@ public class SpyCache<K, V> implements Cache<K, V> {
 
     public void close() {
         ((SpyCacheManager) cacheManager).releaseCache(this.cacheName);
+        if (getBatcher != null) {
+            getBatcher.flush();
+        }
+        if (writeBehindQueue != null) {
+            writeBehindQueue.close();
+        }
+        if (expiryTask != null) {
+            expiryTask.cancel(false);
+        }
+        if (hotKeyTask != null) {
+            hotKeyTask.cancel(false);
+        }
+        if (touchScheduler != null) {
+            touchScheduler.close();
+        }
         //disable statistics and management
         setStatisticsEnabled(false);
         setManagementEnabled(false);
@@ -379,37 +907,518 @@ public class SpyCache<K, V> implements Cache<K, V> {
         return this.cacheName + this.seperator + key.toString();
     }
 
+    /**
+     * get the expiry time of a created entry
+     *
+     * @return number of seconds since January 1, 1970, 0 for eternal
+     */
     public int getExpiredTimeStamp() {
-        Duration expiryForCreation = configuration.getExpiryPolicy().getExpiryForCreation();
-        if (expiryForCreation.isEternal()) {
+        return toTimestamp(getExpiration(configuration.getExpiryPolicy().getExpiryForCreation()));
+    }
+
+    /**
+     * convert a duration to a memcached expiration: up to 30 days it is relative to the clock of the server,
+     * so that the clock skew of the client does not expire entries early, beyond it is a Unix timestamp
+     *
+     * @param duration duration
+     * @return memcached expiration, 0 for eternal, -1 for expired
+     */
+    public static int getExpiration(Duration duration) {
+        if (duration.isEternal()) {
+            return 0;
+        }
+        if (duration.isZero()) {
+            return -1;
+        }
+        //round up, a relative expiration of 0 would be eternal
+        long seconds = Math.max(1, (duration.getTimeUnit().toMillis(duration.getDurationAmount()) + 999) / 1000);
+        if (seconds <= MAX_RELATIVE_EXPIRATION) {
+            return (int) seconds;
+        }
+        return (int) (System.currentTimeMillis() / 1000 + seconds);
+    }
+
+    /**
+     * @param expiration memcached expiration
+     * @return expiry time in seconds since January 1, 1970, 0 for eternal
+     */
+    private static int toTimestamp(int expiration) {
+        if (expiration > MAX_RELATIVE_EXPIRATION) {
+            return expiration;
+        }
+        if (expiration == 0) {
             return 0;
+        }
+        return (int) (System.currentTimeMillis() / 1000 + expiration);
+    }
+
+    /**
+     * extend the expiration of an accessed entry with a background touch if the expiry policy has an access duration
+     *
+     * @param key          key
+     * @param compositeKey memcached key
+     */
+    private void touchAccessed(K key, String compositeKey) {
+        if (touchScheduler == null) {
+            return;
+        }
+        Duration expiryForAccess = configuration.getExpiryPolicy().getExpiryForAccess();
+        if (expiryForAccess != null) {
+            int expiration = getExpiration(expiryForAccess);
+            if (touchScheduler.touch(compositeKey, expiration) && expiryTimerWheel != null) {
+                expiryTimerWheel.schedule(key, toTimestamp(expiration));
+            }
+        }
+    }
+
+    /**
+     * get the scheduler of the touches extending the expiration of accessed entries
+     *
+     * @return touch scheduler, null if the expiry policy has no access duration
+     */
+    public TouchScheduler getTouchScheduler() {
+        return touchScheduler;
+    }
+
+    /**
+     * get the early expiration of the values
+     *
+     * @return early expiration, null if neither ttl jitter nor early recompute is enabled
+     */
+    public EarlyExpiration getEarlyExpiration() {
+        return earlyExpiration;
+    }
+
+    /**
+     * convert the duration of a written value to a memcached expiration, jittered if enabled
+     *
+     * @param duration duration
+     * @return memcached expiration
+     */
+    private int getWriteExpiration(Duration duration) {
+        int expiration = getExpiration(duration);
+        if (earlyExpiration == null || expiration <= 0) {
+            return expiration;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        long seconds = earlyExpiration.jitter(expiration > MAX_RELATIVE_EXPIRATION ? expiration - now : expiration);
+        return (int) (seconds <= MAX_RELATIVE_EXPIRATION ? seconds : now + seconds);
+    }
+
+    /**
+     * stamp a value with its expiry and compute time when the early recompute is enabled, values are not stamped
+     * when the expiry policy has an access duration since the touches move their expiry past the stamp
+     *
+     * @param value        value
+     * @param expiration   memcached expiration
+     * @param computeNanos time to compute the value, UNKNOWN_COMPUTE_TIME if unknown
+     * @return the value to store
+     */
+    private Object stamp(V value, int expiration, long computeNanos) {
+        if (earlyExpiration == null || !earlyExpiration.isEarlyRecompute() || expiration <= 0 || touchScheduler != null) {
+            return value;
+        }
+        long expiryMillis = expiration > MAX_RELATIVE_EXPIRATION ? expiration * 1000L : System.currentTimeMillis() + expiration * 1000L;
+        return new StampedValue(value, expiryMillis, earlyExpiration.getComputeMillis(computeNanos));
+    }
+
+    /**
+     * unwrap a stored value, and recompute it in the background if the early expiration decides so
+     *
+     * @param key    key
+     * @param stored value read from memcached
+     * @return value
+     */
+    private V unstamp(K key, Object stored) {
+        if (!(stored instanceof StampedValue)) {
+            return (V) stored;
+        }
+        StampedValue stamped = (StampedValue) stored;
+        //the stamp of a touched entry is older than its expiry
+        if (earlyExpiration != null && configuration.isReadThroughSupport() && touchScheduler == null
+                && earlyExpiration.shouldRecompute(stamped, System.currentTimeMillis())) {
+            recomputeEarly(key);
+        }
+        return (V) stamped.getValue();
+    }
+
+    /**
+     * reload a value with the cache loader on the blocking task pool, once at a time per key, the recompute is
+     * dropped when the pool is saturated
+     *
+     * @param key key
+     */
+    private void recomputeEarly(final K key) {
+        if (recomputing.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            ((SpyCacheManager) cacheManager).getBlockingExecutor().execute(new Runnable() {
+                public void run() {
+                    try {
+                        load(key);
+                    } catch (RuntimeException ignore) {
+                        //the current value stays until it expires
+                    } finally {
+                        recomputing.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            recomputing.remove(key);
+        }
+    }
+
+    /**
+     * start timing an operation, only one operation in the timing sample period is timed when statistics are enabled
+     *
+     * @return start time in nanoseconds, NOT_TIMED if the operation is not timed
+     */
+    private long startTiming() {
+        if (configuration.isStatisticsEnabled() && statistics.isTimingSampled()) {
+            return System.nanoTime();
+        }
+        return NOT_TIMED;
+    }
+
+    /**
+     * record the latency of an operation started at the specified time if statistics are enabled
+     *
+     * @param operation operation
+     * @param start     start time in nanoseconds
+     */
+    void recordLatency(CacheOperation operation, long start) {
+        if (start != NOT_TIMED && configuration.isStatisticsEnabled()) {
+            statistics.recordLatency(operation, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * write the entry with the cache writer, queued if write behind is enabled
+     *
+     * @param key   key
+     * @param value value
+     */
+    private void writeThrough(K key, V value) {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.write(key, value);
+        } else {
+            long start = startTiming();
+            long slowStart = startSlowTiming();
+            Object event = eventRecorder.begin(CacheEventRecorder.Kind.WRITE_THROUGH);
+            configuration.getCacheWriter().write(new SpyEntry<K, V>(this, key, value));
+            recordLatency(CacheOperation.WRITE, start);
+            eventRecorder.end(event, getCompositeKey(key), value, "written");
+            recordSlow(CacheOperation.WRITE, slowStart, getCompositeKey(key), value, 0);
+        }
+    }
+
+    /**
+     * delete the entry with the cache writer, queued if write behind is enabled
+     *
+     * @param key key
+     */
+    private void deleteThrough(K key) {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.delete(key);
         } else {
-            return (int) (expiryForCreation.getAdjustedTime(System.currentTimeMillis()) / 1000);
+            long start = startTiming();
+            long slowStart = startSlowTiming();
+            Object event = eventRecorder.begin(CacheEventRecorder.Kind.WRITE_THROUGH);
+            configuration.getCacheWriter().delete(key);
+            recordLatency(CacheOperation.WRITE, start);
+            eventRecorder.end(event, getCompositeKey(key), null, "deleted");
+            recordSlow(CacheOperation.WRITE, slowStart, getCompositeKey(key), null, 0);
+        }
+    }
+
+    /**
+     * fire a set without waiting for it, bounded by the operations in flight and skipped by an open circuit breaker
+     *
+     * @param compositeKey memcached key
+     * @param exp          expiration
+     * @param value        value
+     * @return nanoseconds blocked on the operations in flight, measured when the slow operation log is enabled
+     */
+    private long setAsync(String compositeKey, int exp, Object value) {
+        recordAccess(compositeKey);
+        NodeCircuitBreaker breaker = getCircuitBreaker(compositeKey);
+        if (breaker != null && !breaker.allowRequest()) {
+            return 0;
+        }
+        long queueWait = acquireInFlight(breaker);
+        long issuedAt = breaker == null ? 0 : System.currentTimeMillis();
+        OperationFuture<Boolean> future;
+        try {
+            future = mClient.set(compositeKey, exp, value, transcoder);
+        } catch (RuntimeException e) {
+            if (inFlightLimiter != null) {
+                inFlightLimiter.release();
+            }
+            if (breaker != null) {
+                breaker.recordFailure(issuedAt);
+            }
+            throw e;
+        }
+        track(future, breaker, issuedAt);
+        return queueWait;
+    }
+
+    /**
+     * fire a delete without waiting for it, bounded by the operations in flight and skipped by an open circuit breaker
+     *
+     * @param compositeKey memcached key
+     * @return nanoseconds blocked on the operations in flight, measured when the slow operation log is enabled
+     */
+    private long deleteAsync(String compositeKey) {
+        recordAccess(compositeKey);
+        NodeCircuitBreaker breaker = getCircuitBreaker(compositeKey);
+        if (breaker != null && !breaker.allowRequest()) {
+            return 0;
+        }
+        long queueWait = acquireInFlight(breaker);
+        long issuedAt = breaker == null ? 0 : System.currentTimeMillis();
+        OperationFuture<Boolean> future;
+        try {
+            future = mClient.delete(compositeKey);
+        } catch (RuntimeException e) {
+            if (inFlightLimiter != null) {
+                inFlightLimiter.release();
+            }
+            if (breaker != null) {
+                breaker.recordFailure(issuedAt);
+            }
+            throw e;
+        }
+        track(future, breaker, issuedAt);
+        return queueWait;
+    }
+
+    /**
+     * count an access to a key in the hot key sketch and in the payload statistics if they are enabled
+     *
+     * @param compositeKey memcached key
+     */
+    private void recordAccess(String compositeKey) {
+        if (hotKeyTracker != null) {
+            hotKeyTracker.record(compositeKey);
+        }
+        if (configuration.isStatisticsEnabled()) {
+            statistics.getPayloadStatistics().recordKey(compositeKey.length());
         }
     }
 
+    /**
+     * acquire a permit of the operations in flight if they are bounded
+     *
+     * @param breaker circuit breaker which allowed the operation, its probe is released if no permit is acquired
+     * @return nanoseconds blocked, measured when the slow operation log is enabled
+     */
+    private long acquireInFlight(NodeCircuitBreaker breaker) {
+        if (inFlightLimiter == null) {
+            return 0;
+        }
+        long start = startSlowTiming();
+        try {
+            inFlightLimiter.acquire();
+        } catch (RuntimeException e) {
+            if (breaker != null) {
+                breaker.releaseProbe();
+            }
+            throw e;
+        }
+        return slowOperationLog == null ? 0 : System.nanoTime() - start;
+    }
+
+    /**
+     * @return current time in nanoseconds if the slow operation log is enabled, 0 otherwise
+     */
+    private long startSlowTiming() {
+        return slowOperationLog == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * record an operation in the slow operation log if it is enabled and the operation is slow
+     *
+     * @param operation      operation
+     * @param start          start time returned by startSlowTiming
+     * @param compositeKey   memcached key
+     * @param value          value written or read, may be null
+     * @param queueWaitNanos time blocked before the operation was sent
+     */
+    private void recordSlow(CacheOperation operation, long start, String compositeKey, Object value, long queueWaitNanos) {
+        if (slowOperationLog != null) {
+            slowOperationLog.record(operation, start, compositeKey, value, queueWaitNanos);
+        }
+    }
+
+    private void track(OperationFuture<Boolean> future, NodeCircuitBreaker breaker, long issuedAt) {
+        if (breaker != null) {
+            future.addListener(breaker.outcomeListener(issuedAt));
+        }
+        if (inFlightLimiter != null) {
+            inFlightLimiter.track(future);
+        }
+    }
+
+    /**
+     * get the circuit breaker of the node owning the key
+     *
+     * @param compositeKey memcached key
+     * @return circuit breaker, null if circuit breakers are not enabled
+     */
+    private NodeCircuitBreaker getCircuitBreaker(String compositeKey) {
+        return circuitBreakerRegistry == null ? null : circuitBreakerRegistry.getCircuitBreaker(compositeKey);
+    }
+
     private void ensureOpen() {
         if (isClosed()) {
             throw new IllegalStateException("Cache operations can not be performed. The cache closed");
         }
     }
 
-    //todo concurrency
-    private void createAndAddListener(CacheEntryListenerConfiguration<K, V> listenerConfiguration) {
+    /**
+     * dispatch an event to the listeners interested in its type
+     *
+     * @param event event
+     */
+    private void dispatchEvent(RICacheEntryEvent<K, V> event) {
+        RICacheEntryListenerRegistration<K, V>[] registrations = listenerIndex.getRegistrations(event.getEventType());
+        Object recorded = eventRecorder.begin(CacheEventRecorder.Kind.LISTENER_DISPATCH);
+        RICacheEventDispatcher.dispatch(registrations, event, listenerExecutor);
+        eventRecorder.end(recorded, registrations.length, event.getEventType().name());
+    }
+
+    /**
+     * dispatch the events collected by the dispatcher of a bulk operation
+     *
+     * @param dispatcher dispatcher
+     */
+    private void dispatch(RICacheEventDispatcher<K, V> dispatcher) {
+        Object recorded = eventRecorder.begin(CacheEventRecorder.Kind.LISTENER_DISPATCH);
+        dispatcher.dispatch(listenerRegistrations);
+        eventRecorder.end(recorded, listenerRegistrations.size(), "bulk");
+    }
+
+    /**
+     * dispatch an event, or add it to the dispatcher of a bulk operation
+     *
+     * @param event      event
+     * @param dispatcher dispatcher of the bulk operation, null to dispatch the event at once
+     */
+    private void dispatchEvent(RICacheEntryEvent<K, V> event, RICacheEventDispatcher<K, V> dispatcher) {
+        if (dispatcher == null) {
+            dispatchEvent(event);
+        } else {
+            dispatcher.addEvent(CacheEntryListenerIndex.getListenerClass(event.getEventType()), event);
+        }
+    }
+
+    /**
+     * get the timer wheel tracking the expiry of the keys written by this cache
+     *
+     * @return timer wheel, null if expiry tracking is not enabled
+     */
+    public ExpiryTimerWheel<K> getExpiryTimerWheel() {
+        return expiryTimerWheel;
+    }
+
+    /**
+     * raise the expired events of the tracked keys whose expiry passed, in one batch per listener
+     */
+    void expireTrackedKeys() {
+        List<K> expired = expiryTimerWheel.advance(System.currentTimeMillis() / 1000);
+        if (expired.isEmpty()) {
+            return;
+        }
+        if (configuration.isStatisticsEnabled()) {
+            statistics.increaseCacheExpiries(expired.size());
+        }
+        if (journal != null) {
+            for (K key : expired) {
+                journal.append(key, EXPIRED);
+            }
+        }
+        if (listenerIndex.hasListeners(EXPIRED)) {
+            RICacheEventDispatcher<K, V> dispatcher = new RICacheEventDispatcher<K, V>(listenerExecutor);
+            for (K key : expired) {
+                dispatchEvent(new RICacheEntryEvent<K, V>(this, key, null, EXPIRED), dispatcher);
+            }
+            dispatch(dispatcher);
+        }
+    }
+
+    /**
+     * get the journal of the entry events, read it through a cursor such as getJournal().newCursor()
+     *
+     * @return journal, null if it is not enabled
+     */
+    public CacheEntryJournal<K> getJournal() {
+        return journal;
+    }
+
+    /**
+     * append an event to the journal if it is enabled
+     *
+     * @param key       key
+     * @param eventType type of the event
+     */
+    private void journal(K key, EventType eventType) {
+        if (journal != null) {
+            journal.append(key, eventType);
+        }
+    }
+
+    /**
+     * publish a change to the other endpoints of the invalidation bus
+     *
+     * @param key       key
+     * @param eventType UPDATED or REMOVED
+     */
+    private void publishInvalidation(K key, EventType eventType) {
+        if (invalidationBus != null) {
+            invalidationBus.publish(new Invalidation(cacheName, key, eventType));
+        }
+    }
+
+    /**
+     * raise the events of the changes made through another endpoint of the invalidation bus, the values are not
+     * carried by the bus so the events of updates have a null value
+     *
+     * @param invalidations invalidations of this cache
+     */
+    @SuppressWarnings("unchecked")
+    void onRemoteInvalidations(List<Invalidation> invalidations) {
+        if (isClosed()) {
+            return;
+        }
+        RICacheEventDispatcher<K, V> dispatcher = new RICacheEventDispatcher<K, V>(listenerExecutor);
+        for (Invalidation invalidation : invalidations) {
+            journal((K) invalidation.getKey(), invalidation.getEventType());
+            if (listenerIndex.hasListeners(invalidation.getEventType())) {
+                dispatchEvent(new RICacheEntryEvent<K, V>(this, (K) invalidation.getKey(), null, invalidation.getEventType()), dispatcher);
+            }
+        }
+        dispatch(dispatcher);
+    }
+
+    private synchronized void createAndAddListener(CacheEntryListenerConfiguration<K, V> listenerConfiguration) {
         RICacheEntryListenerRegistration<K, V> registration = new RICacheEntryListenerRegistration<K, V>(listenerConfiguration);
         listenerRegistrations.add(registration);
+        listenerIndex.rebuild(listenerRegistrations);
     }
 
-    //todo concurrency
-    private void removeListener(CacheEntryListenerConfiguration<K, V> cacheEntryListenerConfiguration) {
+    private synchronized void removeListener(CacheEntryListenerConfiguration<K, V> cacheEntryListenerConfiguration) {
         if (cacheEntryListenerConfiguration == null) {
             throw new NullPointerException("CacheEntryListenerConfiguration can't be null");
         }
         for (RICacheEntryListenerRegistration<K, V> listenerRegistration : listenerRegistrations) {
             if (cacheEntryListenerConfiguration.equals(listenerRegistration.getConfiguration())) {
                 listenerRegistrations.remove(listenerRegistration);
+                listenerExecutor.remove(listenerRegistration);
                 configuration.removeCacheEntryListenerConfiguration(cacheEntryListenerConfiguration);
             }
         }
+        listenerIndex.rebuild(listenerRegistrations);
     }
 }
@@ -1,6 +1,14 @@
 package net.spy.memcached.jcache;
 
+import net.spy.memcached.ConnectionFactory;
+import net.spy.memcached.DefaultConnectionFactory;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.jcache.invalidation.Invalidation;
+import net.spy.memcached.jcache.invalidation.InvalidationBus;
+import net.spy.memcached.jcache.invalidation.InvalidationListener;
+import net.spy.memcached.jcache.invalidation.LocalInvalidationBus;
+import net.spy.memcached.jcache.invalidation.MulticastInvalidationBus;
+import net.spy.memcached.jcache.metrics.MetricsSink;
 import net.spy.memcached.jcache.spi.SpyCachingProvider;
 
 import javax.cache.Cache;
@@ -10,9 +18,19 @@ import javax.cache.configuration.Configuration;
 import javax.cache.configuration.MutableConfiguration;
 import javax.cache.spi.CachingProvider;
 import java.lang.ref.WeakReference;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * spy cache manager
@@ -20,13 +38,23 @@ import java.util.*;
  * @author linux_china
  */
 @SuppressWarnings("unchecked")
-public class SpyCacheManager implements CacheManager {
+public class SpyCacheManager implements CacheManager, InvalidationListener {
     private CachingProvider cachingProvider;
     private URI uri;
     private Properties properties;
     private boolean isClosed;
     private MemcachedClient mClient;
+    private NodeLocatorCache nodeLocatorCache;
     private String namespaceSeperator = "$";
+    private Map<String, String> parameters = new HashMap<String, String>();
+    private NodeCircuitBreakerRegistry circuitBreakerRegistry;
+    private ScheduledExecutorService scheduledExecutor;
+    private ExecutorService listenerExecutor;
+    private ExecutorService blockingExecutor;
+    private InvalidationBus invalidationBus;
+    private NodeStatsPoller nodeStatsPoller;
+    private boolean platformMBeanServer;
+    private MetricsReporter metricsReporter;
     private final Map<String, SpyCache<?, ?>> caches = new HashMap<String, SpyCache<?, ?>>();
     private final WeakReference<ClassLoader> classLoaderReference;
 
@@ -53,13 +81,46 @@ public class SpyCacheManager implements CacheManager {
             servers.add(new InetSocketAddress(host, port));
         }
         if (queryString != null && !queryString.isEmpty()) {
-            Map<String, String> params = parseQuery(queryString);
-            if (params.containsKey("seperator")) {
-                this.namespaceSeperator = params.get("seperator");
+            this.parameters = parseQuery(queryString);
+            if (parameters.containsKey("seperator")) {
+                this.namespaceSeperator = parameters.get("seperator");
             }
         }
-        mClient = new MemcachedClient(servers);
+        ConnectionFactory connectionFactory = new DefaultConnectionFactory();
+        mClient = new MemcachedClient(connectionFactory, servers);
+        this.nodeLocatorCache = new NodeLocatorCache(mClient);
+        this.platformMBeanServer = Boolean.valueOf(getParameter("platformMBeanServer", "false"));
+        if (Boolean.valueOf(getParameter("circuitBreaker", "false"))) {
+            this.circuitBreakerRegistry = new NodeCircuitBreakerRegistry(this, nodeLocatorCache,
+                    Integer.valueOf(getParameter("breakerFailurePercentage", "50")),
+                    Integer.valueOf(getParameter("breakerMinimumCalls", "20")),
+                    Long.valueOf(getParameter("breakerWindowMillis", "10000")),
+                    Long.valueOf(getParameter("breakerOpenMillis", "5000")));
+        }
+        if (Boolean.valueOf(getParameter("nodeStats", "false"))) {
+            this.nodeStatsPoller = new NodeStatsPoller(this, mClient, connectionFactory.getOperationFactory(),
+                    Long.valueOf(getParameter("nodeStatsIntervalMillis", "10000")), getScheduledExecutor(), getBlockingExecutor());
+        }
+        String bus = getParameter("invalidationBus", "none");
+        if ("local".equals(bus)) {
+            this.invalidationBus = new LocalInvalidationBus(getParameter("invalidationGroup", "default"));
+        } else if ("multicast".equals(bus)) {
+            this.invalidationBus = new MulticastInvalidationBus(InetAddress.getByName(getParameter("invalidationGroup", "239.255.27.1")),
+                    Integer.valueOf(getParameter("invalidationPort", "27117")),
+                    Integer.valueOf(getParameter("invalidationTimeToLive", "1")),
+                    Long.valueOf(getParameter("invalidationBatchMillis", "10")),
+                    getScheduledExecutor());
+        }
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(this);
+        }
         this.classLoaderReference = new WeakReference<ClassLoader>(classLoader);
+        for (String sinkClass : getParameter("metricsSinks", "").split(",")) {
+            if (!sinkClass.trim().isEmpty()) {
+                ClassLoader loader = classLoader == null ? getClassLoader() : classLoader;
+                addMetricsSink((MetricsSink) Class.forName(sinkClass.trim(), true, loader).getConstructor().newInstance());
+            }
+        }
         this.isClosed = false;
     }
 
@@ -75,6 +136,190 @@ public class SpyCacheManager implements CacheManager {
         return this.properties;
     }
 
+    /**
+     * get parameter from the query string of the uri, then from the properties
+     *
+     * @param name         parameter name
+     * @param defaultValue default value
+     * @return parameter value
+     */
+    public String getParameter(String name, String defaultValue) {
+        if (parameters.containsKey(name)) {
+            return parameters.get(name);
+        }
+        return properties.getProperty(name, defaultValue);
+    }
+
+    /**
+     * get the read only node locator shared by the lookups of the node owning a key
+     *
+     * @return node locator cache
+     */
+    public NodeLocatorCache getNodeLocatorCache() {
+        return nodeLocatorCache;
+    }
+
+    /**
+     * get the circuit breakers of the memcached nodes
+     *
+     * @return circuit breaker registry, null if circuitBreaker is not enabled
+     */
+    public NodeCircuitBreakerRegistry getCircuitBreakerRegistry() {
+        return circuitBreakerRegistry;
+    }
+
+    /**
+     * get the poller of the stats of the memcached nodes
+     *
+     * @return node stats poller, null if nodeStats is not enabled
+     */
+    public NodeStatsPoller getNodeStatsPoller() {
+        return nodeStatsPoller;
+    }
+
+    /**
+     * @return true if the MXBeans are also registered with the platform MBeanServer, set by the platformMBeanServer parameter
+     */
+    public boolean isPlatformMBeanServer() {
+        return platformMBeanServer;
+    }
+
+    /**
+     * add a sink receiving the metrics of the caches every metricsIntervalMillis
+     *
+     * @param sink metrics sink
+     */
+    public synchronized void addMetricsSink(MetricsSink sink) {
+        if (metricsReporter == null) {
+            metricsReporter = new MetricsReporter(this, Long.valueOf(getParameter("metricsIntervalMillis", "10000")),
+                    getScheduledExecutor());
+        }
+        metricsReporter.addSink(sink);
+    }
+
+    /**
+     * remove a metrics sink
+     *
+     * @param sink metrics sink
+     */
+    public synchronized void removeMetricsSink(MetricsSink sink) {
+        if (metricsReporter != null) {
+            metricsReporter.removeSink(sink);
+        }
+    }
+
+    /**
+     * get the reporter publishing the metrics to the sinks
+     *
+     * @return metrics reporter, null if no sink was added
+     */
+    public synchronized MetricsReporter getMetricsReporter() {
+        return metricsReporter;
+    }
+
+    /**
+     * @return the caches of this manager
+     */
+    List<SpyCache<?, ?>> getSpyCaches() {
+        synchronized (caches) {
+            return new ArrayList<SpyCache<?, ?>>(caches.values());
+        }
+    }
+
+    /**
+     * get the invalidation bus, set by the invalidationBus parameter: none, local or multicast
+     *
+     * @return invalidation bus, null if none
+     */
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    /**
+     * deliver the invalidations received from the other endpoints of the bus to the caches
+     *
+     * @param invalidations invalidations
+     */
+    public void onInvalidations(List<Invalidation> invalidations) {
+        Map<String, List<Invalidation>> byCache = new HashMap<String, List<Invalidation>>();
+        for (Invalidation invalidation : invalidations) {
+            List<Invalidation> list = byCache.get(invalidation.getCacheName());
+            if (list == null) {
+                list = new ArrayList<Invalidation>();
+                byCache.put(invalidation.getCacheName(), list);
+            }
+            list.add(invalidation);
+        }
+        for (Map.Entry<String, List<Invalidation>> entry : byCache.entrySet()) {
+            SpyCache<?, ?> cache;
+            synchronized (caches) {
+                cache = caches.get(entry.getKey());
+            }
+            if (cache != null) {
+                cache.onRemoteInvalidations(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * get the scheduler shared by the background tasks of the caches, the number of daemon
+     * threads is set by the schedulerThreads parameter
+     *
+     * @return scheduled executor
+     */
+    public synchronized ScheduledExecutorService getScheduledExecutor() {
+        if (scheduledExecutor == null) {
+            scheduledExecutor = new ScheduledThreadPoolExecutor(Integer.valueOf(getParameter("schedulerThreads", "2")),
+                    daemonThreadFactory("spy-jcache-"));
+        }
+        return scheduledExecutor;
+    }
+
+    /**
+     * get the thread pool delivering the events of the asynchronous listeners of the caches, the number of
+     * daemon threads is set by the listenerThreads parameter
+     *
+     * @return listener thread pool
+     */
+    public synchronized ExecutorService getListenerExecutor() {
+        if (listenerExecutor == null) {
+            listenerExecutor = Executors.newFixedThreadPool(Integer.valueOf(getParameter("listenerThreads", "2")),
+                    daemonThreadFactory("spy-jcache-listener-"));
+        }
+        return listenerExecutor;
+    }
+
+    /**
+     * get the thread pool of the background tasks which block, such as the early recomputes of the cache loaders
+     * and the polls of the node stats, so that they do not stall the scheduler. The number of daemon threads is
+     * set by the blockingThreads parameter and the queue by blockingQueueSize, a task submitted to a saturated
+     * pool is rejected and should be dropped.
+     *
+     * @return blocking task thread pool
+     */
+    public synchronized ExecutorService getBlockingExecutor() {
+        if (blockingExecutor == null) {
+            int threads = Integer.valueOf(getParameter("blockingThreads", "2"));
+            blockingExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(Integer.valueOf(getParameter("blockingQueueSize", "100"))),
+                    daemonThreadFactory("spy-jcache-blocking-"));
+        }
+        return blockingExecutor;
+    }
+
+    private ThreadFactory daemonThreadFactory(String prefix) {
+        final String name = prefix + uri.getSchemeSpecificPart() + "-";
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
     public ClassLoader getClassLoader() {
         return this.getClass().getClassLoader();
     }
@@ -86,10 +331,12 @@ public class SpyCacheManager implements CacheManager {
         if (!validateCacheName(cacheName)) {
             throw new IllegalArgumentException("Cache name:" + cacheName + " is illegal, please use \\w+ as cache name.");
         }
-        SpyCache cache = caches.get(cacheName);
+        @SuppressWarnings("unchecked")
+        Cache<K, V> cache = (Cache<K, V>) caches.get(cacheName);
         if (cache == null) {
-            cache = new SpyCache(this, this.mClient, cacheName, namespaceSeperator, (CompleteConfiguration) configuration);
-            caches.put(cacheName, cache);
+            SpyCache<K, V> spyCache = new SpyCache<K, V>(this, this.mClient, cacheName, namespaceSeperator, (CompleteConfiguration<K, V>) configuration);
+            caches.put(cacheName, spyCache);
+            cache = spyCache;
         }
         return cache;
     }
@@ -164,6 +411,32 @@ public class SpyCacheManager implements CacheManager {
                 } catch (Exception ignore) {
                 }
             }
+            if (circuitBreakerRegistry != null) {
+                circuitBreakerRegistry.close();
+            }
+            if (nodeStatsPoller != null) {
+                nodeStatsPoller.close();
+            }
+            synchronized (this) {
+                if (metricsReporter != null) {
+                    metricsReporter.close();
+                }
+            }
+            if (invalidationBus != null) {
+                invalidationBus.unsubscribe(this);
+                invalidationBus.close();
+            }
+            synchronized (this) {
+                if (scheduledExecutor != null) {
+                    scheduledExecutor.shutdownNow();
+                }
+                if (listenerExecutor != null) {
+                    listenerExecutor.shutdown();
+                }
+                if (blockingExecutor != null) {
+                    blockingExecutor.shutdownNow();
+                }
+            }
             //release memcached connection
             mClient.shutdown();
             this.isClosed = true;
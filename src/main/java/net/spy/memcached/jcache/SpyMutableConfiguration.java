@@ -13,9 +13,54 @@ import javax.cache.integration.CacheWriter;
  * @author linux_china
  */
 public class SpyMutableConfiguration<K, V> extends MutableConfiguration<K, V> {
+    private static final long serialVersionUID = 4491315683456867134L;
+    /**
+     * default max item size of memcached, 1m
+     */
+    public static final int DEFAULT_ITEM_SIZE_LIMIT = 1024 * 1024;
     private CacheLoader<K, V> cacheLoader;
     private CacheWriter<? super K, ? super V> cacheWriter;
     private ExpiryPolicy expiryPolicy;
+    private double latencyBudgetPercentile;
+    private long latencyBudgetMinMillis = 1;
+    private long latencyBudgetMaxMillis;
+    private boolean circuitOpenReadThrough;
+    private int maxInFlightOperations;
+    private OverflowPolicy inFlightOverflowPolicy = OverflowPolicy.BLOCK;
+    private long getBatchWindowMicros;
+    private int getBatchSize = 64;
+    private long loaderBatchWindowMicros;
+    private int loaderBatchSize = 64;
+    private long loaderBatchTimeoutMillis = 10000;
+    private boolean writeBehind;
+    private int writeBehindBatchSize = 100;
+    private long writeBehindFlushIntervalMillis = 1000;
+    private int writeBehindMaxQueueSize = 10000;
+    private int writeBehindMaxRetries = 3;
+    private long writeBehindRetryBackoffMillis = 100;
+    private int expiryTrackingMaxKeys;
+    private double expiryTrackingSampleRate = 1.0;
+    private int journalCapacity;
+    private int journalMaxKeyBytes = 256;
+    private int statisticsTimingSamplePeriod = 1;
+    private int itemSizeLimit = DEFAULT_ITEM_SIZE_LIMIT;
+    private int hotKeyTopK;
+    private long slowOperationThresholdMillis;
+    private int slowOperationLogSize = 256;
+    private boolean slowOperationHashKeys;
+    private SlowOperationListener slowOperationListener;
+    private int hotKeySamplePeriod = 16;
+    private int hotKeySketchWidth = 1024;
+    private long hotKeyWindowSeconds = 60;
+    private long touchIntervalMillis = 1000;
+    private long touchFlushIntervalMillis = 100;
+    private int touchMaxPending = 10000;
+    private double ttlJitter;
+    private double earlyRecomputeBeta;
+
+    public SpyMutableConfiguration() {
+        this(new MutableConfiguration<K, V>());
+    }
 
     public SpyMutableConfiguration(CompleteConfiguration<K, V> configuration) {
         super(configuration);
@@ -26,6 +71,45 @@ public class SpyMutableConfiguration<K, V> extends MutableConfiguration<K, V> {
             this.cacheWriter = configuration.getCacheWriterFactory().create();
         }
         this.expiryPolicy = configuration.getExpiryPolicyFactory().create();
+        if (configuration instanceof SpyMutableConfiguration) {
+            SpyMutableConfiguration<K, V> spyConfiguration = (SpyMutableConfiguration<K, V>) configuration;
+            this.latencyBudgetPercentile = spyConfiguration.latencyBudgetPercentile;
+            this.latencyBudgetMinMillis = spyConfiguration.latencyBudgetMinMillis;
+            this.latencyBudgetMaxMillis = spyConfiguration.latencyBudgetMaxMillis;
+            this.circuitOpenReadThrough = spyConfiguration.circuitOpenReadThrough;
+            this.maxInFlightOperations = spyConfiguration.maxInFlightOperations;
+            this.inFlightOverflowPolicy = spyConfiguration.inFlightOverflowPolicy;
+            this.getBatchWindowMicros = spyConfiguration.getBatchWindowMicros;
+            this.getBatchSize = spyConfiguration.getBatchSize;
+            this.loaderBatchWindowMicros = spyConfiguration.loaderBatchWindowMicros;
+            this.loaderBatchSize = spyConfiguration.loaderBatchSize;
+            this.loaderBatchTimeoutMillis = spyConfiguration.loaderBatchTimeoutMillis;
+            this.writeBehind = spyConfiguration.writeBehind;
+            this.writeBehindBatchSize = spyConfiguration.writeBehindBatchSize;
+            this.writeBehindFlushIntervalMillis = spyConfiguration.writeBehindFlushIntervalMillis;
+            this.writeBehindMaxQueueSize = spyConfiguration.writeBehindMaxQueueSize;
+            this.writeBehindMaxRetries = spyConfiguration.writeBehindMaxRetries;
+            this.writeBehindRetryBackoffMillis = spyConfiguration.writeBehindRetryBackoffMillis;
+            this.expiryTrackingMaxKeys = spyConfiguration.expiryTrackingMaxKeys;
+            this.expiryTrackingSampleRate = spyConfiguration.expiryTrackingSampleRate;
+            this.journalCapacity = spyConfiguration.journalCapacity;
+            this.journalMaxKeyBytes = spyConfiguration.journalMaxKeyBytes;
+            this.statisticsTimingSamplePeriod = spyConfiguration.statisticsTimingSamplePeriod;
+            this.itemSizeLimit = spyConfiguration.itemSizeLimit;
+            this.hotKeyTopK = spyConfiguration.hotKeyTopK;
+            this.slowOperationThresholdMillis = spyConfiguration.slowOperationThresholdMillis;
+            this.slowOperationLogSize = spyConfiguration.slowOperationLogSize;
+            this.slowOperationHashKeys = spyConfiguration.slowOperationHashKeys;
+            this.slowOperationListener = spyConfiguration.slowOperationListener;
+            this.hotKeySamplePeriod = spyConfiguration.hotKeySamplePeriod;
+            this.hotKeySketchWidth = spyConfiguration.hotKeySketchWidth;
+            this.hotKeyWindowSeconds = spyConfiguration.hotKeyWindowSeconds;
+            this.touchIntervalMillis = spyConfiguration.touchIntervalMillis;
+            this.touchFlushIntervalMillis = spyConfiguration.touchFlushIntervalMillis;
+            this.touchMaxPending = spyConfiguration.touchMaxPending;
+            this.ttlJitter = spyConfiguration.ttlJitter;
+            this.earlyRecomputeBeta = spyConfiguration.earlyRecomputeBeta;
+        }
     }
 
     public CacheLoader<K, V> getCacheLoader() {
@@ -48,6 +132,625 @@ public class SpyMutableConfiguration<K, V> extends MutableConfiguration<K, V> {
         return expiryPolicy;
     }
 
+    public boolean isLatencyBudgetEnabled() {
+        return latencyBudgetPercentile > 0;
+    }
+
+    public double getLatencyBudgetPercentile() {
+        return latencyBudgetPercentile;
+    }
+
+    /**
+     * set the percentile of recent get latencies after which a get is hedged, such as 99.0, 0 to disable
+     *
+     * @param latencyBudgetPercentile percentile between 0 and 100
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setLatencyBudgetPercentile(double latencyBudgetPercentile) {
+        if (latencyBudgetPercentile < 0 || latencyBudgetPercentile >= 100) {
+            throw new IllegalArgumentException("latency budget percentile should be in [0, 100)");
+        }
+        this.latencyBudgetPercentile = latencyBudgetPercentile;
+        return this;
+    }
+
+    public long getLatencyBudgetMinMillis() {
+        return latencyBudgetMinMillis;
+    }
+
+    /**
+     * set the lower bound of the latency budget
+     *
+     * @param latencyBudgetMinMillis minimal budget in milliseconds
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setLatencyBudgetMinMillis(long latencyBudgetMinMillis) {
+        this.latencyBudgetMinMillis = latencyBudgetMinMillis;
+        return this;
+    }
+
+    public long getLatencyBudgetMaxMillis() {
+        return latencyBudgetMaxMillis;
+    }
+
+    /**
+     * set the upper bound of the latency budget, 0 means the operation timeout of the memcached client
+     *
+     * @param latencyBudgetMaxMillis maximal budget in milliseconds
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setLatencyBudgetMaxMillis(long latencyBudgetMaxMillis) {
+        this.latencyBudgetMaxMillis = latencyBudgetMaxMillis;
+        return this;
+    }
+
+    public boolean isCircuitOpenReadThrough() {
+        return circuitOpenReadThrough;
+    }
+
+    /**
+     * set whether gets short-circuited by an open node circuit breaker read through the cache loader
+     *
+     * @param circuitOpenReadThrough read through mark
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setCircuitOpenReadThrough(boolean circuitOpenReadThrough) {
+        this.circuitOpenReadThrough = circuitOpenReadThrough;
+        return this;
+    }
+
+    public int getMaxInFlightOperations() {
+        return maxInFlightOperations;
+    }
+
+    /**
+     * set the maximal asynchronous memcached operations in flight for the cache, 0 means unbounded
+     *
+     * @param maxInFlightOperations maximal operations in flight
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setMaxInFlightOperations(int maxInFlightOperations) {
+        this.maxInFlightOperations = maxInFlightOperations;
+        return this;
+    }
+
+    public OverflowPolicy getInFlightOverflowPolicy() {
+        return inFlightOverflowPolicy;
+    }
+
+    /**
+     * set what to do when the maximal operations are in flight
+     *
+     * @param inFlightOverflowPolicy overflow policy
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setInFlightOverflowPolicy(OverflowPolicy inFlightOverflowPolicy) {
+        if (inFlightOverflowPolicy == null) {
+            throw new NullPointerException("inFlightOverflowPolicy can't be null");
+        }
+        this.inFlightOverflowPolicy = inFlightOverflowPolicy;
+        return this;
+    }
+
+    public boolean isGetBatchingEnabled() {
+        return getBatchWindowMicros > 0;
+    }
+
+    public long getGetBatchWindowMicros() {
+        return getBatchWindowMicros;
+    }
+
+    /**
+     * set the window in which concurrent gets are merged into one multi-get, 0 to disable batching
+     *
+     * @param getBatchWindowMicros window in microseconds
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setGetBatchWindowMicros(long getBatchWindowMicros) {
+        this.getBatchWindowMicros = getBatchWindowMicros;
+        return this;
+    }
+
+    public int getGetBatchSize() {
+        return getBatchSize;
+    }
+
+    /**
+     * set the maximal keys of a multi-get, a full batch is sent before the window ends
+     *
+     * @param getBatchSize batch size
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setGetBatchSize(int getBatchSize) {
+        if (getBatchSize < 1) {
+            throw new IllegalArgumentException("get batch size should be positive");
+        }
+        this.getBatchSize = getBatchSize;
+        return this;
+    }
+
+    public boolean isLoaderBatchingEnabled() {
+        return loaderBatchWindowMicros > 0;
+    }
+
+    public long getLoaderBatchWindowMicros() {
+        return loaderBatchWindowMicros;
+    }
+
+    /**
+     * set the window in which concurrent read-through misses are merged into one CacheLoader.loadAll, 0 to disable batching
+     *
+     * @param loaderBatchWindowMicros window in microseconds
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setLoaderBatchWindowMicros(long loaderBatchWindowMicros) {
+        this.loaderBatchWindowMicros = loaderBatchWindowMicros;
+        return this;
+    }
+
+    public int getLoaderBatchSize() {
+        return loaderBatchSize;
+    }
+
+    /**
+     * set the maximal keys of a CacheLoader.loadAll, a full batch is loaded before the window ends
+     *
+     * @param loaderBatchSize batch size
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setLoaderBatchSize(int loaderBatchSize) {
+        if (loaderBatchSize < 1) {
+            throw new IllegalArgumentException("loader batch size should be positive");
+        }
+        this.loaderBatchSize = loaderBatchSize;
+        return this;
+    }
+
+    public long getLoaderBatchTimeoutMillis() {
+        return loaderBatchTimeoutMillis;
+    }
+
+    /**
+     * set the maximal time a read-through miss waits for the CacheLoader.loadAll of its batch run by another caller
+     *
+     * @param loaderBatchTimeoutMillis timeout in milliseconds
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setLoaderBatchTimeoutMillis(long loaderBatchTimeoutMillis) {
+        if (loaderBatchTimeoutMillis < 1) {
+            throw new IllegalArgumentException("loader batch timeout should be positive");
+        }
+        this.loaderBatchTimeoutMillis = loaderBatchTimeoutMillis;
+        return this;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    public boolean isWriteBehindSupport() {
+        return writeBehind && isWriteThroughSupport();
+    }
+
+    /**
+     * set whether the cache writer is called asynchronously with batched writeAll and deleteAll, write through must be enabled
+     *
+     * @param writeBehind write behind mark
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+        return this;
+    }
+
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    /**
+     * set the maximal entries of a writeAll or deleteAll, a full batch is flushed before the interval elapsed
+     *
+     * @param writeBehindBatchSize batch size
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setWriteBehindBatchSize(int writeBehindBatchSize) {
+        if (writeBehindBatchSize < 1) {
+            throw new IllegalArgumentException("write behind batch size should be positive");
+        }
+        this.writeBehindBatchSize = writeBehindBatchSize;
+        return this;
+    }
+
+    public long getWriteBehindFlushIntervalMillis() {
+        return writeBehindFlushIntervalMillis;
+    }
+
+    /**
+     * set the interval of the write behind flushes
+     *
+     * @param writeBehindFlushIntervalMillis flush interval in milliseconds
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setWriteBehindFlushIntervalMillis(long writeBehindFlushIntervalMillis) {
+        this.writeBehindFlushIntervalMillis = writeBehindFlushIntervalMillis;
+        return this;
+    }
+
+    public int getWriteBehindMaxQueueSize() {
+        return writeBehindMaxQueueSize;
+    }
+
+    /**
+     * set the maximal queued keys, a write of a new key to a full queue flushes the keys due on the caller thread,
+     * then waits for room up to the operation timeout of the memcached client before the write is rejected
+     *
+     * @param writeBehindMaxQueueSize maximal queue size
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setWriteBehindMaxQueueSize(int writeBehindMaxQueueSize) {
+        this.writeBehindMaxQueueSize = writeBehindMaxQueueSize;
+        return this;
+    }
+
+    public int getWriteBehindMaxRetries() {
+        return writeBehindMaxRetries;
+    }
+
+    /**
+     * set how often a failed write is retried before it is dropped
+     *
+     * @param writeBehindMaxRetries maximal retries
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setWriteBehindMaxRetries(int writeBehindMaxRetries) {
+        this.writeBehindMaxRetries = writeBehindMaxRetries;
+        return this;
+    }
+
+    public long getWriteBehindRetryBackoffMillis() {
+        return writeBehindRetryBackoffMillis;
+    }
+
+    /**
+     * set the backoff before the first retry, doubled for every further retry
+     *
+     * @param writeBehindRetryBackoffMillis backoff in milliseconds
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setWriteBehindRetryBackoffMillis(long writeBehindRetryBackoffMillis) {
+        this.writeBehindRetryBackoffMillis = writeBehindRetryBackoffMillis;
+        return this;
+    }
+
+    public boolean isExpiryTrackingEnabled() {
+        return expiryTrackingMaxKeys > 0;
+    }
+
+    public int getExpiryTrackingMaxKeys() {
+        return expiryTrackingMaxKeys;
+    }
+
+    /**
+     * track the expiry of the keys written by this cache to raise expired events, memcached expires entries silently
+     *
+     * @param expiryTrackingMaxKeys max number of keys tracked, 0 to disable
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setExpiryTrackingMaxKeys(int expiryTrackingMaxKeys) {
+        this.expiryTrackingMaxKeys = expiryTrackingMaxKeys;
+        return this;
+    }
+
+    public double getExpiryTrackingSampleRate() {
+        return expiryTrackingSampleRate;
+    }
+
+    /**
+     * set the fraction of the keys whose expiry is tracked, the keys are sampled by hash code
+     *
+     * @param expiryTrackingSampleRate rate in (0, 1]
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setExpiryTrackingSampleRate(double expiryTrackingSampleRate) {
+        if (expiryTrackingSampleRate <= 0 || expiryTrackingSampleRate > 1) {
+            throw new IllegalArgumentException("expiry tracking sample rate should be in (0, 1]");
+        }
+        this.expiryTrackingSampleRate = expiryTrackingSampleRate;
+        return this;
+    }
+
+    public boolean isJournalEnabled() {
+        return journalCapacity > 0;
+    }
+
+    public int getJournalCapacity() {
+        return journalCapacity;
+    }
+
+    /**
+     * keep an off heap journal of the entry events of the cache, read through cursors
+     *
+     * @param journalCapacity number of entries of the ring buffer, rounded up to a power of two, 0 to disable
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setJournalCapacity(int journalCapacity) {
+        this.journalCapacity = journalCapacity;
+        return this;
+    }
+
+    public int getJournalMaxKeyBytes() {
+        return journalMaxKeyBytes;
+    }
+
+    /**
+     * set the size of a journal slot, keys encoded larger than it are not journaled
+     *
+     * @param journalMaxKeyBytes max size of an encoded key
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setJournalMaxKeyBytes(int journalMaxKeyBytes) {
+        this.journalMaxKeyBytes = journalMaxKeyBytes;
+        return this;
+    }
+
+    public int getStatisticsTimingSamplePeriod() {
+        return statisticsTimingSamplePeriod;
+    }
+
+    /**
+     * time one operation in the period on average, drawn at random, when statistics are enabled, the average
+     * times and the latency histograms are computed from the timed operations
+     *
+     * @param statisticsTimingSamplePeriod period, 1 to time every operation
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setStatisticsTimingSamplePeriod(int statisticsTimingSamplePeriod) {
+        if (statisticsTimingSamplePeriod < 1) {
+            throw new IllegalArgumentException("statistics timing sample period should be at least 1");
+        }
+        this.statisticsTimingSamplePeriod = statisticsTimingSamplePeriod;
+        return this;
+    }
+
+    public int getItemSizeLimit() {
+        return itemSizeLimit;
+    }
+
+    /**
+     * set the max size of an item accepted by the memcached servers, the -I option of memcached,
+     * the payload statistics count the values close to or above it
+     *
+     * @param itemSizeLimit max item size in bytes
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setItemSizeLimit(int itemSizeLimit) {
+        this.itemSizeLimit = itemSizeLimit;
+        return this;
+    }
+
+    public boolean isSlowOperationLogEnabled() {
+        return slowOperationThresholdMillis > 0;
+    }
+
+    public long getSlowOperationThresholdMillis() {
+        return slowOperationThresholdMillis;
+    }
+
+    /**
+     * log the operations lasting longer than the threshold, exposed as MXBean with the statistics
+     *
+     * @param slowOperationThresholdMillis threshold in milliseconds, 0 to disable
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setSlowOperationThresholdMillis(long slowOperationThresholdMillis) {
+        this.slowOperationThresholdMillis = slowOperationThresholdMillis;
+        return this;
+    }
+
+    public int getSlowOperationLogSize() {
+        return slowOperationLogSize;
+    }
+
+    /**
+     * set the number of slow operations kept, the oldest are overwritten
+     *
+     * @param slowOperationLogSize size of the log
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setSlowOperationLogSize(int slowOperationLogSize) {
+        this.slowOperationLogSize = slowOperationLogSize;
+        return this;
+    }
+
+    public boolean isSlowOperationHashKeys() {
+        return slowOperationHashKeys;
+    }
+
+    /**
+     * keep the hash code of the keys in the slow operation log instead of the keys, which may be sensitive
+     *
+     * @param slowOperationHashKeys hash the keys
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setSlowOperationHashKeys(boolean slowOperationHashKeys) {
+        this.slowOperationHashKeys = slowOperationHashKeys;
+        return this;
+    }
+
+    public SlowOperationListener getSlowOperationListener() {
+        return slowOperationListener;
+    }
+
+    /**
+     * set the hook called for each slow operation, such as a {@link LoggingSlowOperationListener}
+     *
+     * @param slowOperationListener listener
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setSlowOperationListener(SlowOperationListener slowOperationListener) {
+        this.slowOperationListener = slowOperationListener;
+        return this;
+    }
+
+    public boolean isHotKeyTrackingEnabled() {
+        return hotKeyTopK > 0;
+    }
+
+    public int getHotKeyTopK() {
+        return hotKeyTopK;
+    }
+
+    /**
+     * track the most accessed keys of the cache with a count-min sketch, exposed as MXBean with the statistics
+     *
+     * @param hotKeyTopK max number of hot keys, 0 to disable
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setHotKeyTopK(int hotKeyTopK) {
+        this.hotKeyTopK = hotKeyTopK;
+        return this;
+    }
+
+    public int getHotKeySamplePeriod() {
+        return hotKeySamplePeriod;
+    }
+
+    /**
+     * count only one access in the period in the hot key sketch, the rates are scaled
+     *
+     * @param hotKeySamplePeriod period, 1 to count every access
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setHotKeySamplePeriod(int hotKeySamplePeriod) {
+        if (hotKeySamplePeriod < 1) {
+            throw new IllegalArgumentException("hot key sample period should be at least 1");
+        }
+        this.hotKeySamplePeriod = hotKeySamplePeriod;
+        return this;
+    }
+
+    public int getHotKeySketchWidth() {
+        return hotKeySketchWidth;
+    }
+
+    /**
+     * set the number of counters per row of the hot key sketch, wider is more accurate
+     *
+     * @param hotKeySketchWidth width, rounded up to a power of two
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setHotKeySketchWidth(int hotKeySketchWidth) {
+        this.hotKeySketchWidth = hotKeySketchWidth;
+        return this;
+    }
+
+    public long getHotKeyWindowSeconds() {
+        return hotKeyWindowSeconds;
+    }
+
+    /**
+     * set the window over which the hot keys are counted, the sketch is cleared at the end of each window
+     *
+     * @param hotKeyWindowSeconds window in seconds
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setHotKeyWindowSeconds(long hotKeyWindowSeconds) {
+        this.hotKeyWindowSeconds = hotKeyWindowSeconds;
+        return this;
+    }
+
+    public long getTouchIntervalMillis() {
+        return touchIntervalMillis;
+    }
+
+    /**
+     * set the min interval between two touches of an accessed key when the expiry policy has an access duration,
+     * the expiration of a key read continuously is extended at most once per interval
+     *
+     * @param touchIntervalMillis interval in milliseconds
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setTouchIntervalMillis(long touchIntervalMillis) {
+        this.touchIntervalMillis = touchIntervalMillis;
+        return this;
+    }
+
+    public long getTouchFlushIntervalMillis() {
+        return touchFlushIntervalMillis;
+    }
+
+    /**
+     * set the interval between two sends of the queued touches
+     *
+     * @param touchFlushIntervalMillis interval in milliseconds
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setTouchFlushIntervalMillis(long touchFlushIntervalMillis) {
+        if (touchFlushIntervalMillis < 1) {
+            throw new IllegalArgumentException("touch flush interval should be at least 1 millisecond");
+        }
+        this.touchFlushIntervalMillis = touchFlushIntervalMillis;
+        return this;
+    }
+
+    public int getTouchMaxPending() {
+        return touchMaxPending;
+    }
+
+    /**
+     * set the max number of queued touches, the touches beyond are dropped
+     *
+     * @param touchMaxPending max queued touches
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setTouchMaxPending(int touchMaxPending) {
+        this.touchMaxPending = touchMaxPending;
+        return this;
+    }
+
+    public boolean isEarlyExpirationEnabled() {
+        return ttlJitter > 0 || earlyRecomputeBeta > 0;
+    }
+
+    public double getTtlJitter() {
+        return ttlJitter;
+    }
+
+    /**
+     * shorten the time to live of each written value by a random fraction up to the jitter, so that the values
+     * written together do not expire in the same second
+     *
+     * @param ttlJitter max fraction of the time to live, in [0, 1), 0 to disable
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setTtlJitter(double ttlJitter) {
+        if (ttlJitter < 0 || ttlJitter >= 1) {
+            throw new IllegalArgumentException("ttl jitter should be in [0, 1)");
+        }
+        this.ttlJitter = ttlJitter;
+        return this;
+    }
+
+    public double getEarlyRecomputeBeta() {
+        return earlyRecomputeBeta;
+    }
+
+    /**
+     * reload the values with the cache loader in the background before they expire, with a chance rising as expiry
+     * approaches, see {@link EarlyExpiration}. The values are stored with their expiry and compute time. It does not
+     * apply when the expiry policy has an access duration, as the accesses extend the expiry.
+     *
+     * @param earlyRecomputeBeta weight of the compute time, 1 by default in XFetch, 0 to disable
+     * @return this configuration
+     */
+    public SpyMutableConfiguration<K, V> setEarlyRecomputeBeta(double earlyRecomputeBeta) {
+        if (earlyRecomputeBeta < 0) {
+            throw new IllegalArgumentException("early recompute beta should not be negative");
+        }
+        this.earlyRecomputeBeta = earlyRecomputeBeta;
+        return this;
+    }
+
     @Override
     public MutableConfiguration<K, V> setCacheLoaderFactory(Factory<? extends CacheLoader<K, V>> factory) {
         this.cacheLoader = factory.create();
@@ -0,0 +1,36 @@
+package net.spy.memcached.jcache;
+
+/**
+ * value stored with the header used for the early recompute: its expiry time and the time it took to compute
+ *
+ * @author linux_china
+ */
+public class StampedValue {
+    private final Object value;
+    private final long expiryMillis;
+    private final int computeMillis;
+
+    public StampedValue(Object value, long expiryMillis, int computeMillis) {
+        this.value = value;
+        this.expiryMillis = expiryMillis;
+        this.computeMillis = computeMillis;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * @return expiry time in milliseconds since January 1, 1970, by the clock of the writer
+     */
+    public long getExpiryMillis() {
+        return expiryMillis;
+    }
+
+    /**
+     * @return time to compute the value in milliseconds
+     */
+    public int getComputeMillis() {
+        return computeMillis;
+    }
+}
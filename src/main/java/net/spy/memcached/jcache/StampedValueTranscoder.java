@@ -0,0 +1,61 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.CachedData;
+import net.spy.memcached.transcoders.Transcoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * transcoder prefixing the encoded {@link StampedValue}s with a 12 bytes header, expiry time and compute time,
+ * marked by a flag bit unused by the transcoders of spymemcached. Values without the flag, written by other
+ * clients or before the early recompute was enabled, are decoded as plain values.
+ *
+ * @author linux_china
+ */
+public class StampedValueTranscoder implements Transcoder<Object> {
+    /**
+     * flag of a stamped value, the serializing transcoders use the bits 0, 1 and 8 to 15
+     */
+    static final int STAMPED = 0x80;
+    private static final int HEADER_SIZE = 8 + 4;
+    private final Transcoder<Object> delegate;
+
+    public StampedValueTranscoder(Transcoder<Object> delegate) {
+        this.delegate = delegate;
+    }
+
+    public boolean asyncDecode(CachedData d) {
+        return delegate.asyncDecode(d);
+    }
+
+    public CachedData encode(Object o) {
+        if (!(o instanceof StampedValue)) {
+            return delegate.encode(o);
+        }
+        StampedValue stamped = (StampedValue) o;
+        CachedData data = delegate.encode(stamped.getValue());
+        byte[] bytes = data.getData();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+        buffer.putLong(stamped.getExpiryMillis());
+        buffer.putInt(stamped.getComputeMillis());
+        buffer.put(bytes);
+        return new CachedData(data.getFlags() | STAMPED, buffer.array(), getMaxSize());
+    }
+
+    public Object decode(CachedData d) {
+        if ((d.getFlags() & STAMPED) == 0) {
+            return delegate.decode(d);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(d.getData());
+        long expiryMillis = buffer.getLong();
+        int computeMillis = buffer.getInt();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        Object value = delegate.decode(new CachedData(d.getFlags() & ~STAMPED, bytes, getMaxSize()));
+        return new StampedValue(value, expiryMillis, computeMillis);
+    }
+
+    public int getMaxSize() {
+        return delegate.getMaxSize();
+    }
+}
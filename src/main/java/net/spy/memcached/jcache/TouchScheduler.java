@@ -0,0 +1,162 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.MemcachedClient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * background touches extending the expiration of accessed entries, so that reads do not pay an extra round trip.
+ * <p/>
+ * A key is touched at most once per touch interval: the time of the last touch of each key is kept until the
+ * interval elapsed, the expired times are pruned on flush. The touches are queued per key, so the accesses of a
+ * key between two flushes are merged, and sent back to back every flush interval. The queue is bounded, touches
+ * beyond it are dropped and the key can be touched again at its next access, as touches are best effort the
+ * pending ones are dropped on close.
+ *
+ * @author linux_china
+ */
+public class TouchScheduler {
+    private final MemcachedClient mClient;
+    private final long touchIntervalMillis;
+    private final int maxPending;
+    private final ConcurrentHashMap<String, Long> lastTouches = new ConcurrentHashMap<String, Long>();
+    private final LinkedHashMap<String, Integer> pending = new LinkedHashMap<String, Integer>();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final ScheduledFuture<?> flushTask;
+
+    /**
+     * construct a touch scheduler
+     *
+     * @param mClient             memcached client
+     * @param touchIntervalMillis min interval between two touches of a key
+     * @param flushIntervalMillis interval between two flushes of the queued touches
+     * @param maxPending          max number of queued touches
+     * @param scheduler           scheduler of the flushes
+     */
+    public TouchScheduler(MemcachedClient mClient, long touchIntervalMillis, long flushIntervalMillis, int maxPending,
+                          ScheduledExecutorService scheduler) {
+        this.mClient = mClient;
+        this.touchIntervalMillis = touchIntervalMillis;
+        this.maxPending = maxPending;
+        this.flushTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * queue a touch of an accessed key unless it was touched within the touch interval
+     *
+     * @param compositeKey memcached key
+     * @param expiration   memcached expiration, see {@link SpyCache#getExpiration}
+     * @return true if the touch is queued
+     */
+    public boolean touch(String compositeKey, int expiration) {
+        long now = System.currentTimeMillis();
+        if (isThrottled(compositeKey, now)) {
+            throttled.incrementAndGet();
+            return false;
+        }
+        synchronized (pending) {
+            if (isThrottled(compositeKey, now)) {
+                throttled.incrementAndGet();
+                return false;
+            }
+            if (pending.size() >= maxPending && !pending.containsKey(compositeKey)) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            pending.put(compositeKey, expiration);
+            lastTouches.put(compositeKey, now);
+        }
+        return true;
+    }
+
+    private boolean isThrottled(String compositeKey, long now) {
+        Long lastTouch = lastTouches.get(compositeKey);
+        return lastTouch != null && now - lastTouch < touchIntervalMillis;
+    }
+
+    /**
+     * send the queued touches
+     */
+    public void flush() {
+        pruneLastTouches();
+        Map<String, Integer> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new LinkedHashMap<String, Integer>(pending);
+            pending.clear();
+        }
+        for (Map.Entry<String, Integer> touch : batch.entrySet()) {
+            try {
+                mClient.touch(touch.getKey(), touch.getValue());
+                sent.incrementAndGet();
+            } catch (RuntimeException e) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * forget the keys touched before the touch interval, they can be touched again
+     */
+    private void pruneLastTouches() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> lastTouch : lastTouches.entrySet()) {
+            if (now - lastTouch.getValue() >= touchIntervalMillis) {
+                lastTouches.remove(lastTouch.getKey(), lastTouch.getValue());
+            }
+        }
+    }
+
+    public void close() {
+        flushTask.cancel(false);
+        synchronized (pending) {
+            dropped.addAndGet(pending.size());
+            pending.clear();
+        }
+        lastTouches.clear();
+    }
+
+    /**
+     * @return number of queued touches
+     */
+    public int getPending() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return number of touches skipped because the same key was touched within the touch interval
+     */
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * @return number of touches dropped because the queue was full, the client rejected them or the cache closed
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of touches sent
+     */
+    public long getSent() {
+        return sent.get();
+    }
+}
@@ -0,0 +1,323 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.jcache.management.CacheOperation;
+
+import javax.cache.Cache;
+import javax.cache.integration.CacheWriter;
+import javax.cache.integration.CacheWriterException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * write-behind queue of a cache writer: writes and deletes are queued per key, so repeated updates of
+ * a key are merged, and flushed with {@link CacheWriter#writeAll} and {@link CacheWriter#deleteAll} when
+ * the batch size is reached or the flush interval elapsed. Failed keys are retried with exponential
+ * backoff, every flush skips the keys in backoff. A write of a new key to a full queue flushes the due
+ * keys on the caller thread, then blocks until there is room or rejects the write after a timeout.
+ *
+ * @author linux_china
+ */
+@SuppressWarnings("unchecked")
+public class WriteBehindQueue<K, V> {
+    /**
+     * marker of a queued delete
+     */
+    private static final Object DELETED = new Object();
+    private final Cache<K, V> cache;
+    private final CacheWriter<K, V> cacheWriter;
+    private final int batchSize;
+    private final int maxQueueSize;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final long blockTimeoutMillis;
+    private final ScheduledExecutorService scheduler;
+    private final LinkedHashMap<K, PendingWrite> pending = new LinkedHashMap<K, PendingWrite>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong deletes = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private volatile boolean closed;
+    private final ScheduledFuture<?> flushTask;
+    private final Runnable flushRunnable = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    public WriteBehindQueue(Cache<K, V> cache, CacheWriter<? super K, ? super V> cacheWriter, int batchSize, long flushIntervalMillis,
+                            int maxQueueSize, int maxRetries, long retryBackoffMillis, long blockTimeoutMillis,
+                            ScheduledExecutorService scheduler) {
+        this.cache = cache;
+        this.cacheWriter = (CacheWriter<K, V>) cacheWriter;
+        this.batchSize = batchSize;
+        this.maxQueueSize = maxQueueSize;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.scheduler = scheduler;
+        this.flushTask = scheduler.scheduleWithFixedDelay(flushRunnable, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * queue a write
+     *
+     * @param key   key
+     * @param value value
+     */
+    public void write(K key, V value) {
+        enqueue(key, value);
+    }
+
+    /**
+     * queue a delete
+     *
+     * @param key key
+     */
+    public void delete(K key) {
+        enqueue(key, DELETED);
+    }
+
+    private void enqueue(K key, Object value) {
+        int size = put(key, value, 0);
+        if (size < 0) {
+            //bounded memory: the caller pays for the flush of the due keys, then waits for the keys in backoff
+            flush();
+            size = put(key, value, blockTimeoutMillis);
+        }
+        if (size >= batchSize && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(flushRunnable);
+        }
+    }
+
+    /**
+     * queue a write or delete, a new key waits for room in a full queue
+     *
+     * @param key           key
+     * @param value         value or DELETED
+     * @param timeoutMillis max time to wait for room, 0 to return at once
+     * @return queue size, -1 if the queue is full and the timeout is 0
+     * @throws CacheWriterException if there is still no room after the timeout
+     */
+    private int put(K key, Object value, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (pending) {
+            PendingWrite previous = pending.get(key);
+            while (previous == null && pending.size() >= maxQueueSize) {
+                if (timeoutMillis == 0) {
+                    return -1;
+                }
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    rejections.incrementAndGet();
+                    throw new CacheWriterException("Write behind queue full, max size is " + maxQueueSize);
+                }
+                try {
+                    pending.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CacheWriterException("Interrupted waiting for the write behind queue", e);
+                }
+                previous = pending.get(key);
+            }
+            if (previous != null) {
+                coalesced.incrementAndGet();
+            }
+            pending.put(key, new PendingWrite(value, previous == null ? System.currentTimeMillis() : previous.enqueuedAt));
+            return pending.size();
+        }
+    }
+
+    /**
+     * flush the queued writes and deletes which are not in retry backoff
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    /**
+     * flush the queued writes and deletes
+     *
+     * @param force true to ignore the retry backoff, only once the queue is closed since a failed key
+     *              would be drained again right away
+     */
+    private void flush(boolean force) {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            Map<K, PendingWrite> batch;
+            while (!(batch = drain(force)).isEmpty()) {
+                writeBatch(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * stop the periodic flush and make a last attempt for the remaining writes, including those in backoff
+     */
+    public void close() {
+        flushTask.cancel(false);
+        closed = true;
+        flush(true);
+    }
+
+    private Map<K, PendingWrite> drain(boolean force) {
+        Map<K, PendingWrite> batch = new LinkedHashMap<K, PendingWrite>();
+        long now = System.currentTimeMillis();
+        synchronized (pending) {
+            Iterator<Map.Entry<K, PendingWrite>> iterator = pending.entrySet().iterator();
+            while (batch.size() < batchSize && iterator.hasNext()) {
+                Map.Entry<K, PendingWrite> entry = iterator.next();
+                if (force || entry.getValue().nextAttemptAt <= now) {
+                    batch.put(entry.getKey(), entry.getValue());
+                    iterator.remove();
+                }
+            }
+            if (!batch.isEmpty()) {
+                //room for the writers waiting on a full queue
+                pending.notifyAll();
+            }
+        }
+        return batch;
+    }
+
+    private void writeBatch(Map<K, PendingWrite> batch) {
+        List<Cache.Entry<? extends K, ? extends V>> entries = new ArrayList<Cache.Entry<? extends K, ? extends V>>();
+        List<K> deletedKeys = new ArrayList<K>();
+        for (Map.Entry<K, PendingWrite> entry : batch.entrySet()) {
+            if (entry.getValue().value == DELETED) {
+                deletedKeys.add(entry.getKey());
+            } else {
+                entries.add(new SpyEntry<K, V>(cache, entry.getKey(), (V) entry.getValue().value));
+            }
+        }
+        if (!entries.isEmpty()) {
+            int size = entries.size();
+            try {
+                long start = System.nanoTime();
+                cacheWriter.writeAll(entries);
+                recordLatency(start);
+                writes.addAndGet(size);
+            } catch (Exception e) {
+                //the entries left in the collection were not written
+                writes.addAndGet(size - entries.size());
+                for (Cache.Entry<? extends K, ? extends V> entry : entries) {
+                    retry(entry.getKey(), batch.get(entry.getKey()));
+                }
+            }
+        }
+        if (!deletedKeys.isEmpty()) {
+            int size = deletedKeys.size();
+            try {
+                long start = System.nanoTime();
+                cacheWriter.deleteAll(deletedKeys);
+                recordLatency(start);
+                deletes.addAndGet(size);
+            } catch (Exception e) {
+                //the keys left in the collection were not deleted
+                deletes.addAndGet(size - deletedKeys.size());
+                for (K key : deletedKeys) {
+                    retry(key, batch.get(key));
+                }
+            }
+        }
+    }
+
+    private void recordLatency(long start) {
+        if (cache instanceof SpyCache) {
+            ((SpyCache<K, V>) cache).recordLatency(CacheOperation.WRITE, start);
+        }
+    }
+
+    private void retry(K key, PendingWrite write) {
+        synchronized (pending) {
+            if (pending.containsKey(key)) {
+                //superseded by a newer write
+                return;
+            }
+            if (write.attempts >= maxRetries || closed) {
+                failures.incrementAndGet();
+                return;
+            }
+            write.nextAttemptAt = System.currentTimeMillis() + (retryBackoffMillis << Math.min(write.attempts, 20));
+            write.attempts++;
+            pending.put(key, write);
+            retries.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return queued writes and deletes
+     */
+    public int getQueueSize() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return age of the oldest queued write in milliseconds
+     */
+    public long getLagMillis() {
+        long oldest = Long.MAX_VALUE;
+        synchronized (pending) {
+            for (PendingWrite write : pending.values()) {
+                oldest = Math.min(oldest, write.enqueuedAt);
+            }
+        }
+        return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public long getDeletes() {
+        return deletes.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return writes rejected because the queue stayed full
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    private static class PendingWrite {
+        private final Object value;
+        private final long enqueuedAt;
+        private int attempts;
+        private long nextAttemptAt;
+
+        private PendingWrite(Object value, long enqueuedAt) {
+            this.value = value;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package net.spy.memcached.jcache.event;
+
+import net.spy.memcached.CachedData;
+import net.spy.memcached.transcoders.Transcoder;
+
+import javax.cache.event.EventType;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * fixed size ring buffer journal of the entry events of a cache, kept off heap in a direct buffer.
+ * <p/>
+ * Writers claim a sequence with one atomic increment and publish the slot by setting its sequence, they never
+ * wait for readers. Readers consume through independent {@link Cursor}s and validate each slot after copying it,
+ * a cursor lapped by the writers skips to the oldest entry still in the buffer and counts the missed entries.
+ * The capacity should be large enough that writers do not lap each other during a single append.
+ * <p/>
+ * Slot layout: timestamp, event type, key flags, key length and key bytes encoded by the transcoder of the
+ * memcached client. The sequence of an entry is its version.
+ *
+ * @param <K> the type of keys
+ */
+public class CacheEntryJournal<K> {
+    private static final int HEADER_SIZE = 8 + 1 + 4 + 2;
+    private static final long BUSY = -1;
+    private static final EventType[] EVENT_TYPES = EventType.values();
+    private final ByteBuffer buffer;
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong oversized = new AtomicLong();
+    private final int mask;
+    private final int slotSize;
+    private final int maxKeyBytes;
+    private final Transcoder<Object> transcoder;
+
+    /**
+     * construct a journal
+     *
+     * @param capacity    number of entries, rounded up to a power of two
+     * @param maxKeyBytes max size of an encoded key, larger keys are not journaled
+     * @param transcoder  transcoder of the keys
+     */
+    public CacheEntryJournal(int capacity, int maxKeyBytes, Transcoder<Object> transcoder) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        if (maxKeyBytes > 0xffff) {
+            throw new IllegalArgumentException("max key bytes should be less than 65536");
+        }
+        this.maxKeyBytes = maxKeyBytes;
+        this.slotSize = HEADER_SIZE + maxKeyBytes;
+        this.buffer = ByteBuffer.allocateDirect(size * slotSize);
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, BUSY);
+        }
+        this.transcoder = transcoder;
+    }
+
+    /**
+     * append an event
+     *
+     * @param key       key
+     * @param eventType type of the event
+     * @return sequence of the entry, -1 if the key is too large
+     */
+    public long append(K key, EventType eventType) {
+        CachedData data = transcoder.encode(key);
+        byte[] bytes = data.getData();
+        if (bytes.length > maxKeyBytes) {
+            oversized.incrementAndGet();
+            return -1;
+        }
+        long sequence = head.getAndIncrement();
+        int slot = (int) sequence & mask;
+        published.set(slot, BUSY);
+        ByteBuffer target = buffer.duplicate();
+        //through Buffer, the covariant ByteBuffer.position of JDK 9 does not link on older JVMs
+        ((Buffer) target).position(slot * slotSize);
+        target.putLong(System.currentTimeMillis());
+        target.put((byte) eventType.ordinal());
+        target.putInt(data.getFlags());
+        target.putShort((short) bytes.length);
+        target.put(bytes);
+        published.set(slot, sequence);
+        return sequence;
+    }
+
+    /**
+     * create a cursor reading the entries appended from now on
+     *
+     * @return cursor
+     */
+    public Cursor newCursor() {
+        return new Cursor(head.get());
+    }
+
+    /**
+     * create a cursor reading from the oldest entry still in the buffer
+     *
+     * @return cursor
+     */
+    public Cursor newCursorFromOldest() {
+        return new Cursor(Math.max(0, head.get() - capacity()));
+    }
+
+    /**
+     * @return number of entries the buffer holds
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return sequence of the next entry
+     */
+    public long getHead() {
+        return head.get();
+    }
+
+    /**
+     * @return number of events not journaled because the key was too large
+     */
+    public long getOversized() {
+        return oversized.get();
+    }
+
+    /**
+     * entry read from the journal
+     *
+     * @param <K> the type of keys
+     */
+    public static class Entry<K> {
+        private final long sequence;
+        private final long timestamp;
+        private final EventType eventType;
+        private final K key;
+
+        public Entry(long sequence, long timestamp, EventType eventType, K key) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.eventType = eventType;
+            this.key = key;
+        }
+
+        /**
+         * @return sequence of the entry in the journal, its version
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return time of the event in milliseconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public EventType getEventType() {
+            return eventType;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return sequence + " " + eventType + " " + key;
+        }
+    }
+
+    /**
+     * independent reader of the journal, a cursor is not thread safe
+     */
+    public class Cursor {
+        private long position;
+        private long missed;
+
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        /**
+         * read the published entries after the position of the cursor
+         *
+         * @param entries list to add the entries to
+         * @param max     max number of entries to read
+         * @return number of entries read
+         */
+        @SuppressWarnings("unchecked")
+        public int read(List<Entry<K>> entries, int max) {
+            int count = 0;
+            ByteBuffer source = buffer.duplicate();
+            byte[] bytes = new byte[maxKeyBytes];
+            while (count < max) {
+                long oldest = head.get() - capacity();
+                if (position < oldest) {
+                    missed += oldest - position;
+                    position = oldest;
+                }
+                int slot = (int) position & mask;
+                if (published.get(slot) != position) {
+                    //not published yet, or just overwritten and retried as lapped on the next loop
+                    if (head.get() - capacity() <= position) {
+                        break;
+                    }
+                    continue;
+                }
+                ((Buffer) source).position(slot * slotSize);
+                long timestamp = source.getLong();
+                int type = source.get();
+                int flags = source.getInt();
+                int length = source.getShort() & 0xffff;
+                if (length > maxKeyBytes) {
+                    //torn by a writer reusing the slot
+                    continue;
+                }
+                source.get(bytes, 0, length);
+                //the successful exchange validates that no writer reused the slot while it was copied
+                if (!published.compareAndSet(slot, position, position)) {
+                    continue;
+                }
+                byte[] data = new byte[length];
+                System.arraycopy(bytes, 0, data, 0, length);
+                K key = (K) transcoder.decode(new CachedData(flags, data, transcoder.getMaxSize()));
+                entries.add(new Entry<K>(position, timestamp, EVENT_TYPES[type], key));
+                position++;
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * @return sequence of the next entry to read
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * @return number of entries appended but not read yet
+         */
+        public long getLag() {
+            return Math.max(0, head.get() - position);
+        }
+
+        /**
+         * @return number of entries overwritten before the cursor read them
+         */
+        public long getMissed() {
+            return missed;
+        }
+    }
+}
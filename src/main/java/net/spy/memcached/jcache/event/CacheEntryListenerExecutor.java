@@ -0,0 +1,242 @@
+package net.spy.memcached.jcache.event;
+
+import net.spy.memcached.jcache.OverflowPolicy;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the events of asynchronous {@link javax.cache.event.CacheEntryListener}s on a shared bounded
+ * thread pool. Every listener has its own bounded queue drained by at most one thread at a time, so the
+ * events of one listener are delivered in order and a slow listener does not delay the others. A thread
+ * delivers a bounded batch of events of a listener before queueing the listener again, so a listener
+ * receiving a steady stream of events does not hold a pool thread.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author linux_china
+ */
+public class CacheEntryListenerExecutor<K, V> {
+    /**
+     * max deliveries of one listener per run, a busy listener is then queued again behind the other listeners
+     */
+    private static final int MAX_DRAIN = 64;
+
+    private final Executor executor;
+    private final int queueSize;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private final ConcurrentMap<RICacheEntryListenerRegistration<K, V>, ListenerQueue> queues =
+            new ConcurrentHashMap<RICacheEntryListenerRegistration<K, V>, ListenerQueue>();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong lagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    /**
+     * Constructs an {@link CacheEntryListenerExecutor}.
+     *
+     * @param executor       the thread pool delivering the events
+     * @param queueSize      the maximal pending deliveries per listener
+     * @param overflowPolicy     what to do when the queue of a listener is full
+     * @param blockTimeoutMillis maximal time to wait for room with {@link OverflowPolicy#BLOCK}, the delivery is
+     *                           dropped after it
+     */
+    public CacheEntryListenerExecutor(Executor executor, int queueSize, OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+        this.executor = executor;
+        this.queueSize = queueSize;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    /**
+     * Queues a delivery to the listener of a registration.
+     *
+     * @param registration the registration of the listener
+     * @param delivery     the delivery of events to the listener
+     */
+    public void execute(RICacheEntryListenerRegistration<K, V> registration, Runnable delivery) {
+        ListenerQueue queue = queues.get(registration);
+        if (queue == null) {
+            queue = new ListenerQueue();
+            ListenerQueue existing = queues.putIfAbsent(registration, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+        queue.offer(new PendingDelivery(delivery, System.nanoTime()));
+    }
+
+    /**
+     * Forgets the queue of a deregistered listener, pending deliveries are still delivered.
+     *
+     * @param registration the registration of the listener
+     */
+    public void remove(RICacheEntryListenerRegistration<K, V> registration) {
+        queues.remove(registration);
+    }
+
+    /**
+     * @return the number of deliveries waiting in the listener queues
+     */
+    public int getPending() {
+        int pending = 0;
+        for (ListenerQueue queue : queues.values()) {
+            pending += queue.deliveries.size();
+        }
+        return pending;
+    }
+
+    /**
+     * @return the number of deliveries completed
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * @return the number of deliveries dropped because the queue of a listener was full, or stayed full for the
+     * block timeout, or was full when its own listener triggered the delivery
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of deliveries which threw an exception
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the mean time between queueing and delivering, in nanoseconds
+     */
+    public long getAverageLagNanos() {
+        long count = delivered.get();
+        return count == 0 ? 0 : lagNanos.get() / count;
+    }
+
+    /**
+     * @return the maximal time between queueing and delivering, in nanoseconds
+     */
+    public long getMaxLagNanos() {
+        return maxLagNanos.get();
+    }
+
+    private void recordLag(long lag) {
+        lagNanos.addAndGet(lag);
+        long max;
+        while (lag > (max = maxLagNanos.get()) && !maxLagNanos.compareAndSet(max, lag)) {
+            //retry
+        }
+    }
+
+    /**
+     * A delivery with the time it was queued.
+     */
+    private static class PendingDelivery {
+        private final Runnable delivery;
+        private final long queuedAt;
+
+        private PendingDelivery(Runnable delivery, long queuedAt) {
+            this.delivery = delivery;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /**
+     * The bounded queue of one listener, drained by at most one thread at a time.
+     */
+    private class ListenerQueue implements Runnable {
+        private final LinkedBlockingQueue<PendingDelivery> deliveries = new LinkedBlockingQueue<PendingDelivery>(queueSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        /**
+         * thread delivering the events of this queue, a listener writing to its cache must not wait for itself
+         */
+        private volatile Thread drainer;
+
+        private void offer(PendingDelivery pending) {
+            if (!deliveries.offer(pending)) {
+                switch (overflowPolicy) {
+                    case REJECT:
+                        dropped.incrementAndGet();
+                        return;
+                    case DROP_OLDEST:
+                        while (!deliveries.offer(pending)) {
+                            if (deliveries.poll() != null) {
+                                dropped.incrementAndGet();
+                            }
+                        }
+                        break;
+                    default:
+                        if (Thread.currentThread() == drainer) {
+                            dropped.incrementAndGet();
+                            return;
+                        }
+                        try {
+                            if (!deliveries.offer(pending, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                                dropped.incrementAndGet();
+                                return;
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            dropped.incrementAndGet();
+                            return;
+                        }
+                }
+            }
+            if (draining.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        public void run() {
+            drainer = Thread.currentThread();
+            boolean more;
+            try {
+                more = drain();
+            } finally {
+                drainer = null;
+            }
+            if (more) {
+                //still draining, yield the thread to the queues of the other listeners
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * deliver the pending events, at most MAX_DRAIN of them
+         *
+         * @return true if events are left and the queue must be submitted again
+         */
+        private boolean drain() {
+            do {
+                PendingDelivery pending;
+                int drained = 0;
+                while (drained < MAX_DRAIN && (pending = deliveries.poll()) != null) {
+                    recordLag(System.nanoTime() - pending.queuedAt);
+                    try {
+                        pending.delivery.run();
+                    } catch (Throwable e) {
+                        failed.incrementAndGet();
+                    }
+                    delivered.incrementAndGet();
+                    drained++;
+                }
+                if (drained == MAX_DRAIN && !deliveries.isEmpty()) {
+                    return true;
+                }
+                draining.set(false);
+                //an offer may have raced with the end of the drain
+            } while (!deliveries.isEmpty() && draining.compareAndSet(false, true));
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package net.spy.memcached.jcache.event;
+
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.event.EventType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copy-on-write arrays of the {@link RICacheEntryListenerRegistration}s interested in each {@link EventType}.
+ * <p/>
+ * The arrays are rebuilt whenever a listener is registered or deregistered, so raising an event only reads
+ * a volatile field and operations can skip building events nobody listens to.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class CacheEntryListenerIndex<K, V> {
+
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private volatile RICacheEntryListenerRegistration<K, V>[][] registrations;
+
+    /**
+     * Constructs an empty {@link CacheEntryListenerIndex}.
+     */
+    public CacheEntryListenerIndex() {
+        rebuild(new ArrayList<RICacheEntryListenerRegistration<K, V>>());
+    }
+
+    /**
+     * Rebuilds the arrays from the registered listeners.
+     *
+     * @param all all the registered listeners
+     */
+    public synchronized void rebuild(Iterable<RICacheEntryListenerRegistration<K, V>> all) {
+        RICacheEntryListenerRegistration<K, V>[][] arrays = newArrays(EVENT_TYPES.length);
+        for (EventType eventType : EVENT_TYPES) {
+            Class<?> listenerClass = getListenerClass(eventType);
+            List<RICacheEntryListenerRegistration<K, V>> interested = new ArrayList<RICacheEntryListenerRegistration<K, V>>();
+            for (RICacheEntryListenerRegistration<K, V> registration : all) {
+                if (listenerClass.isInstance(registration.getCacheEntryListener())) {
+                    interested.add(registration);
+                }
+            }
+            arrays[eventType.ordinal()] = interested.toArray(CacheEntryListenerIndex.<K, V>newArray(interested.size()));
+        }
+        this.registrations = arrays;
+    }
+
+    /**
+     * Creates the arrays of registrations of the event types, the arrays hold the registrations of one cache only.
+     *
+     * @param length the number of event types
+     * @return the array of arrays
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> RICacheEntryListenerRegistration<K, V>[][] newArrays(int length) {
+        return (RICacheEntryListenerRegistration<K, V>[][]) new RICacheEntryListenerRegistration<?, ?>[length][];
+    }
+
+    /**
+     * Creates an array of registrations, it holds the registrations of one cache only.
+     *
+     * @param length the number of registrations
+     * @return the array
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> RICacheEntryListenerRegistration<K, V>[] newArray(int length) {
+        return (RICacheEntryListenerRegistration<K, V>[]) new RICacheEntryListenerRegistration<?, ?>[length];
+    }
+
+    /**
+     * Determines if any listener is interested in the specified type of event.
+     *
+     * @param eventType the type of event
+     * @return <code>true</code> if there is at least one interested listener
+     */
+    public boolean hasListeners(EventType eventType) {
+        return registrations[eventType.ordinal()].length > 0;
+    }
+
+    /**
+     * Obtains the listeners interested in the specified type of event, the returned array must not be modified.
+     *
+     * @param eventType the type of event
+     * @return the interested listeners, never null
+     */
+    public RICacheEntryListenerRegistration<K, V>[] getRegistrations(EventType eventType) {
+        return registrations[eventType.ordinal()];
+    }
+
+    /**
+     * Obtains the {@link CacheEntryListener} interface receiving the specified type of event.
+     *
+     * @param eventType the type of event
+     * @return the listener interface
+     */
+    public static Class<?> getListenerClass(EventType eventType) {
+        switch (eventType) {
+            case CREATED:
+                return CacheEntryCreatedListener.class;
+            case UPDATED:
+                return CacheEntryUpdatedListener.class;
+            case REMOVED:
+                return CacheEntryRemovedListener.class;
+            case EXPIRED:
+                return CacheEntryExpiredListener.class;
+            default:
+                throw new IllegalArgumentException("Unknown event type " + eventType);
+        }
+    }
+}
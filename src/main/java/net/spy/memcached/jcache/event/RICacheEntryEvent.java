@@ -31,6 +31,8 @@ import javax.cache.event.EventType;
  */
 public class RICacheEntryEvent<K, V> extends CacheEntryEvent<K, V> {
 
+  private static final long serialVersionUID = -6617129980496881842L;
+
   private K key;
   private V value;
   private V oldValue;
@@ -103,7 +105,7 @@ public class RICacheEntryEvent<K, V> extends CacheEntryEvent<K, V> {
   @Override
   public <T> T unwrap(Class<T> clazz) {
     if (clazz != null && clazz.isInstance(this)) {
-      return (T) this;
+      return clazz.cast(this);
     } else {
       throw new IllegalArgumentException("The class " + clazz + " is unknown to this implementation");
     }
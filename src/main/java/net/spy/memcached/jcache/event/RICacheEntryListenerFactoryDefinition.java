@@ -31,6 +31,8 @@ import javax.cache.event.CacheEntryListener;
  */
 public class RICacheEntryListenerFactoryDefinition<K, V> implements CacheEntryListenerConfiguration<K, V> {
 
+  private static final long serialVersionUID = -8908668044517638953L;
+
   private Factory<CacheEntryListener<? super K, ? super V>> listenerFactory;
   private Factory<CacheEntryEventFilter<? super K, ? super V>> filterFactory;
   private boolean isOldValueRequired;
@@ -18,6 +18,7 @@ package net.spy.memcached.jcache.event;
 
 import javax.cache.event.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -34,15 +35,31 @@ public class RICacheEventDispatcher<K, V> {
      * The map of {@link javax.cache.event.CacheEntryEvent}s to deliver, keyed by the class of
      * {@link javax.cache.event.CacheEntryListener} to which they should be dispatched.
      */
-    private ConcurrentHashMap<Class<? extends CacheEntryListener>,
+    private ConcurrentHashMap<Class<?>,
             ArrayList<CacheEntryEvent<K, V>>> eventMap;
 
+    /**
+     * The executor of the asynchronous listeners, null to deliver all events synchronously.
+     */
+    private final CacheEntryListenerExecutor<K, V> listenerExecutor;
+
     /**
      * Constructs an {@link RICacheEventDispatcher}.
      */
     public RICacheEventDispatcher() {
-        this.eventMap = new ConcurrentHashMap<Class<? extends CacheEntryListener>,
+        this(null);
+    }
+
+    /**
+     * Constructs an {@link RICacheEventDispatcher} delivering the events of the listeners which are
+     * not synchronous with the specified executor.
+     *
+     * @param listenerExecutor the executor of the asynchronous listeners
+     */
+    public RICacheEventDispatcher(CacheEntryListenerExecutor<K, V> listenerExecutor) {
+        this.eventMap = new ConcurrentHashMap<Class<?>,
                 ArrayList<CacheEntryEvent<K, V>>>();
+        this.listenerExecutor = listenerExecutor;
     }
 
     /**
@@ -53,7 +70,7 @@ public class RICacheEventDispatcher<K, V> {
      *                      receive the event
      * @param event         the event to be dispatched
      */
-    public void addEvent(Class<? extends CacheEntryListener> listenerClass, CacheEntryEvent<K, V> event) {
+    public void addEvent(Class<?> listenerClass, CacheEntryEvent<K, V> event) {
         if (listenerClass == null) {
             throw new NullPointerException("listenerClass can't be null");
         }
@@ -78,6 +95,9 @@ public class RICacheEventDispatcher<K, V> {
     /**
      * Dispatches the added events to the listeners defined by the specified
      * {@link javax.cache.configuration.CacheEntryListenerConfiguration}s.
+     * <p/>
+     * Synchronous listeners are notified on the calling thread, the others are
+     * handed to the {@link CacheEntryListenerExecutor} if there is one.
      *
      * @param registrations the {@link RICacheEntryListenerRegistration}s defining
      *                      {@link javax.cache.event.CacheEntryListener}s to which to dispatch events
@@ -85,75 +105,55 @@ public class RICacheEventDispatcher<K, V> {
      */
     public void dispatch(Iterable<RICacheEntryListenerRegistration<K, V>> registrations) {
 
-        //TODO: we could really optimize this implementation
-
-        //TODO: we need to handle exceptions here
-
-        //TODO: we need to work out which events should be raised synchronously or asynchronously
-
         //TODO: we need to remove/hide old values appropriately
 
-        Iterable<CacheEntryEvent<K, V>> events;
-
         try {
-
-            //notify expiry listeners
-            events = eventMap.get(CacheEntryExpiredListener.class);
-            if (events != null) {
-                for (RICacheEntryListenerRegistration<K, V> registration : registrations) {
-                    CacheEntryEventFilter<? super K, ? super V> filter = registration.getCacheEntryFilter();
-                    Iterable<CacheEntryEvent<K, V>> iterable =
-                            filter == null ? events : new RICacheEntryEventFilteringIterable<K, V>(events, filter);
-
-                    CacheEntryListener<? super K, ? super V> listener = registration.getCacheEntryListener();
-                    if (listener instanceof CacheEntryExpiredListener) {
-                        ((CacheEntryExpiredListener) listener).onExpired(iterable);
-                    }
-                }
-            }
-
-            //notify create listeners
-            events = eventMap.get(CacheEntryCreatedListener.class);
-            if (events != null) {
-                for (RICacheEntryListenerRegistration<K, V> registration : registrations) {
-                    CacheEntryEventFilter<? super K, ? super V> filter = registration.getCacheEntryFilter();
-                    Iterable<CacheEntryEvent<K, V>> iterable =
-                            filter == null ? events : new RICacheEntryEventFilteringIterable<K, V>(events, filter);
-
-                    CacheEntryListener<? super K, ? super V> listener = registration.getCacheEntryListener();
-                    if (listener instanceof CacheEntryCreatedListener) {
-                        ((CacheEntryCreatedListener) listener).onCreated(iterable);
-                    }
-                }
+            dispatch(registrations, CacheEntryExpiredListener.class);
+            dispatch(registrations, CacheEntryCreatedListener.class);
+            dispatch(registrations, CacheEntryUpdatedListener.class);
+            dispatch(registrations, CacheEntryRemovedListener.class);
+        } catch (Exception e) {
+            if (!(e instanceof CacheEntryListenerException)) {
+                throw new CacheEntryListenerException("Exception on listener execution", e);
             }
+        }
+    }
 
-            //notify update listeners
-            events = eventMap.get(CacheEntryUpdatedListener.class);
-            if (events != null) {
-                for (RICacheEntryListenerRegistration<K, V> registration : registrations) {
-                    CacheEntryEventFilter<? super K, ? super V> filter = registration.getCacheEntryFilter();
-                    Iterable<CacheEntryEvent<K, V>> iterable =
-                            filter == null ? events : new RICacheEntryEventFilteringIterable<K, V>(events, filter);
-
-                    CacheEntryListener<? super K, ? super V> listener = registration.getCacheEntryListener();
-                    if (listener instanceof CacheEntryUpdatedListener) {
-                        ((CacheEntryUpdatedListener) listener).onUpdated(iterable);
-                    }
-                }
+    private void dispatch(Iterable<RICacheEntryListenerRegistration<K, V>> registrations,
+                          Class<?> listenerClass) {
+        Iterable<CacheEntryEvent<K, V>> events = eventMap.get(listenerClass);
+        if (events == null) {
+            return;
+        }
+        for (RICacheEntryListenerRegistration<K, V> registration : registrations) {
+            if (!listenerClass.isInstance(registration.getCacheEntryListener())) {
+                continue;
             }
+            CacheEntryEventFilter<? super K, ? super V> filter = registration.getCacheEntryFilter();
+            deliver(registration, listenerClass,
+                    filter == null ? events : new RICacheEntryEventFilteringIterable<K, V>(events, filter), listenerExecutor);
+        }
+    }
 
-            //notify remove listeners
-            events = eventMap.get(CacheEntryRemovedListener.class);
-            if (events != null) {
-                for (RICacheEntryListenerRegistration<K, V> registration : registrations) {
-                    CacheEntryEventFilter<? super K, ? super V> filter = registration.getCacheEntryFilter();
-                    Iterable<CacheEntryEvent<K, V>> iterable =
-                            filter == null ? events : new RICacheEntryEventFilteringIterable<K, V>(events, filter);
-
-                    CacheEntryListener<? super K, ? super V> listener = registration.getCacheEntryListener();
-                    if (listener instanceof CacheEntryRemovedListener) {
-                        ((CacheEntryRemovedListener) listener).onRemoved(iterable);
-                    }
+    /**
+     * Dispatches a single event to the listeners already known to be interested in its type, without
+     * collecting it first.
+     *
+     * @param registrations    the registrations of the listeners of the type of the event, see
+     *                         {@link CacheEntryListenerIndex#getRegistrations(javax.cache.event.EventType)}
+     * @param event            the event to be dispatched
+     * @param listenerExecutor the executor of the asynchronous listeners, may be null
+     */
+    public static <K, V> void dispatch(RICacheEntryListenerRegistration<K, V>[] registrations,
+                                       CacheEntryEvent<K, V> event,
+                                       CacheEntryListenerExecutor<K, V> listenerExecutor) {
+        Class<?> listenerClass = CacheEntryListenerIndex.getListenerClass(event.getEventType());
+        Iterable<CacheEntryEvent<K, V>> events = Collections.singletonList(event);
+        try {
+            for (RICacheEntryListenerRegistration<K, V> registration : registrations) {
+                CacheEntryEventFilter<? super K, ? super V> filter = registration.getCacheEntryFilter();
+                if (filter == null || filter.evaluate(event)) {
+                    deliver(registration, listenerClass, events, listenerExecutor);
                 }
             }
         } catch (Exception e) {
@@ -163,5 +163,42 @@ public class RICacheEventDispatcher<K, V> {
         }
     }
 
+    private static <K, V> void deliver(RICacheEntryListenerRegistration<K, V> registration,
+                                       final Class<?> listenerClass,
+                                       final Iterable<CacheEntryEvent<K, V>> events,
+                                       CacheEntryListenerExecutor<K, V> listenerExecutor) {
+        final CacheEntryListener<? super K, ? super V> listener = registration.getCacheEntryListener();
+        if (listenerExecutor != null && !registration.isSynchronous()) {
+            listenerExecutor.execute(registration, new Runnable() {
+                public void run() {
+                    notifyListener(listener, listenerClass, events);
+                }
+            });
+        } else {
+            notifyListener(listener, listenerClass, events);
+        }
+    }
+
+    /**
+     * Notifies a listener of the events of the specified type.
+     *
+     * @param listener      the listener
+     * @param listenerClass the class of {@link javax.cache.event.CacheEntryListener} of the events
+     * @param events        the events
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> void notifyListener(CacheEntryListener<? super K, ? super V> listener,
+                                      Class<?> listenerClass,
+                                      Iterable<CacheEntryEvent<K, V>> events) {
+        if (listenerClass == CacheEntryExpiredListener.class) {
+            ((CacheEntryExpiredListener) listener).onExpired(events);
+        } else if (listenerClass == CacheEntryCreatedListener.class) {
+            ((CacheEntryCreatedListener) listener).onCreated(events);
+        } else if (listenerClass == CacheEntryUpdatedListener.class) {
+            ((CacheEntryUpdatedListener) listener).onUpdated(events);
+        } else if (listenerClass == CacheEntryRemovedListener.class) {
+            ((CacheEntryRemovedListener) listener).onRemoved(events);
+        }
+    }
 
 }
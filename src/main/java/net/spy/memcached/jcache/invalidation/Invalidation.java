@@ -0,0 +1,35 @@
+package net.spy.memcached.jcache.invalidation;
+
+import javax.cache.event.EventType;
+
+/**
+ * key changed in a cache, only {@link EventType#UPDATED} and {@link EventType#REMOVED} are published
+ */
+public class Invalidation {
+    private final String cacheName;
+    private final Object key;
+    private final EventType eventType;
+
+    public Invalidation(String cacheName, Object key, EventType eventType) {
+        this.cacheName = cacheName;
+        this.key = key;
+        this.eventType = eventType;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    @Override
+    public String toString() {
+        return eventType + " " + cacheName + ":" + key;
+    }
+}
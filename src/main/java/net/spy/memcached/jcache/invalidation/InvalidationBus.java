@@ -0,0 +1,37 @@
+package net.spy.memcached.jcache.invalidation;
+
+/**
+ * Invalidation bus, propagates the changes made by one cache manager to the cache managers of other JVMs or
+ * clients, so that their listeners see the entries changed remotely.
+ * <p/>
+ * Each instance is one endpoint of the bus: the invalidations it publishes are delivered to the subscribers
+ * of the other endpoints, never to its own.
+ */
+public interface InvalidationBus {
+
+    /**
+     * publish an invalidation to the other endpoints, implementations may batch it
+     *
+     * @param invalidation invalidation
+     */
+    void publish(Invalidation invalidation);
+
+    /**
+     * subscribe to the invalidations published by the other endpoints
+     *
+     * @param listener listener
+     */
+    void subscribe(InvalidationListener listener);
+
+    /**
+     * unsubscribe a listener
+     *
+     * @param listener listener
+     */
+    void unsubscribe(InvalidationListener listener);
+
+    /**
+     * flush the pending invalidations and leave the bus
+     */
+    void close();
+}
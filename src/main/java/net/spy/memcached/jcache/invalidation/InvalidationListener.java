@@ -0,0 +1,16 @@
+package net.spy.memcached.jcache.invalidation;
+
+import java.util.List;
+
+/**
+ * listener of the invalidations received from an {@link InvalidationBus}
+ */
+public interface InvalidationListener {
+
+    /**
+     * invalidations received from another endpoint, in the order they were published
+     *
+     * @param invalidations invalidations
+     */
+    void onInvalidations(List<Invalidation> invalidations);
+}
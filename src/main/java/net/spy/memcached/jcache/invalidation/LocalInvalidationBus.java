@@ -0,0 +1,76 @@
+package net.spy.memcached.jcache.invalidation;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * in-JVM invalidation bus, the endpoints created with the same group name deliver to each other synchronously
+ * on the publishing thread
+ */
+public class LocalInvalidationBus implements InvalidationBus {
+    /**
+     * endpoints of each group, an endpoint joins and leaves with the map locked so that the group of the last
+     * endpoint is removed and a new endpoint never joins a removed group
+     */
+    private static final Map<String, List<LocalInvalidationBus>> groups = new HashMap<String, List<LocalInvalidationBus>>();
+    private final String group;
+    private final List<LocalInvalidationBus> endpoints;
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+
+    /**
+     * join a group
+     *
+     * @param group group name
+     */
+    public LocalInvalidationBus(String group) {
+        this.group = group;
+        synchronized (groups) {
+            List<LocalInvalidationBus> existing = groups.get(group);
+            if (existing == null) {
+                existing = new CopyOnWriteArrayList<LocalInvalidationBus>();
+                groups.put(group, existing);
+            }
+            this.endpoints = existing;
+            this.endpoints.add(this);
+        }
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void publish(Invalidation invalidation) {
+        List<Invalidation> invalidations = Collections.singletonList(invalidation);
+        for (LocalInvalidationBus endpoint : endpoints) {
+            if (endpoint != this) {
+                endpoint.deliver(invalidations);
+            }
+        }
+    }
+
+    private void deliver(List<Invalidation> invalidations) {
+        for (InvalidationListener listener : listeners) {
+            listener.onInvalidations(invalidations);
+        }
+    }
+
+    public void subscribe(InvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(InvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void close() {
+        synchronized (groups) {
+            if (endpoints.remove(this) && endpoints.isEmpty()) {
+                groups.remove(group);
+            }
+        }
+        listeners.clear();
+    }
+}
@@ -0,0 +1,312 @@
+package net.spy.memcached.jcache.invalidation;
+
+import javax.cache.event.EventType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UDP multicast invalidation bus, the published invalidations are queued and sent every batch interval in
+ * datagrams of at most {@link #MAX_DATAGRAM_SIZE} bytes. Multicast loopback is enabled so that endpoints
+ * on the same host receive each other, an endpoint drops its own datagrams by their source id.
+ * <p/>
+ * Datagram layout: magic, source id, count, then for each invalidation the cache name, the event type, a key
+ * type tag and the key. Anyone reaching the group can send datagrams, so keys are never deserialized: only
+ * String and primitive wrapper keys are carried, written with DataOutput, invalidations of other keys are
+ * not published and counted as errors.
+ */
+public class MulticastInvalidationBus implements InvalidationBus, Runnable {
+    /**
+     * max size of a datagram, fits the usual ethernet MTU
+     */
+    public static final int MAX_DATAGRAM_SIZE = 1400;
+    private static final int MAGIC = 0x53504a49;
+    private static final long MAX_RECEIVE_BACKOFF_MILLIS = 1000;
+    private static final int HEADER_SIZE = 14;
+    private static final EventType[] EVENT_TYPES = EventType.values();
+    private static final int STRING = 0;
+    private static final int INTEGER = 1;
+    private static final int LONG = 2;
+    private static final int SHORT = 3;
+    private static final int BYTE = 4;
+    private static final int CHARACTER = 5;
+    private static final int BOOLEAN = 6;
+    private static final int DOUBLE = 7;
+    private static final int FLOAT = 8;
+    private final long sourceId = new Random().nextLong();
+    private final InetAddress group;
+    private final int port;
+    private final MulticastSocket socket;
+    private final ConcurrentLinkedQueue<Invalidation> pending = new ConcurrentLinkedQueue<Invalidation>();
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+    private final ScheduledFuture<?> flushTask;
+    private final Thread receiver;
+    private volatile boolean closed;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * join a multicast group
+     *
+     * @param group              multicast group address
+     * @param port               port
+     * @param timeToLive         time to live of the datagrams, 1 to stay on the local network
+     * @param batchIntervalMillis interval between two sends
+     * @param scheduler          scheduler of the sends
+     * @throws IOException if the socket can not join the group
+     */
+    public MulticastInvalidationBus(InetAddress group, int port, int timeToLive, long batchIntervalMillis, ScheduledExecutorService scheduler) throws IOException {
+        this.group = group;
+        this.port = port;
+        this.socket = new MulticastSocket(port);
+        this.socket.setTimeToLive(timeToLive);
+        //false enables the loopback
+        this.socket.setLoopbackMode(false);
+        this.socket.joinGroup(group);
+        this.receiver = new Thread(this, "spy-jcache-invalidation-" + group.getHostAddress() + ":" + port);
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+        this.flushTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }, batchIntervalMillis, batchIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void publish(Invalidation invalidation) {
+        if (!closed) {
+            pending.offer(invalidation);
+        }
+    }
+
+    public void subscribe(InvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(InvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * send the pending invalidations
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(MAX_DATAGRAM_SIZE);
+        DataOutputStream out = new DataOutputStream(body);
+        int count = 0;
+        Invalidation invalidation;
+        try {
+            while ((invalidation = pending.poll()) != null) {
+                byte[] entry = encode(invalidation);
+                if (entry == null || HEADER_SIZE + entry.length > MAX_DATAGRAM_SIZE) {
+                    //key type not supported or key too large for a datagram
+                    errors.incrementAndGet();
+                    continue;
+                }
+                if (count > 0 && HEADER_SIZE + body.size() + entry.length > MAX_DATAGRAM_SIZE) {
+                    send(body.toByteArray(), count);
+                    body.reset();
+                    count = 0;
+                }
+                out.write(entry);
+                count++;
+            }
+            if (count > 0) {
+                send(body.toByteArray(), count);
+            }
+        } catch (IOException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param invalidation invalidation
+     * @return encoded invalidation, null if the type of the key is not supported
+     * @throws IOException if the key can not be written
+     */
+    private byte[] encode(Invalidation invalidation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(invalidation.getCacheName());
+        out.writeByte(invalidation.getEventType().ordinal());
+        Object key = invalidation.getKey();
+        if (key instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) key);
+        } else if (key instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) key);
+        } else if (key instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) key);
+        } else if (key instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) key);
+        } else if (key instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) key);
+        } else if (key instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) key);
+        } else if (key instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) key);
+        } else if (key instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) key);
+        } else if (key instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) key);
+        } else {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object readKey(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case STRING:
+                return in.readUTF();
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHARACTER:
+                return in.readChar();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            default:
+                throw new IOException("unknown key type " + type);
+        }
+    }
+
+    private void send(byte[] body, int count) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + body.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeLong(sourceId);
+        out.writeShort(count);
+        out.write(body);
+        byte[] datagram = bytes.toByteArray();
+        socket.send(new DatagramPacket(datagram, datagram.length, group, port));
+        sent.incrementAndGet();
+    }
+
+    /**
+     * receive loop
+     */
+    public void run() {
+        byte[] buffer = new byte[65535];
+        long backoffMillis = 0;
+        while (!closed) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                backoffMillis = 0;
+            } catch (IOException e) {
+                if (closed || socket.isClosed()) {
+                    return;
+                }
+                errors.incrementAndGet();
+                //a failing socket fails again at once, back off instead of spinning
+                backoffMillis = Math.min(MAX_RECEIVE_BACKOFF_MILLIS, Math.max(1, backoffMillis * 2));
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                List<Invalidation> invalidations = decode(packet);
+                if (invalidations != null) {
+                    received.incrementAndGet();
+                    for (InvalidationListener listener : listeners) {
+                        listener.onInvalidations(invalidations);
+                    }
+                }
+            } catch (Exception e) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    private List<Invalidation> decode(DatagramPacket packet) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+        if (in.readInt() != MAGIC || in.readLong() == sourceId) {
+            return null;
+        }
+        int count = in.readUnsignedShort();
+        List<Invalidation> invalidations = new ArrayList<Invalidation>(Math.min(count, MAX_DATAGRAM_SIZE));
+        for (int i = 0; i < count; i++) {
+            String cacheName = in.readUTF();
+            int eventType = in.readUnsignedByte();
+            if (eventType >= EVENT_TYPES.length) {
+                throw new IOException("unknown event type " + eventType);
+            }
+            invalidations.add(new Invalidation(cacheName, readKey(in), EVENT_TYPES[eventType]));
+        }
+        return invalidations;
+    }
+
+    public void close() {
+        if (!closed) {
+            flushTask.cancel(false);
+            flush();
+            closed = true;
+            try {
+                socket.leaveGroup(group);
+            } catch (IOException ignore) {
+            }
+            socket.close();
+        }
+    }
+
+    /**
+     * @return number of datagrams sent
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * @return number of datagrams received from other endpoints
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * @return number of send, receive or decode errors
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+}
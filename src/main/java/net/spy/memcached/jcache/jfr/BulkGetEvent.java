@@ -0,0 +1,9 @@
+package net.spy.memcached.jcache.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.spy.memcached.jcache.BulkGet")
+@Label("Cache Bulk Get")
+class BulkGetEvent extends CacheEvent {
+}
@@ -0,0 +1,34 @@
+package net.spy.memcached.jcache.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder event of a cache operation, recorded when it lasts longer than the threshold of its type
+ */
+@Category({"Memcached", "JCache"})
+@StackTrace(false)
+@Threshold("1 ms")
+abstract class CacheEvent extends Event {
+    @Label("Cache")
+    String cacheName;
+
+    @Label("Key Hash")
+    @Description("Hash code of the memcached key, 0 for operations on several entries")
+    int keyHash;
+
+    @Label("Node")
+    @Description("Memcached node owning the key")
+    String node;
+
+    @Label("Size")
+    @Description("Encoded size of the value for operations on one key, number of entries otherwise")
+    int size;
+
+    @Label("Outcome")
+    String outcome;
+}
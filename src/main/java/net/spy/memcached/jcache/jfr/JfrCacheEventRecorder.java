@@ -0,0 +1,95 @@
+package net.spy.memcached.jcache.jfr;
+
+import net.spy.memcached.jcache.NodeLocatorCache;
+import net.spy.memcached.jcache.CacheEventRecorder;
+import net.spy.memcached.transcoders.Transcoder;
+
+import jdk.jfr.EventType;
+
+/**
+ * recorder of the operations of a cache as Java Flight Recorder events, an event is only allocated when its
+ * type is enabled in a running recording, and its fields are only filled when it passes the threshold
+ *
+ * @author linux_china
+ */
+public class JfrCacheEventRecorder implements CacheEventRecorder {
+    private static final EventType[] EVENT_TYPES = new EventType[Kind.values().length];
+
+    static {
+        EVENT_TYPES[Kind.GET.ordinal()] = EventType.getEventType(GetEvent.class);
+        EVENT_TYPES[Kind.BULK_GET.ordinal()] = EventType.getEventType(BulkGetEvent.class);
+        EVENT_TYPES[Kind.PUT.ordinal()] = EventType.getEventType(PutEvent.class);
+        EVENT_TYPES[Kind.REPLACE.ordinal()] = EventType.getEventType(ReplaceEvent.class);
+        EVENT_TYPES[Kind.LOAD.ordinal()] = EventType.getEventType(LoadEvent.class);
+        EVENT_TYPES[Kind.WRITE_THROUGH.ordinal()] = EventType.getEventType(WriteThroughEvent.class);
+        EVENT_TYPES[Kind.LISTENER_DISPATCH.ordinal()] = EventType.getEventType(ListenerDispatchEvent.class);
+    }
+
+    private final String cacheName;
+    private final NodeLocatorCache nodeLocator;
+    private final Transcoder<Object> transcoder;
+
+    public JfrCacheEventRecorder(String cacheName, NodeLocatorCache nodeLocator, Transcoder<Object> transcoder) {
+        this.cacheName = cacheName;
+        this.nodeLocator = nodeLocator;
+        this.transcoder = transcoder;
+    }
+
+    public Object begin(Kind kind) {
+        if (!EVENT_TYPES[kind.ordinal()].isEnabled()) {
+            return null;
+        }
+        CacheEvent event = newEvent(kind);
+        event.begin();
+        return event;
+    }
+
+    private static CacheEvent newEvent(Kind kind) {
+        switch (kind) {
+            case GET:
+                return new GetEvent();
+            case BULK_GET:
+                return new BulkGetEvent();
+            case PUT:
+                return new PutEvent();
+            case REPLACE:
+                return new ReplaceEvent();
+            case LOAD:
+                return new LoadEvent();
+            case WRITE_THROUGH:
+                return new WriteThroughEvent();
+            default:
+                return new ListenerDispatchEvent();
+        }
+    }
+
+    public void end(Object event, String compositeKey, Object value, String outcome) {
+        if (event == null) {
+            return;
+        }
+        CacheEvent cacheEvent = (CacheEvent) event;
+        cacheEvent.end();
+        if (cacheEvent.shouldCommit()) {
+            cacheEvent.cacheName = cacheName;
+            cacheEvent.keyHash = compositeKey.hashCode();
+            cacheEvent.node = String.valueOf(nodeLocator.getNode(compositeKey));
+            cacheEvent.size = value == null ? 0 : transcoder.encode(value).getData().length;
+            cacheEvent.outcome = outcome;
+            cacheEvent.commit();
+        }
+    }
+
+    public void end(Object event, int count, String outcome) {
+        if (event == null) {
+            return;
+        }
+        CacheEvent cacheEvent = (CacheEvent) event;
+        cacheEvent.end();
+        if (cacheEvent.shouldCommit()) {
+            cacheEvent.cacheName = cacheName;
+            cacheEvent.size = count;
+            cacheEvent.outcome = outcome;
+            cacheEvent.commit();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package net.spy.memcached.jcache.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.spy.memcached.jcache.ListenerDispatch")
+@Label("Cache Listener Dispatch")
+class ListenerDispatchEvent extends CacheEvent {
+}
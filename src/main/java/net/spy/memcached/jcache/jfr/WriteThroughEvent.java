@@ -0,0 +1,9 @@
+package net.spy.memcached.jcache.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.spy.memcached.jcache.WriteThrough")
+@Label("Cache Write Through")
+class WriteThroughEvent extends CacheEvent {
+}
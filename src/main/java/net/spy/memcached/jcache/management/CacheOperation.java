@@ -0,0 +1,22 @@
+package net.spy.memcached.jcache.management;
+
+/**
+ * cache operations whose latency is recorded in a {@link LatencyHistogram}
+ */
+public enum CacheOperation {
+    GET("get"), GET_ALL("getAll"), PUT("put"), PUT_ALL("putAll"), REMOVE("remove"), REPLACE("replace"),
+    LOAD("load"), WRITE("write");
+
+    private final String operationName;
+
+    CacheOperation(String operationName) {
+        this.operationName = operationName;
+    }
+
+    /**
+     * @return name of the operation in the ObjectName of its histogram
+     */
+    public String getOperationName() {
+        return operationName;
+    }
+}
@@ -0,0 +1,45 @@
+package net.spy.memcached.jcache.management;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * key among the most accessed of a cache, with its estimated rate and the memcached node owning it
+ */
+public class HotKey {
+    private final String key;
+    private final double estimatedRate;
+    private final String node;
+
+    @ConstructorProperties({"key", "estimatedRate", "node"})
+    public HotKey(String key, double estimatedRate, String node) {
+        this.key = key;
+        this.estimatedRate = estimatedRate;
+        this.node = node;
+    }
+
+    /**
+     * @return memcached key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return estimated accesses per second, an over estimate bounded by the sketch error
+     */
+    public double getEstimatedRate() {
+        return estimatedRate;
+    }
+
+    /**
+     * @return address of the node owning the key
+     */
+    public String getNode() {
+        return node;
+    }
+
+    @Override
+    public String toString() {
+        return key + " " + estimatedRate + "/s " + node;
+    }
+}
@@ -0,0 +1,34 @@
+package net.spy.memcached.jcache.management;
+
+import java.util.List;
+
+/**
+ * most accessed keys of a cache, estimated from a sample of the accesses
+ */
+public interface HotKeysMXBean {
+
+    /**
+     * @return the hot keys of the last complete window, hottest first
+     */
+    List<HotKey> getHotKeys();
+
+    /**
+     * @return the hot keys of the window in progress, hottest first
+     */
+    List<HotKey> getCurrentHotKeys();
+
+    /**
+     * @return max number of hot keys
+     */
+    int getTopK();
+
+    /**
+     * @return one access in the period is counted
+     */
+    int getSamplePeriod();
+
+    /**
+     * @return duration of a window in seconds
+     */
+    long getWindowSeconds();
+}
@@ -0,0 +1,218 @@
+package net.spy.memcached.jcache.management;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * lock free log-linear latency histogram in the style of HdrHistogram.
+ * <p/>
+ * Values below 64 nanoseconds have their own bucket, above that every power of two is split in 32 linear
+ * sub-buckets, so a percentile is within about 3% of the recorded value. Values are clamped to 2^40
+ * nanoseconds, about 18 minutes. Recording is one atomic increment on the bucket and a compare-and-set
+ * when the maximum grows, readers copy the buckets. The histogram also records other values such as sizes,
+ * reported in the unit given on construction.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean, Serializable {
+    private static final long serialVersionUID = 4527382615939041727L;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final float NANOSECONDS_IN_A_MICROSECOND = 1000f;
+    private final String operation;
+    private final float unit;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong intervalMax = new AtomicLong();
+    private long[] intervalStart = new long[BUCKETS];
+    private long intervalStartTotal;
+
+    public LatencyHistogram(String operation) {
+        this(operation, NANOSECONDS_IN_A_MICROSECOND);
+    }
+
+    /**
+     * construct a histogram of values reported divided by a unit
+     *
+     * @param operation name of the recorded values
+     * @param unit      divisor of the recorded values when reported
+     */
+    public LatencyHistogram(String operation, float unit) {
+        this.operation = operation;
+        this.unit = unit;
+    }
+
+    /**
+     * record the latency of an operation
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+        counts.incrementAndGet(bucket(value));
+        total.addAndGet(value);
+        updateMax(max, value);
+        updateMax(intervalMax, value);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @param bucket bucket index
+     * @return highest value recorded in the bucket
+     */
+    static long highestValue(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long mantissa = (bucket - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    private long[] copyCounts() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * @param counts     bucket counts
+     * @param percentile percentile in [0, 100]
+     * @param max        max recorded value, the upper bound of the result
+     * @return value at the percentile in nanoseconds
+     */
+    private static long valueAtPercentile(long[] counts, double percentile, long max) {
+        long count = 0;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    private float percentile(double percentile) {
+        return valueAtPercentile(copyCounts(), percentile, max.get()) / unit;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public float getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : total.get() / unit / count;
+    }
+
+    public float getPercentile50() {
+        return percentile(50);
+    }
+
+    public float getPercentile90() {
+        return percentile(90);
+    }
+
+    public float getPercentile99() {
+        return percentile(99);
+    }
+
+    public float getPercentile999() {
+        return percentile(99.9);
+    }
+
+    public float getMax() {
+        return max.get() / unit;
+    }
+
+    /**
+     * snapshot the operations recorded since the histogram was created or reset, without moving the interval
+     *
+     * @return the distribution of all the recorded operations
+     */
+    public LatencySnapshot getSnapshot() {
+        long[] current = copyCounts();
+        long maxValue = max.get();
+        long count = 0;
+        for (long bucketCount : current) {
+            count += bucketCount;
+        }
+        float mean = count == 0 ? 0 : total.get() / unit / count;
+        return new LatencySnapshot(count, mean,
+                valueAtPercentile(current, 50, maxValue) / unit,
+                valueAtPercentile(current, 90, maxValue) / unit,
+                valueAtPercentile(current, 99, maxValue) / unit,
+                valueAtPercentile(current, 99.9, maxValue) / unit,
+                maxValue / unit);
+    }
+
+    public synchronized LatencySnapshot takeIntervalSnapshot() {
+        long[] current = copyCounts();
+        long currentTotal = total.get();
+        long intervalMaxValue = intervalMax.getAndSet(0);
+        long[] interval = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            interval[i] = Math.max(0, current[i] - intervalStart[i]);
+            count += interval[i];
+        }
+        float mean = count == 0 ? 0 : (currentTotal - intervalStartTotal) / unit / count;
+        intervalStart = current;
+        intervalStartTotal = currentTotal;
+        return new LatencySnapshot(count, mean,
+                valueAtPercentile(interval, 50, intervalMaxValue) / unit,
+                valueAtPercentile(interval, 90, intervalMaxValue) / unit,
+                valueAtPercentile(interval, 99, intervalMaxValue) / unit,
+                valueAtPercentile(interval, 99.9, intervalMaxValue) / unit,
+                intervalMaxValue / unit);
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+        intervalMax.set(0);
+        intervalStart = new long[BUCKETS];
+        intervalStartTotal = 0;
+    }
+}
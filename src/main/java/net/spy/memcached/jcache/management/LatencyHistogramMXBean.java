@@ -0,0 +1,44 @@
+package net.spy.memcached.jcache.management;
+
+/**
+ * Latency distribution of one cache operation, times are in microseconds.
+ * <p/>
+ * The attributes cover all the operations since the histogram was created or reset,
+ * {@link #takeIntervalSnapshot()} covers the operations since the previous interval snapshot.
+ */
+public interface LatencyHistogramMXBean {
+
+    /**
+     * @return name of the operation
+     */
+    String getOperation();
+
+    /**
+     * @return number of recorded operations
+     */
+    long getCount();
+
+    float getMean();
+
+    float getPercentile50();
+
+    float getPercentile90();
+
+    float getPercentile99();
+
+    float getPercentile999();
+
+    float getMax();
+
+    /**
+     * Snapshot the operations recorded since the previous call, for monitoring which polls at a fixed interval.
+     *
+     * @return the distribution of the interval
+     */
+    LatencySnapshot takeIntervalSnapshot();
+
+    /**
+     * Clear the histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,62 @@
+package net.spy.memcached.jcache.management;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * latency distribution of an interval, times are in microseconds
+ */
+public class LatencySnapshot {
+    private final long count;
+    private final float mean;
+    private final float percentile50;
+    private final float percentile90;
+    private final float percentile99;
+    private final float percentile999;
+    private final float max;
+
+    @ConstructorProperties({"count", "mean", "percentile50", "percentile90", "percentile99", "percentile999", "max"})
+    public LatencySnapshot(long count, float mean, float percentile50, float percentile90, float percentile99,
+                           float percentile999, float max) {
+        this.count = count;
+        this.mean = mean;
+        this.percentile50 = percentile50;
+        this.percentile90 = percentile90;
+        this.percentile99 = percentile99;
+        this.percentile999 = percentile999;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public float getMean() {
+        return mean;
+    }
+
+    public float getPercentile50() {
+        return percentile50;
+    }
+
+    public float getPercentile90() {
+        return percentile90;
+    }
+
+    public float getPercentile99() {
+        return percentile99;
+    }
+
+    public float getPercentile999() {
+        return percentile999;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + mean + ", p50=" + percentile50 + ", p90=" + percentile90
+                + ", p99=" + percentile99 + ", p99.9=" + percentile999 + ", max=" + max;
+    }
+}
@@ -17,13 +17,17 @@
 package net.spy.memcached.jcache.management;
 
 import net.spy.memcached.jcache.SpyCache;
+import net.spy.memcached.jcache.SpyCacheManager;
 
 import javax.cache.Cache;
 import javax.cache.CacheException;
+import javax.cache.CacheManager;
 import javax.management.MBeanServer;
 import javax.management.MBeanServerFactory;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.SocketAddress;
 import java.util.Set;
 
 
@@ -51,7 +55,37 @@ public final class MBeanServerRegistrationUtility {
         /**
          * Cache Configuration
          */
-        Configuration
+        Configuration,
+
+        /**
+         * Memcached node circuit breaker
+         */
+        CircuitBreaker,
+
+        /**
+         * Latency histogram of a cache operation
+         */
+        Latency,
+
+        /**
+         * Memcached node server statistics
+         */
+        NodeStats,
+
+        /**
+         * Most accessed keys of a cache
+         */
+        HotKeys,
+
+        /**
+         * Sizes of the keys and values of a cache
+         */
+        Payload,
+
+        /**
+         * Last slow operations of a cache
+         */
+        SlowOperations
 
     }
 
@@ -66,18 +100,24 @@ public final class MBeanServerRegistrationUtility {
      *
      * @param cache the cache to register
      */
-    public static void registerCacheObject(SpyCache cache,
+    public static void registerCacheObject(SpyCache<?, ?> cache,
                                            ObjectNameType objectNameType) {
         //these can change during runtime, so always look it up
         ObjectName registeredObjectName = calculateObjectName(cache, objectNameType);
         try {
             if (objectNameType.equals(ObjectNameType.Configuration)) {
-                if (!isRegistered(cache, objectNameType)) {
-                    mBeanServer.registerMBean(cache.getCacheMXBean(), registeredObjectName);
-                }
+                register(cache.getCacheManager(), cache.getCacheMXBean(), registeredObjectName);
             } else if (objectNameType.equals(ObjectNameType.Statistics)) {
-                if (!isRegistered(cache, objectNameType)) {
-                    mBeanServer.registerMBean(cache.getCacheStatisticsMXBean(), registeredObjectName);
+                register(cache.getCacheManager(), cache.getCacheStatisticsMXBean(), registeredObjectName);
+            } else if (objectNameType.equals(ObjectNameType.Payload)) {
+                register(cache.getCacheManager(), cache.getCacheStatisticsMXBean().getPayloadStatistics(), registeredObjectName);
+            } else if (objectNameType.equals(ObjectNameType.SlowOperations)) {
+                if (cache.getSlowOperationLog() != null) {
+                    register(cache.getCacheManager(), cache.getSlowOperationLog(), registeredObjectName);
+                }
+            } else if (objectNameType.equals(ObjectNameType.HotKeys)) {
+                if (cache.getHotKeyTracker() != null) {
+                    register(cache.getCacheManager(), cache.getHotKeyTracker(), registeredObjectName);
                 }
             }
         } catch (Exception e) {
@@ -92,7 +132,7 @@ public final class MBeanServerRegistrationUtility {
      *
      * @throws javax.cache.CacheException - all exceptions are wrapped in CacheException
      */
-    static boolean isRegistered(SpyCache cache, ObjectNameType objectNameType) {
+    static boolean isRegistered(SpyCache<?, ?> cache, ObjectNameType objectNameType) {
 
         Set<ObjectName> registeredObjectNames = null;
 
@@ -108,18 +148,101 @@ public final class MBeanServerRegistrationUtility {
      *
      * @throws javax.cache.CacheException - all exceptions are wrapped in CacheException
      */
-    public static void unregisterCacheObject(SpyCache cache,
+    public static void unregisterCacheObject(SpyCache<?, ?> cache,
                                              ObjectNameType objectNameType) {
+        unregister(cache.getCacheManager(), calculateObjectName(cache, objectNameType));
+    }
 
-        Set<ObjectName> registeredObjectNames = null;
+    /**
+     * Utility method for registering the latency histograms of the operations of a cache
+     *
+     * @param cache the cache
+     */
+    public static void registerLatencyObjects(SpyCache<?, ?> cache) {
+        for (CacheOperation operation : CacheOperation.values()) {
+            ObjectName registeredObjectName = calculateObjectName(cache, operation.getOperationName());
+            try {
+                register(cache.getCacheManager(), cache.getCacheStatisticsMXBean().getLatencyHistogram(operation), registeredObjectName);
+            } catch (Exception e) {
+                throw new CacheException("Error registering latency MXBean "
+                        + registeredObjectName + " . Error was " + e.getMessage(), e);
+            }
+        }
+    }
 
-        ObjectName objectName = calculateObjectName(cache, objectNameType);
-        registeredObjectNames = mBeanServer.queryNames(objectName, null);
+    /**
+     * Removes the registered latency histograms of a cache
+     *
+     * @throws javax.cache.CacheException - all exceptions are wrapped in CacheException
+     */
+    public static void unregisterLatencyObjects(SpyCache<?, ?> cache) {
+        for (CacheOperation operation : CacheOperation.values()) {
+            unregister(cache.getCacheManager(), calculateObjectName(cache, operation.getOperationName()));
+        }
+    }
 
+    /**
+     * Utility method for registering an MXBean of a memcached node with the MBeanServer
+     *
+     * @param cacheManager   the cache manager owning the node
+     * @param node           the memcached node
+     * @param mxbean         the MXBean to register
+     * @param objectNameType the type of the MXBean
+     */
+    public static void registerNodeObject(CacheManager cacheManager, SocketAddress node, Object mxbean,
+                                          ObjectNameType objectNameType) {
+        ObjectName registeredObjectName = calculateObjectName(cacheManager, node, objectNameType);
+        try {
+            register(cacheManager, mxbean, registeredObjectName);
+        } catch (Exception e) {
+            throw new CacheException("Error registering node MXBean "
+                    + registeredObjectName + " . Error was " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Removes the registered MXBean of a memcached node
+     *
+     * @throws javax.cache.CacheException - all exceptions are wrapped in CacheException
+     */
+    public static void unregisterNodeObject(CacheManager cacheManager, SocketAddress node,
+                                            ObjectNameType objectNameType) {
+        unregister(cacheManager, calculateObjectName(cacheManager, node, objectNameType));
+    }
+
+    /**
+     * register an MXBean unless its name is taken, also with the platform MBeanServer if the cache manager
+     * has the platformMBeanServer parameter
+     */
+    private static void register(CacheManager cacheManager, Object mxbean, ObjectName objectName) throws Exception {
+        if (mBeanServer.queryNames(objectName, null).isEmpty()) {
+            mBeanServer.registerMBean(mxbean, objectName);
+        }
+        if (isPlatformMBeanServerEnabled(cacheManager)) {
+            MBeanServer platformMBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (platformMBeanServer.queryNames(objectName, null).isEmpty()) {
+                platformMBeanServer.registerMBean(mxbean, objectName);
+            }
+        }
+    }
+
+    /**
+     * unregister the MXBeans matching a name
+     *
+     * @throws javax.cache.CacheException - all exceptions are wrapped in CacheException
+     */
+    private static void unregister(CacheManager cacheManager, ObjectName objectName) {
+        unregister(mBeanServer, objectName);
+        if (isPlatformMBeanServerEnabled(cacheManager)) {
+            unregister(ManagementFactory.getPlatformMBeanServer(), objectName);
+        }
+    }
+
+    private static void unregister(MBeanServer server, ObjectName objectName) {
         //should just be one
-        for (ObjectName registeredObjectName : registeredObjectNames) {
+        for (ObjectName registeredObjectName : server.queryNames(objectName, null)) {
             try {
-                mBeanServer.unregisterMBean(registeredObjectName);
+                server.unregisterMBean(registeredObjectName);
             } catch (Exception e) {
                 throw new CacheException("Error unregistering object instance "
                         + registeredObjectName + " . Error was " + e.getMessage(), e);
@@ -127,11 +250,49 @@ public final class MBeanServerRegistrationUtility {
         }
     }
 
+    private static boolean isPlatformMBeanServerEnabled(CacheManager cacheManager) {
+        return cacheManager instanceof SpyCacheManager && ((SpyCacheManager) cacheManager).isPlatformMBeanServer();
+    }
+
+    /**
+     * Creates an object name using the scheme
+     * "javax.cache:type=Cache&lt;CircuitBreaker|NodeStats&gt;,CacheManager=&lt;cacheManagerName&gt;,Node=&lt;node&gt;"
+     */
+    private static ObjectName calculateObjectName(CacheManager cacheManager, SocketAddress node, ObjectNameType objectNameType) {
+        String cacheManagerName = mbeanSafe(cacheManager.getURI().toString());
+        String nodeName = mbeanSafe(String.valueOf(node));
+
+        try {
+            return new ObjectName("javax.cache:type=Cache" + objectNameType + ",CacheManager="
+                    + cacheManagerName + ",Node=" + nodeName);
+        } catch (MalformedObjectNameException e) {
+            throw new CacheException("Illegal ObjectName for Management Bean. " +
+                    "CacheManager=[" + cacheManagerName + "], Node=[" + nodeName + "]", e);
+        }
+    }
+
+    /**
+     * Creates an object name using the scheme
+     * "javax.cache:type=CacheLatency,CacheManager=&lt;cacheManagerName&gt;,Cache=&lt;cacheName&gt;,Operation=&lt;operation&gt;"
+     */
+    private static ObjectName calculateObjectName(Cache<?, ?> cache, String operation) {
+        String cacheManagerName = mbeanSafe(cache.getCacheManager().getURI().toString());
+        String cacheName = mbeanSafe(cache.getName());
+
+        try {
+            return new ObjectName("javax.cache:type=Cache" + ObjectNameType.Latency + ",CacheManager="
+                    + cacheManagerName + ",Cache=" + cacheName + ",Operation=" + operation);
+        } catch (MalformedObjectNameException e) {
+            throw new CacheException("Illegal ObjectName for Management Bean. " +
+                    "CacheManager=[" + cacheManagerName + "], Cache=[" + cacheName + "], Operation=[" + operation + "]", e);
+        }
+    }
+
     /**
      * Creates an object name using the scheme
      * "javax.cache:type=Cache&lt;Statistics|Configuration&gt;,CacheManager=&lt;cacheManagerName&gt;,name=&lt;cacheName&gt;"
      */
-    private static ObjectName calculateObjectName(Cache cache, ObjectNameType objectNameType) {
+    private static ObjectName calculateObjectName(Cache<?, ?> cache, ObjectNameType objectNameType) {
         String cacheManagerName = mbeanSafe(cache.getCacheManager().getURI().toString());
         String cacheName = mbeanSafe(cache.getName());
 
@@ -152,7 +313,7 @@ public final class MBeanServerRegistrationUtility {
      * @return A valid JMX ObjectName attribute value.
      */
     private static String mbeanSafe(String string) {
-        return string == null ? "" : string.replaceAll(",|:|=|\n", ".");
+        return string == null ? "" : string.replaceAll(",|:|=|\\?|\\*|\n", ".");
     }
 
 }
@@ -0,0 +1,54 @@
+package net.spy.memcached.jcache.management;
+
+/**
+ * Circuit breaker state of one memcached node.
+ *
+ * @author linux_china
+ */
+public interface NodeCircuitBreakerMXBean {
+
+    /**
+     * @return the address of the memcached node
+     */
+    String getNode();
+
+    /**
+     * @return CLOSED, OPEN or HALF_OPEN
+     */
+    String getState();
+
+    /**
+     * @return the number of calls recorded in the current window
+     */
+    long getCalls();
+
+    /**
+     * @return the number of failed calls, timeouts included, recorded in the current window
+     */
+    long getFailures();
+
+    /**
+     * @return the failure percentage of the current window
+     */
+    float getFailurePercentage();
+
+    /**
+     * @return the total number of timed out calls
+     */
+    long getTimeouts();
+
+    /**
+     * @return the total number of calls short-circuited while the breaker was open
+     */
+    long getRejections();
+
+    /**
+     * @return the number of times the breaker tripped open
+     */
+    long getTrips();
+
+    /**
+     * Closes the breaker and clears the current window.
+     */
+    void reset();
+}
@@ -0,0 +1,75 @@
+package net.spy.memcached.jcache.management;
+
+import java.util.Map;
+
+/**
+ * Server statistics of one memcached node, polled with the stats command.
+ *
+ * @author linux_china
+ */
+public interface NodeStatsMXBean {
+
+    /**
+     * @return the address of the memcached node
+     */
+    String getNode();
+
+    /**
+     * @return true if the node answered the last poll
+     */
+    boolean isReachable();
+
+    /**
+     * @return the time of the last poll answered by the node, in milliseconds since the epoch
+     */
+    long getLastPollTime();
+
+    /**
+     * @return the duration of the last stats call, in milliseconds
+     */
+    float getStatsLatency();
+
+    /**
+     * @return the number of items evicted to free memory
+     */
+    long getEvictions();
+
+    /**
+     * @return the number of bytes used to store items
+     */
+    long getBytes();
+
+    /**
+     * @return the number of bytes the node may use for storage
+     */
+    long getLimitMaxBytes();
+
+    /**
+     * @return bytes as a percentage of limit_maxbytes
+     */
+    float getMemoryUsagePercentage();
+
+    /**
+     * @return the number of items stored
+     */
+    long getCurrItems();
+
+    long getGetHits();
+
+    long getGetMisses();
+
+    /**
+     * @return get_hits as a percentage of the gets since the node started
+     */
+    float getHitPercentage();
+
+    /**
+     * @return the number of open connections
+     */
+    long getCurrConnections();
+
+    /**
+     * @return all the statistics of the last poll
+     */
+    Map<String, String> getStats();
+}
@@ -0,0 +1,146 @@
+package net.spy.memcached.jcache.management;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * sizes of the keys and values of a cache, fed by the transcoder wrapper of the cache
+ */
+public class PayloadStatistics implements PayloadStatisticsMXBean, Serializable {
+    private static final long serialVersionUID = -6417298153072284526L;
+    private final LatencyHistogram valueSizes = new LatencyHistogram("valueSize", 1f);
+    private final StripedCounter valuesWritten = new StripedCounter();
+    private final StripedCounter bytesWritten = new StripedCounter();
+    private final StripedCounter valuesRead = new StripedCounter();
+    private final StripedCounter bytesRead = new StripedCounter();
+    private final StripedCounter keys = new StripedCounter();
+    private final StripedCounter keyBytes = new StripedCounter();
+    private final StripedCounter nearLimitValues = new StripedCounter();
+    private final StripedCounter oversizedValues = new StripedCounter();
+    private final AtomicLong maxKeyLength = new AtomicLong();
+    private final int itemSizeLimit;
+    private final int nearLimit;
+
+    /**
+     * construct statistics
+     *
+     * @param itemSizeLimit max size of an item accepted by the memcached servers
+     */
+    public PayloadStatistics(int itemSizeLimit) {
+        this.itemSizeLimit = itemSizeLimit;
+        this.nearLimit = (int) (itemSizeLimit * 0.9);
+    }
+
+    /**
+     * record a value encoded for memcached
+     *
+     * @param size encoded size
+     */
+    public void recordValueWritten(int size) {
+        valuesWritten.add(1);
+        bytesWritten.add(size);
+        valueSizes.record(size);
+        if (size > itemSizeLimit) {
+            oversizedValues.add(1);
+        } else if (size >= nearLimit) {
+            nearLimitValues.add(1);
+        }
+    }
+
+    /**
+     * record a value decoded from memcached
+     *
+     * @param size encoded size
+     */
+    public void recordValueRead(int size) {
+        valuesRead.add(1);
+        bytesRead.add(size);
+        valueSizes.record(size);
+    }
+
+    /**
+     * record a key sent to memcached
+     *
+     * @param length length of the key
+     */
+    public void recordKey(int length) {
+        keys.add(1);
+        keyBytes.add(length);
+        long current;
+        while (length > (current = maxKeyLength.get())) {
+            if (maxKeyLength.compareAndSet(current, length)) {
+                return;
+            }
+        }
+    }
+
+    public long getValuesWritten() {
+        return valuesWritten.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getValuesRead() {
+        return valuesRead.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public float getMeanValueSize() {
+        return valueSizes.getMean();
+    }
+
+    public float getValueSizePercentile50() {
+        return valueSizes.getPercentile50();
+    }
+
+    public float getValueSizePercentile90() {
+        return valueSizes.getPercentile90();
+    }
+
+    public float getValueSizePercentile99() {
+        return valueSizes.getPercentile99();
+    }
+
+    public long getMaxValueSize() {
+        return (long) valueSizes.getMax();
+    }
+
+    public float getAverageKeyLength() {
+        long count = keys.sum();
+        return count == 0 ? 0 : (float) keyBytes.sum() / count;
+    }
+
+    public long getMaxKeyLength() {
+        return maxKeyLength.get();
+    }
+
+    public int getItemSizeLimit() {
+        return itemSizeLimit;
+    }
+
+    public long getNearLimitValues() {
+        return nearLimitValues.sum();
+    }
+
+    public long getOversizedValues() {
+        return oversizedValues.sum();
+    }
+
+    public void reset() {
+        valueSizes.reset();
+        valuesWritten.reset();
+        bytesWritten.reset();
+        valuesRead.reset();
+        bytesRead.reset();
+        keys.reset();
+        keyBytes.reset();
+        nearLimitValues.reset();
+        oversizedValues.reset();
+        maxKeyLength.set(0);
+    }
+}
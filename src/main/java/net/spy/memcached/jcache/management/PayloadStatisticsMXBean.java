@@ -0,0 +1,66 @@
+package net.spy.memcached.jcache.management;
+
+/**
+ * Sizes of the keys and of the values encoded by the transcoder of a cache, sizes are in bytes.
+ * <p/>
+ * Values are counted as sent to or received from memcached, after serialization and compression.
+ */
+public interface PayloadStatisticsMXBean {
+
+    /**
+     * @return number of values encoded for memcached
+     */
+    long getValuesWritten();
+
+    /**
+     * @return total size of the values encoded for memcached
+     */
+    long getBytesWritten();
+
+    /**
+     * @return number of values decoded from memcached
+     */
+    long getValuesRead();
+
+    /**
+     * @return total size of the values decoded from memcached
+     */
+    long getBytesRead();
+
+    float getMeanValueSize();
+
+    float getValueSizePercentile50();
+
+    float getValueSizePercentile90();
+
+    float getValueSizePercentile99();
+
+    /**
+     * @return size of the largest value written or read
+     */
+    long getMaxValueSize();
+
+    float getAverageKeyLength();
+
+    long getMaxKeyLength();
+
+    /**
+     * @return max size of an item accepted by the memcached servers
+     */
+    int getItemSizeLimit();
+
+    /**
+     * @return number of values written at 90% of the item size limit or above
+     */
+    long getNearLimitValues();
+
+    /**
+     * @return number of values written above the item size limit, which the servers reject
+     */
+    long getOversizedValues();
+
+    /**
+     * Clear the statistics.
+     */
+    void reset();
+}
@@ -18,7 +18,6 @@ package net.spy.memcached.jcache.management;
 
 import javax.cache.Cache;
 import javax.cache.configuration.CompleteConfiguration;
-import javax.cache.configuration.Configuration;
 import javax.cache.management.CacheMXBean;
 
 /**
@@ -47,11 +46,11 @@ public class RICacheMXBean<K, V> implements CacheMXBean {
     }
 
     public String getKeyType() {
-        return cache.getConfiguration(Configuration.class).getKeyType().getName();
+        return getConfiguration().getKeyType().getName();
     }
 
     public String getValueType() {
-        return cache.getConfiguration(Configuration.class).getValueType().getName();
+        return getConfiguration().getValueType().getName();
     }
 
     /**
@@ -59,7 +58,7 @@ public class RICacheMXBean<K, V> implements CacheMXBean {
      */
     @Override
     public boolean isReadThrough() {
-        return cache.getConfiguration(CompleteConfiguration.class).isReadThrough();
+        return getConfiguration().isReadThrough();
     }
 
     /**
@@ -67,7 +66,7 @@ public class RICacheMXBean<K, V> implements CacheMXBean {
      */
     @Override
     public boolean isWriteThrough() {
-        return cache.getConfiguration(CompleteConfiguration.class).isWriteThrough();
+        return getConfiguration().isWriteThrough();
     }
 
     /**
@@ -75,7 +74,7 @@ public class RICacheMXBean<K, V> implements CacheMXBean {
      */
     @Override
     public boolean isStoreByValue() {
-        return cache.getConfiguration(CompleteConfiguration.class).isStoreByValue();
+        return getConfiguration().isStoreByValue();
     }
 
     /**
@@ -83,7 +82,7 @@ public class RICacheMXBean<K, V> implements CacheMXBean {
      */
     @Override
     public boolean isStatisticsEnabled() {
-        return cache.getConfiguration(CompleteConfiguration.class).isStatisticsEnabled();
+        return getConfiguration().isStatisticsEnabled();
     }
 
     /**
@@ -91,6 +90,14 @@ public class RICacheMXBean<K, V> implements CacheMXBean {
      */
     @Override
     public boolean isManagementEnabled() {
-        return cache.getConfiguration(CompleteConfiguration.class).isManagementEnabled();
+        return getConfiguration().isManagementEnabled();
+    }
+
+    /**
+     * the class literal is raw, the configuration of the cache is typed as the cache itself
+     */
+    @SuppressWarnings("unchecked")
+    private CompleteConfiguration<K, V> getConfiguration() {
+        return cache.getConfiguration(CompleteConfiguration.class);
     }
 }
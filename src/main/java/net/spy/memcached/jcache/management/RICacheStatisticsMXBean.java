@@ -17,36 +17,59 @@
 
 package net.spy.memcached.jcache.management;
 
+import net.spy.memcached.jcache.ExpiryTimerWheel;
+import net.spy.memcached.jcache.InFlightLimiter;
 import net.spy.memcached.jcache.SpyCache;
+import net.spy.memcached.jcache.SpyMutableConfiguration;
+import net.spy.memcached.jcache.WriteBehindQueue;
+import net.spy.memcached.jcache.event.CacheEntryListenerExecutor;
 
 import javax.cache.Cache;
-import javax.cache.management.CacheStatisticsMXBean;
 import java.io.Serializable;
-import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
- * The reference implementation of {@link javax.cache.management.CacheStatisticsMXBean}.
+ * The reference implementation of {@link javax.cache.management.CacheStatisticsMXBean},
+ * extended with the counters of {@link SpyCacheStatisticsMXBean}.
  * 
  * @author Greg Luck
  */
-public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializable {
+public class RICacheStatisticsMXBean implements SpyCacheStatisticsMXBean, Serializable {
 
   private static final long serialVersionUID = -5589437411679003894L;
   private static final long NANOSECONDS_IN_A_MICROSECOND = 1000L;
+  private static final long NANOSECONDS_IN_A_MILLISECOND = 1000000L;
 
 
   private transient Cache<?, ?> cache;
 
-  private final AtomicLong cacheRemovals = new AtomicLong();
-  private final AtomicLong cacheExpiries = new AtomicLong();
-  private final AtomicLong cachePuts = new AtomicLong();
-  private final AtomicLong cacheHits = new AtomicLong();
-  private final AtomicLong cacheMisses = new AtomicLong();
-  private final AtomicLong cacheEvictions = new AtomicLong();
-  private final AtomicLong cachePutTimeTakenNanos = new AtomicLong();
-  private final AtomicLong cacheGetTimeTakenNanos = new AtomicLong();
-  private final AtomicLong cacheRemoveTimeTakenNanos = new AtomicLong();
+  private final StripedCounter cacheRemovals = new StripedCounter();
+  private final StripedCounter cacheExpiries = new StripedCounter();
+  private final StripedCounter cachePuts = new StripedCounter();
+  private final StripedCounter cacheHits = new StripedCounter();
+  private final StripedCounter cacheMisses = new StripedCounter();
+  private final StripedCounter cacheEvictions = new StripedCounter();
+  private final StripedCounter cachePutTimeTakenNanos = new StripedCounter();
+  private final StripedCounter cacheGetTimeTakenNanos = new StripedCounter();
+  private final StripedCounter cacheRemoveTimeTakenNanos = new StripedCounter();
+  private final StripedCounter cachePutTimeSamples = new StripedCounter();
+  private final StripedCounter cacheGetTimeSamples = new StripedCounter();
+  private final StripedCounter cacheRemoveTimeSamples = new StripedCounter();
+  private final StripedCounter cacheHedges = new StripedCounter();
+  private final StripedCounter cacheHedgeWins = new StripedCounter();
+  /**
+   * xorshift state of the calling thread, a random draw keeps the sample unbiased when the operations of
+   * several caches or nested operations interleave on a thread, which a counter shared by the thread does not
+   */
+  private static final ThreadLocal<long[]> TIMING_RANDOM = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[]{(System.nanoTime() ^ Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) | 1};
+    }
+  };
+  private volatile int timingSamplePeriod = 1;
+  private final LatencyHistogram[] latencyHistograms = new LatencyHistogram[CacheOperation.values().length];
+  private final PayloadStatistics payloadStatistics;
 
   /**
    * Constructs a cache statistics object
@@ -54,25 +77,102 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    * @param cache the associated cache
    */
   public RICacheStatisticsMXBean(Cache<?, ?> cache) {
+    this(cache, SpyMutableConfiguration.DEFAULT_ITEM_SIZE_LIMIT);
+  }
+
+  /**
+   * Constructs a cache statistics object
+   *
+   * @param cache         the associated cache
+   * @param itemSizeLimit the max size of an item accepted by the memcached servers
+   */
+  public RICacheStatisticsMXBean(Cache<?, ?> cache, int itemSizeLimit) {
     this.cache = cache;
+    this.payloadStatistics = new PayloadStatistics(itemSizeLimit);
+    for (CacheOperation operation : CacheOperation.values()) {
+      latencyHistograms[operation.ordinal()] = new LatencyHistogram(operation.getOperationName());
+    }
   }
 
   /**
    * {@inheritDoc}
    * <p/>
-   * Statistics will also automatically be cleared if internal counters overflow.
+   * Statistics will also automatically be cleared if internal counters overflow, which is checked on read.
    */
   @Override
   public void clear() {
-    cachePuts.set(0);
-    cacheMisses.set(0);
-    cacheRemovals.set(0);
-    cacheExpiries.set(0);
-    cacheHits.set(0);
-    cacheEvictions.set(0);
-    cacheGetTimeTakenNanos.set(0);
-    cachePutTimeTakenNanos.set(0);
-    cacheRemoveTimeTakenNanos.set(0);
+    cachePuts.reset();
+    cacheMisses.reset();
+    cacheRemovals.reset();
+    cacheExpiries.reset();
+    cacheHits.reset();
+    cacheEvictions.reset();
+    cacheGetTimeTakenNanos.reset();
+    cachePutTimeTakenNanos.reset();
+    cacheRemoveTimeTakenNanos.reset();
+    cacheGetTimeSamples.reset();
+    cachePutTimeSamples.reset();
+    cacheRemoveTimeSamples.reset();
+    cacheHedges.reset();
+    cacheHedgeWins.reset();
+    for (LatencyHistogram histogram : latencyHistograms) {
+      histogram.reset();
+    }
+    payloadStatistics.reset();
+  }
+
+  /**
+   * Times one operation in the specified number on average, drawn at random, the average times divide the
+   * time of the timed operations by their number, the latency histograms hold the timed operations only.
+   *
+   * @param timingSamplePeriod the period, 1 to time every operation
+   */
+  public void setTimingSamplePeriod(int timingSamplePeriod) {
+    this.timingSamplePeriod = Math.max(1, timingSamplePeriod);
+  }
+
+  /**
+   * Determines if the current operation of the calling thread should be timed.
+   *
+   * @return <code>true</code> if the operation should be timed
+   */
+  public boolean isTimingSampled() {
+    int period = timingSamplePeriod;
+    if (period == 1) {
+      return true;
+    }
+    long[] state = TIMING_RANDOM.get();
+    long x = state[0];
+    x ^= x << 13;
+    x ^= x >>> 7;
+    x ^= x << 17;
+    state[0] = x;
+    return (x >>> 1) % period == 0;
+  }
+
+  /**
+   * Records the latency of an operation in its histogram.
+   *
+   * @param operation the operation
+   * @param nanos     the latency in nanoseconds
+   */
+  public void recordLatency(CacheOperation operation, long nanos) {
+    latencyHistograms[operation.ordinal()].record(nanos);
+  }
+
+  /**
+   * @param operation the operation
+   * @return the latency histogram of the operation
+   */
+  public LatencyHistogram getLatencyHistogram(CacheOperation operation) {
+    return latencyHistograms[operation.ordinal()];
+  }
+
+  /**
+   * @return the sizes of the keys and values of the cache
+   */
+  public PayloadStatistics getPayloadStatistics() {
+    return payloadStatistics;
   }
 
   /**
@@ -80,7 +180,7 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    */
   @Override
   public long getCacheHits() {
-    return cacheHits.longValue();
+    return cacheHits.sum();
   }
 
   /**
@@ -102,7 +202,7 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    */
   @Override
   public long getCacheMisses() {
-    return cacheMisses.longValue();
+    return cacheMisses.sum();
   }
 
   /**
@@ -140,7 +240,7 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    */
   @Override
   public long getCachePuts() {
-    return cachePuts.longValue();
+    return cachePuts.sum();
   }
 
   /**
@@ -153,7 +253,7 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    */
   @Override
   public long getCacheRemovals() {
-    return cacheRemovals.longValue();
+    return cacheRemovals.sum();
   }
 
   /**
@@ -161,7 +261,7 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    */
   @Override
   public long getCacheEvictions() {
-    return cacheEvictions.longValue();
+    return cacheEvictions.sum();
   }
 
   /**
@@ -171,10 +271,17 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    */
   @Override
   public float getAverageGetTime() {
-    if (cacheGetTimeTakenNanos.longValue() == 0 || getCacheGets() == 0) {
+    long timeTaken = cacheGetTimeTakenNanos.sum();
+    if (timeTaken < 0) {
+      //counter full. Just reset.
+      clear();
+      return 0;
+    }
+    long samples = cacheGetTimeSamples.sum();
+    if (timeTaken == 0 || samples == 0) {
       return 0;
     }
-    return (cacheGetTimeTakenNanos.longValue() / getCacheGets()) / NANOSECONDS_IN_A_MICROSECOND;
+    return (timeTaken / samples) / NANOSECONDS_IN_A_MICROSECOND;
   }
 
   /**
@@ -184,10 +291,17 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    */
   @Override
   public float getAveragePutTime() {
-    if (cachePutTimeTakenNanos.longValue() == 0 || getCacheGets() == 0) {
+    long timeTaken = cachePutTimeTakenNanos.sum();
+    if (timeTaken < 0) {
+      //counter full. Just reset.
+      clear();
       return 0;
     }
-    return (cachePutTimeTakenNanos.longValue() / getCacheGets()) / NANOSECONDS_IN_A_MICROSECOND;
+    long samples = cachePutTimeSamples.sum();
+    if (timeTaken == 0 || samples == 0) {
+      return 0;
+    }
+    return (timeTaken / samples) / NANOSECONDS_IN_A_MICROSECOND;
   }
 
   /**
@@ -197,10 +311,196 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    */
   @Override
   public float getAverageRemoveTime() {
-    if (cacheRemoveTimeTakenNanos.longValue() == 0 || getCacheGets() == 0) {
+    long timeTaken = cacheRemoveTimeTakenNanos.sum();
+    if (timeTaken < 0) {
+      //counter full. Just reset.
+      clear();
+      return 0;
+    }
+    long samples = cacheRemoveTimeSamples.sum();
+    if (timeTaken == 0 || samples == 0) {
       return 0;
     }
-    return (cacheRemoveTimeTakenNanos.longValue() / getCacheGets()) / NANOSECONDS_IN_A_MICROSECOND;
+    return (timeTaken / samples) / NANOSECONDS_IN_A_MICROSECOND;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getCacheHedges() {
+    return cacheHedges.sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getCacheHedgeWins() {
+    return cacheHedgeWins.sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public float getCacheHedgePercentage() {
+    long hedges = getCacheHedges();
+    if (hedges == 0) {
+      return 0;
+    }
+    return (float) hedges / getCacheGets() * 100.0f;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getInFlightOperations() {
+    InFlightLimiter limiter = getInFlightLimiter();
+    return limiter == null ? 0 : limiter.getInFlight();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getInFlightRejections() {
+    InFlightLimiter limiter = getInFlightLimiter();
+    return limiter == null ? 0 : limiter.getRejections();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getInFlightDrops() {
+    InFlightLimiter limiter = getInFlightLimiter();
+    return limiter == null ? 0 : limiter.getDrops();
+  }
+
+  private InFlightLimiter getInFlightLimiter() {
+    return cache instanceof SpyCache ? ((SpyCache<?, ?>) cache).getInFlightLimiter() : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getWriteBehindQueueSize() {
+    WriteBehindQueue<?, ?> queue = getWriteBehindQueue();
+    return queue == null ? 0 : queue.getQueueSize();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getWriteBehindLagMillis() {
+    WriteBehindQueue<?, ?> queue = getWriteBehindQueue();
+    return queue == null ? 0 : queue.getLagMillis();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getWriteBehindCoalesced() {
+    WriteBehindQueue<?, ?> queue = getWriteBehindQueue();
+    return queue == null ? 0 : queue.getCoalesced();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getWriteBehindRetries() {
+    WriteBehindQueue<?, ?> queue = getWriteBehindQueue();
+    return queue == null ? 0 : queue.getRetries();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getWriteBehindFailures() {
+    WriteBehindQueue<?, ?> queue = getWriteBehindQueue();
+    return queue == null ? 0 : queue.getFailures();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getWriteBehindRejections() {
+    WriteBehindQueue<?, ?> queue = getWriteBehindQueue();
+    return queue == null ? 0 : queue.getRejections();
+  }
+
+  private WriteBehindQueue<?, ?> getWriteBehindQueue() {
+    return cache instanceof SpyCache ? ((SpyCache<?, ?>) cache).getWriteBehindQueue() : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getListenerPendingEvents() {
+    CacheEntryListenerExecutor<?, ?> executor = getListenerExecutor();
+    return executor == null ? 0 : executor.getPending();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getListenerDroppedEvents() {
+    CacheEntryListenerExecutor<?, ?> executor = getListenerExecutor();
+    return executor == null ? 0 : executor.getDropped();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public float getAverageListenerDispatchLag() {
+    CacheEntryListenerExecutor<?, ?> executor = getListenerExecutor();
+    return executor == null ? 0 : executor.getAverageLagNanos() / (float) NANOSECONDS_IN_A_MILLISECOND;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public float getMaxListenerDispatchLag() {
+    CacheEntryListenerExecutor<?, ?> executor = getListenerExecutor();
+    return executor == null ? 0 : executor.getMaxLagNanos() / (float) NANOSECONDS_IN_A_MILLISECOND;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getExpiryTrackedKeys() {
+    ExpiryTimerWheel<?> timerWheel = getExpiryTimerWheel();
+    return timerWheel == null ? 0 : timerWheel.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getExpiryUntrackedKeys() {
+    ExpiryTimerWheel<?> timerWheel = getExpiryTimerWheel();
+    return timerWheel == null ? 0 : timerWheel.getUntracked();
+  }
+
+  private ExpiryTimerWheel<?> getExpiryTimerWheel() {
+    return cache instanceof SpyCache ? ((SpyCache<?, ?>) cache).getExpiryTimerWheel() : null;
+  }
+
+  private CacheEntryListenerExecutor<?, ?> getListenerExecutor() {
+    return cache instanceof SpyCache ? ((SpyCache<?, ?>) cache).getListenerExecutor() : null;
   }
 
   //package local incrementers
@@ -211,7 +511,7 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    * @param number the number to increase the counter by
    */
   public void increaseCacheRemovals(long number) {
-    cacheRemovals.getAndAdd(number);
+    cacheRemovals.add(number);
   }
 
   /**
@@ -220,7 +520,7 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    * @param number the number to increase the counter by
    */
   public void increaseCacheExpiries(long number) {
-    cacheExpiries.getAndAdd(number);
+    cacheExpiries.add(number);
   }
 
   /**
@@ -229,7 +529,7 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    * @param number the number to increase the counter by
    */
   public void increaseCachePuts(long number) {
-    cachePuts.getAndAdd(number);
+    cachePuts.add(number);
   }
 
   /**
@@ -238,7 +538,7 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    * @param number the number to increase the counter by
    */
   public void increaseCacheHits(long number) {
-    cacheHits.getAndAdd(number);
+    cacheHits.add(number);
   }
 
   /**
@@ -247,7 +547,7 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    * @param number the number to increase the counter by
    */
   public void increaseCacheMisses(long number) {
-    cacheMisses.getAndAdd(number);
+    cacheMisses.add(number);
   }
 
   /**
@@ -256,7 +556,25 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    * @param number the number to increase the counter by
    */
   public void increaseCacheEvictions(long number) {
-    cacheEvictions.getAndAdd(number);
+    cacheEvictions.add(number);
+  }
+
+  /**
+   * Increases the counter by the number specified.
+   *
+   * @param number the number to increase the counter by
+   */
+  public void increaseCacheHedges(long number) {
+    cacheHedges.add(number);
+  }
+
+  /**
+   * Increases the counter by the number specified.
+   *
+   * @param number the number to increase the counter by
+   */
+  public void increaseCacheHedgeWins(long number) {
+    cacheHedgeWins.add(number);
   }
 
   /**
@@ -265,13 +583,8 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    * @param duration the time taken in nanoseconds
    */
   public void addGetTimeNano(long duration) {
-    if (cacheGetTimeTakenNanos.get() <= Long.MAX_VALUE - duration) {
-      cacheGetTimeTakenNanos.addAndGet(duration);
-    } else {
-      //counter full. Just reset.
-      clear();
-      cacheGetTimeTakenNanos.set(duration);
-    }
+    cacheGetTimeTakenNanos.add(duration);
+    cacheGetTimeSamples.add(1);
   }
 
 
@@ -281,13 +594,8 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    * @param duration the time taken in nanoseconds
    */
   public void addPutTimeNano(long duration) {
-    if (cachePutTimeTakenNanos.get() <= Long.MAX_VALUE - duration) {
-      cachePutTimeTakenNanos.addAndGet(duration);
-    } else {
-      //counter full. Just reset.
-      clear();
-      cachePutTimeTakenNanos.set(duration);
-    }
+    cachePutTimeTakenNanos.add(duration);
+    cachePutTimeSamples.add(1);
   }
 
   /**
@@ -296,13 +604,8 @@ public class RICacheStatisticsMXBean implements CacheStatisticsMXBean, Serializa
    * @param duration the time taken in nanoseconds
    */
   public void addRemoveTimeNano(long duration) {
-    if (cacheRemoveTimeTakenNanos.get() <= Long.MAX_VALUE - duration) {
-      cacheRemoveTimeTakenNanos.addAndGet(duration);
-    } else {
-      //counter full. Just reset.
-      clear();
-      cacheRemoveTimeTakenNanos.set(duration);
-    }
+    cacheRemoveTimeTakenNanos.add(duration);
+    cacheRemoveTimeSamples.add(1);
   }
 
 }
@@ -0,0 +1,76 @@
+package net.spy.memcached.jcache.management;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * operation of a cache which lasted longer than the slow operation threshold, times are in microseconds
+ */
+public class SlowOperation {
+    private final long timestamp;
+    private final String operation;
+    private final String key;
+    private final String node;
+    private final int valueSize;
+    private final long latency;
+    private final long queueWait;
+
+    @ConstructorProperties({"timestamp", "operation", "key", "node", "valueSize", "latency", "queueWait"})
+    public SlowOperation(long timestamp, String operation, String key, String node, int valueSize, long latency, long queueWait) {
+        this.timestamp = timestamp;
+        this.operation = operation;
+        this.key = key;
+        this.node = node;
+        this.valueSize = valueSize;
+        this.latency = latency;
+        this.queueWait = queueWait;
+    }
+
+    /**
+     * @return end of the operation in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return memcached key, or the hex hash code of the key if keys are hashed
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return address of the node owning the key
+     */
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * @return encoded size of the value, 0 if there is no value
+     */
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return time blocked on the operations in flight limit before the operation was sent
+     */
+    public long getQueueWait() {
+        return queueWait;
+    }
+
+    @Override
+    public String toString() {
+        return operation + " " + key + " on " + node + " took " + latency + "us (queue wait " + queueWait
+                + "us, value " + valueSize + " bytes)";
+    }
+}
@@ -0,0 +1,29 @@
+package net.spy.memcached.jcache.management;
+
+import java.util.List;
+
+/**
+ * last slow operations of a cache
+ */
+public interface SlowOperationLogMXBean {
+
+    /**
+     * @return the slow operations still in the log, newest first
+     */
+    List<SlowOperation> getSlowOperations();
+
+    /**
+     * @return number of slow operations since the log was created or cleared
+     */
+    long getSlowOperationCount();
+
+    /**
+     * @return threshold of a slow operation in milliseconds
+     */
+    long getThresholdMillis();
+
+    /**
+     * Clear the log.
+     */
+    void clear();
+}
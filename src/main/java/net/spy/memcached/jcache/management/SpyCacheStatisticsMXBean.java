@@ -0,0 +1,138 @@
+package net.spy.memcached.jcache.management;
+
+import javax.cache.management.CacheStatisticsMXBean;
+
+/**
+ * Cache statistics with the spymemcached specific counters on top of {@link CacheStatisticsMXBean}.
+ *
+ * @author linux_china
+ */
+public interface SpyCacheStatisticsMXBean extends CacheStatisticsMXBean {
+
+    /**
+     * The number of gets which exceeded the latency budget and were hedged.
+     *
+     * @return the number of hedged gets
+     */
+    long getCacheHedges();
+
+    /**
+     * The number of hedged gets answered by the hedge before memcached.
+     *
+     * @return the number of hedge wins
+     */
+    long getCacheHedgeWins();
+
+    /**
+     * Returns hedged gets as a percentage of total gets.
+     *
+     * @return the percentage of hedged gets
+     */
+    float getCacheHedgePercentage();
+
+    /**
+     * The number of asynchronous memcached operations of the cache in flight.
+     *
+     * @return the operations in flight, 0 if they are unbounded
+     */
+    int getInFlightOperations();
+
+    /**
+     * The number of operations rejected because the maximal operations were in flight.
+     *
+     * @return the number of rejected operations
+     */
+    long getInFlightRejections();
+
+    /**
+     * The number of oldest operations cancelled to make room for new ones.
+     *
+     * @return the number of dropped operations
+     */
+    long getInFlightDrops();
+
+    /**
+     * The number of writes and deletes waiting in the write-behind queue.
+     *
+     * @return the queue size, 0 if write behind is not enabled
+     */
+    int getWriteBehindQueueSize();
+
+    /**
+     * The age of the oldest write waiting in the write-behind queue.
+     *
+     * @return the lag in milliseconds
+     */
+    long getWriteBehindLagMillis();
+
+    /**
+     * The number of queued updates merged into a pending write of the same key.
+     *
+     * @return the number of coalesced writes
+     */
+    long getWriteBehindCoalesced();
+
+    /**
+     * The number of failed writes and deletes scheduled for a retry.
+     *
+     * @return the number of retries
+     */
+    long getWriteBehindRetries();
+
+    /**
+     * The number of writes and deletes dropped after the last retry failed.
+     *
+     * @return the number of failures
+     */
+    long getWriteBehindFailures();
+
+    /**
+     * The number of writes and deletes rejected because the queue stayed full.
+     *
+     * @return the number of rejections
+     */
+    long getWriteBehindRejections();
+
+    /**
+     * The number of events waiting for the asynchronous listeners.
+     *
+     * @return the pending deliveries
+     */
+    int getListenerPendingEvents();
+
+    /**
+     * The number of deliveries to asynchronous listeners dropped because the queue of the listener was full.
+     *
+     * @return the dropped deliveries
+     */
+    long getListenerDroppedEvents();
+
+    /**
+     * The mean time between raising an event and delivering it to an asynchronous listener.
+     *
+     * @return the time in milliseconds
+     */
+    float getAverageListenerDispatchLag();
+
+    /**
+     * The maximal time between raising an event and delivering it to an asynchronous listener.
+     *
+     * @return the time in milliseconds
+     */
+    float getMaxListenerDispatchLag();
+
+    /**
+     * The number of keys whose expiry is tracked to raise expired events.
+     *
+     * @return the tracked keys
+     */
+    int getExpiryTrackedKeys();
+
+    /**
+     * The number of writes whose expiry was not tracked because the tracking cap was reached or the expiry is
+     * more than 194 days ahead.
+     *
+     * @return the untracked writes
+     */
+    long getExpiryUntrackedKeys();
+}
@@ -0,0 +1,74 @@
+package net.spy.memcached.jcache.management;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * counter striped over cells padded against false sharing, summed on read, for statistics updated by many threads.
+ * <p/>
+ * A thread adds to the cell of its probe and moves to another cell when it meets contention, like the
+ * LongAdder of Java 8 which is not available on the Java 6 target of this library. The cells live in one
+ * array, 16 longs apart so that two cells never share a cache line or an adjacent line pair.
+ */
+public class StripedCounter implements Serializable {
+    private static final long serialVersionUID = -2409516637226924413L;
+    private static final int PADDING = 16;
+    private static final int STRIPES = stripes();
+    private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            long id = Thread.currentThread().getId();
+            int probe = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+            return new int[]{probe == 0 ? 1 : probe};
+        }
+    };
+    private final AtomicLongArray cells = new AtomicLongArray((STRIPES + 1) * PADDING);
+
+    private static int stripes() {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2 && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /**
+     * add to the counter
+     *
+     * @param delta delta
+     */
+    public void add(long delta) {
+        int[] probe = PROBE.get();
+        int index = ((probe[0] & (STRIPES - 1)) + 1) * PADDING;
+        long current = cells.get(index);
+        if (!cells.compareAndSet(index, current, current + delta)) {
+            //contended, move this thread to another cell for the next updates
+            int next = probe[0];
+            next ^= next << 13;
+            next ^= next >>> 17;
+            next ^= next << 5;
+            probe[0] = next;
+            cells.addAndGet(index, delta);
+        }
+    }
+
+    /**
+     * @return sum of the cells, not an atomic snapshot when updated concurrently
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 1; i <= STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * reset the cells to zero, updates made concurrently may be lost
+     */
+    public void reset() {
+        for (int i = 1; i <= STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package net.spy.memcached.jcache.metrics;
+
+import net.spy.memcached.jcache.management.LatencySnapshot;
+
+import java.util.Map;
+
+/**
+ * metrics of one cache: the counters and gauges of its statistics MXBeans by attribute name, such as
+ * CacheHits or BytesWritten, and the latency distribution of each operation since the statistics were cleared
+ *
+ * @author linux_china
+ */
+public class CacheMetrics {
+    private final String cacheName;
+    private final Map<String, Number> counters;
+    private final Map<String, LatencySnapshot> latencies;
+
+    public CacheMetrics(String cacheName, Map<String, Number> counters, Map<String, LatencySnapshot> latencies) {
+        this.cacheName = cacheName;
+        this.counters = counters;
+        this.latencies = latencies;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * @return counters and gauges by attribute name
+     */
+    public Map<String, Number> getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return latency distributions by operation name, times are in microseconds
+     */
+    public Map<String, LatencySnapshot> getLatencies() {
+        return latencies;
+    }
+}
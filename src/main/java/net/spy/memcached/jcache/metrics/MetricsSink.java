@@ -0,0 +1,25 @@
+package net.spy.memcached.jcache.metrics;
+
+/**
+ * receiver of the periodic snapshots of the metrics of a cache manager, to export them to a telemetry system.
+ * <p/>
+ * Sinks are configured with the metricsSinks parameter of the cache manager, a comma separated list of class
+ * names with a public no-arg constructor, or added with SpyCacheManager.addMetricsSink. Snapshots are published
+ * every metricsIntervalMillis from the scheduler of the cache manager, a sink should not block.
+ *
+ * @author linux_china
+ */
+public interface MetricsSink {
+
+    /**
+     * publish a snapshot
+     *
+     * @param snapshot metrics of all the caches with statistics enabled
+     */
+    void publish(MetricsSnapshot snapshot);
+
+    /**
+     * release the resources of the sink, called when the cache manager is closed
+     */
+    void close();
+}
@@ -0,0 +1,36 @@
+package net.spy.memcached.jcache.metrics;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * metrics of the caches of a cache manager at a point in time
+ *
+ * @author linux_china
+ */
+public class MetricsSnapshot {
+    private final URI cacheManagerUri;
+    private final long timestamp;
+    private final List<CacheMetrics> caches;
+
+    public MetricsSnapshot(URI cacheManagerUri, long timestamp, List<CacheMetrics> caches) {
+        this.cacheManagerUri = cacheManagerUri;
+        this.timestamp = timestamp;
+        this.caches = caches;
+    }
+
+    public URI getCacheManagerUri() {
+        return cacheManagerUri;
+    }
+
+    /**
+     * @return time of the snapshot in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public List<CacheMetrics> getCaches() {
+        return caches;
+    }
+}
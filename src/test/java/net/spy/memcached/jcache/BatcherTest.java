@@ -0,0 +1,115 @@
+package net.spy.memcached.jcache;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * batcher test
+ */
+public class BatcherTest {
+
+    @Test
+    public void testLeaderExecutesOnlyItsWindow() throws Exception {
+        final Map<String, Thread> executors = new ConcurrentHashMap<String, Thread>();
+        final Batcher<String, String> batcher = new Batcher<String, String>(64, 100000, null) {
+            @Override
+            protected void execute(List<BatchedFuture<String, String>> batch) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (BatchedFuture<String, String> future : batch) {
+                    executors.put(future.getKey(), Thread.currentThread());
+                    future.complete(future.getKey());
+                }
+            }
+        };
+        final AtomicReference<Future<String>> second = new AtomicReference<Future<String>>();
+        final Thread follower = new Thread(new Runnable() {
+            public void run() {
+                second.set(batcher.submit("second"));
+            }
+        });
+        //the follower submits while the leader executes the batch of its 100 ms window, for 50 ms
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(120);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                follower.start();
+            }
+        }).start();
+        Thread leader = Thread.currentThread();
+        assertEquals("first", batcher.submit("first").get());
+        follower.join(5000);
+        assertEquals("second", second.get().get(5, TimeUnit.SECONDS));
+        assertEquals(leader, executors.get("first"));
+        //the second key is led by its own submitter, not by the leader of the first window
+        assertEquals(follower, executors.get("second"));
+    }
+
+    @Test
+    public void testFutureTerminalState() throws Exception {
+        BatchedFuture<String, String> cancelled = new BatchedFuture<String, String>("cancelled");
+        assertTrue(cancelled.cancel(false));
+        assertFalse(cancelled.complete("value"));
+        assertTrue(cancelled.isCancelled());
+        try {
+            cancelled.get();
+            fail("get of a cancelled future");
+        } catch (CancellationException expected) {
+        }
+        BatchedFuture<String, String> completed = new BatchedFuture<String, String>("completed");
+        assertTrue(completed.complete("value"));
+        assertFalse(completed.cancel(false));
+        assertFalse(completed.fail(new IllegalStateException()));
+        assertFalse(completed.isCancelled());
+        assertEquals("value", completed.get());
+    }
+
+    @Test
+    public void testCancelRacingComplete() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            final BatchedFuture<String, String> future = new BatchedFuture<String, String>("race");
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicBoolean completed = new AtomicBoolean();
+            Thread completer = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    completed.set(future.complete("value"));
+                }
+            });
+            completer.start();
+            start.countDown();
+            boolean cancelled = future.cancel(false);
+            completer.join();
+            //exactly one of them wins, and get reports the winner
+            assertTrue(cancelled != completed.get());
+            assertEquals(cancelled, future.isCancelled());
+            if (!cancelled) {
+                assertEquals("value", future.get());
+            }
+        }
+    }
+}
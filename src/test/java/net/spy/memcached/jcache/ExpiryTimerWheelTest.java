@@ -0,0 +1,61 @@
+package net.spy.memcached.jcache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * expiry timer wheel test
+ */
+public class ExpiryTimerWheelTest {
+
+    @Test
+    public void testExpiresOnTime() {
+        long now = 1000000;
+        ExpiryTimerWheel<Long> wheel = new ExpiryTimerWheel<Long>(100, 1.0, now);
+        List<Long> delays = Arrays.asList(1L, 63L, 64L, 65L, 4095L, 4097L, 300000L);
+        for (Long delay : delays) {
+            wheel.schedule(delay, now + delay);
+        }
+        for (long tick = now + 1; tick <= now + 300000; tick++) {
+            List<Long> expired = wheel.advance(tick);
+            if (delays.contains(tick - now)) {
+                assertEquals(Collections.singletonList(tick - now), expired);
+            } else {
+                assertEquals(Collections.<Long>emptyList(), expired);
+            }
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRescheduleAndCancel() {
+        ExpiryTimerWheel<String> wheel = new ExpiryTimerWheel<String>(1, 1.0, 0);
+        wheel.schedule("a", 10);
+        wheel.schedule("a", 100);
+        assertFalse(wheel.schedule("b", 10));
+        assertEquals(1, wheel.getUntracked());
+        assertEquals(Collections.<String>emptyList(), wheel.advance(50));
+        assertEquals(Collections.singletonList("a"), wheel.advance(100));
+        wheel.schedule("b", 110);
+        wheel.cancel("b");
+        assertEquals(Collections.<String>emptyList(), wheel.advance(200));
+    }
+
+    @Test
+    public void testBeyondRange() {
+        ExpiryTimerWheel<String> wheel = new ExpiryTimerWheel<String>(10, 1.0, 0);
+        wheel.schedule("a", 10);
+        //200 days, beyond the coarsest wheel: untracked instead of expired early
+        assertFalse(wheel.schedule("a", 200L * 24 * 3600));
+        assertFalse(wheel.schedule("b", 200L * 24 * 3600));
+        assertEquals(2, wheel.getUntracked());
+        assertEquals(0, wheel.size());
+        assertEquals(Collections.<String>emptyList(), wheel.advance(100000));
+    }
+}
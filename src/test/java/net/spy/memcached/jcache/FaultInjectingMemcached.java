@@ -0,0 +1,501 @@
+package net.spy.memcached.jcache;
+
+import com.thimbleware.jmemcached.CacheImpl;
+import com.thimbleware.jmemcached.Key;
+import com.thimbleware.jmemcached.LocalCacheElement;
+import com.thimbleware.jmemcached.MemCacheDaemon;
+import com.thimbleware.jmemcached.storage.CacheStorage;
+import com.thimbleware.jmemcached.storage.hash.ConcurrentLinkedHashMap;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * one memcached node for tests: a jmemcached daemon behind a TCP proxy injecting faults in the text protocol.
+ * <p/>
+ * The faults are scripted at any time from the test: response latency with jitter, dropped packets held
+ * for a retransmission timeout as TCP would, stalls holding every response, disconnects and refused
+ * connections, and storage commands above an item size answered with the SERVER_ERROR of memcached.
+ * The proxy also answers touch, which jmemcached does not know, by storing the item again with the new expiry.
+ * Start one instance per node to script the nodes independently.
+ *
+ * @author linux_china
+ */
+public class FaultInjectingMemcached {
+    private static final byte[] TOO_LARGE = "SERVER_ERROR object too large for cache\r\n".getBytes();
+    private static final byte[] VERSION = "version\r\n".getBytes();
+    private static final byte[] TOUCHED = "TOUCHED\r\n".getBytes();
+    private static final byte[] NOT_FOUND = "NOT_FOUND\r\n".getBytes();
+    /**
+     * max relative expiry of memcached, larger expiries are unix times
+     */
+    private static final int MAX_RELATIVE_EXPIRY = 60 * 60 * 24 * 30;
+    /**
+     * reply keeping the response of a version command of the client
+     */
+    private static final Reply KEEP = new Reply() {
+        public byte[] reply() {
+            return null;
+        }
+    };
+    private static final Reply TOO_LARGE_REPLY = new Reply() {
+        public byte[] reply() {
+            return TOO_LARGE;
+        }
+    };
+    private final int port;
+    private final MemCacheDaemon<LocalCacheElement> daemon = new MemCacheDaemon<LocalCacheElement>();
+    private final CopyOnWriteArrayList<Connection> connections = new CopyOnWriteArrayList<Connection>();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong droppedPackets = new AtomicLong();
+    private final AtomicLong touches = new AtomicLong();
+    private int backendPort;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double dropRate;
+    private volatile long retransmitMillis = 200;
+    private volatile boolean stalled;
+    private volatile boolean refuseConnections;
+    private volatile int maxItemSize;
+
+    /**
+     * @param port port the clients connect to
+     */
+    public FaultInjectingMemcached(int port) {
+        this.port = port;
+    }
+
+    /**
+     * start the daemon on a free port and the proxy on the port of the node
+     *
+     * @throws IOException if a port can not be bound
+     */
+    public void start() throws IOException {
+        ServerSocket probe = new ServerSocket(0);
+        backendPort = probe.getLocalPort();
+        probe.close();
+        CacheStorage<Key, LocalCacheElement> storage = ConcurrentLinkedHashMap.create(ConcurrentLinkedHashMap.EvictionPolicy.FIFO, 10000, 10000000);
+        daemon.setCache(new CacheImpl(storage));
+        daemon.setAddr(new InetSocketAddress("localhost", backendPort));
+        daemon.start();
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress("localhost", port));
+        running = true;
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "fault-memcached-" + port);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ignore) {
+        }
+        disconnect();
+        daemon.stop();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket client = serverSocket.accept();
+                if (refuseConnections) {
+                    client.close();
+                    continue;
+                }
+                Connection connection = new Connection(client, new Socket("localhost", backendPort));
+                connections.add(connection);
+                connection.start();
+            } catch (IOException e) {
+                //closed by stop, or the daemon refused the connection
+            }
+        }
+    }
+
+    /**
+     * delay every response
+     *
+     * @param latencyMillis latency added to every response
+     * @param jitterMillis  max random latency added on top
+     */
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * drop packets of responses, a dropped packet is delivered after a retransmission timeout like TCP does
+     *
+     * @param dropRate         probability that a response is dropped, in [0, 1]
+     * @param retransmitMillis retransmission timeout
+     */
+    public void setDropRate(double dropRate, long retransmitMillis) {
+        this.dropRate = dropRate;
+        this.retransmitMillis = retransmitMillis;
+    }
+
+    /**
+     * hold every response while the node is stalled, the connections stay open
+     *
+     * @param stalled stalled
+     */
+    public void setStalled(boolean stalled) {
+        this.stalled = stalled;
+    }
+
+    /**
+     * close the new connections right after accepting them, the node is down
+     *
+     * @param refuseConnections refuse connections
+     */
+    public void setRefuseConnections(boolean refuseConnections) {
+        this.refuseConnections = refuseConnections;
+    }
+
+    /**
+     * answer the storage commands of larger items with SERVER_ERROR object too large for cache
+     *
+     * @param maxItemSize max size of an item in bytes, 0 for no limit
+     */
+    public void setMaxItemSize(int maxItemSize) {
+        this.maxItemSize = maxItemSize;
+    }
+
+    /**
+     * close the open connections, the clients reconnect
+     */
+    public void disconnect() {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * clear all the faults
+     */
+    public void reset() {
+        setLatency(0, 0);
+        setDropRate(0, 200);
+        setStalled(false);
+        setRefuseConnections(false);
+        setMaxItemSize(0);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return number of SERVER_ERROR responses injected
+     */
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * @return number of responses dropped and retransmitted
+     */
+    public long getDroppedPackets() {
+        return droppedPackets.get();
+    }
+
+    /**
+     * @return number of touch commands answered
+     */
+    public long getTouches() {
+        return touches.get();
+    }
+
+    /**
+     * @return number of open connections
+     */
+    public int getConnections() {
+        return connections.size();
+    }
+
+    /**
+     * store the item of a key again with a new expiry
+     *
+     * @param key     key
+     * @param exptime memcached expiry of the touch command
+     * @return response of the touch command
+     */
+    private byte[] touch(String key, int exptime) {
+        touches.incrementAndGet();
+        Key cacheKey = new Key(ChannelBuffers.wrappedBuffer(key.getBytes()));
+        LocalCacheElement element = daemon.getCache().get(cacheKey)[0];
+        if (element == null) {
+            return NOT_FOUND;
+        }
+        int expire = exptime == 0 || exptime > MAX_RELATIVE_EXPIRY ? exptime : LocalCacheElement.Now() + exptime;
+        LocalCacheElement touched = new LocalCacheElement(cacheKey, element.getFlags(), expire, 0);
+        touched.setData(element.getData());
+        daemon.getCache().set(touched);
+        return TOUCHED;
+    }
+
+    /**
+     * response replacing the VERSION response of a version command sent to the daemon in place of a command
+     */
+    private interface Reply {
+        /**
+         * @return response to deliver, null to keep the VERSION response
+         */
+        byte[] reply();
+    }
+
+    /**
+     * a client connection proxied to the daemon: the requests are parsed to replace the oversized storage
+     * commands and the touch commands by a version command, whose response is replaced by the error or by the
+     * outcome of the touch so that responses stay in order and a touch sees the commands sent before it, the
+     * responses are parsed and queued to be delivered after the injected delays
+     */
+    private class Connection {
+        private final Socket client;
+        private final Socket backend;
+        /**
+         * one entry per version command sent to the daemon, the reply of the command it stands for
+         */
+        private final ConcurrentLinkedQueue<Reply> versions = new ConcurrentLinkedQueue<Reply>();
+        private final BlockingQueue<Response> responses = new LinkedBlockingQueue<Response>();
+        private final Random random = new Random();
+        private volatile boolean closed;
+
+        private Connection(Socket client, Socket backend) throws IOException {
+            this.client = client;
+            this.backend = backend;
+            client.setTcpNoDelay(true);
+            backend.setTcpNoDelay(true);
+        }
+
+        private void start() {
+            thread("requests", new Runnable() {
+                public void run() {
+                    forwardRequests();
+                }
+            });
+            thread("responses", new Runnable() {
+                public void run() {
+                    readResponses();
+                }
+            });
+            thread("delivery", new Runnable() {
+                public void run() {
+                    deliverResponses();
+                }
+            });
+        }
+
+        private void thread(String name, Runnable runnable) {
+            Thread thread = new Thread(runnable, "fault-memcached-" + port + "-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void forwardRequests() {
+            try {
+                InputStream in = new BufferedInputStream(client.getInputStream());
+                OutputStream out = backend.getOutputStream();
+                byte[] line;
+                while ((line = readLine(in)) != null) {
+                    String[] words = new String(line, "ISO-8859-1").trim().split(" ");
+                    int size = dataSize(words);
+                    if (words[0].equals("touch") && words.length >= 3) {
+                        final String key = words[1];
+                        final int exptime = Integer.parseInt(words[2]);
+                        Reply touch = new Reply() {
+                            public byte[] reply() {
+                                return touch(key, exptime);
+                            }
+                        };
+                        if (words[words.length - 1].equals("noreply")) {
+                            touch.reply();
+                        } else {
+                            versions.offer(touch);
+                            out.write(VERSION);
+                        }
+                    } else if (size < 0) {
+                        if (words[0].equals("version")) {
+                            versions.offer(KEEP);
+                        }
+                        out.write(line);
+                    } else {
+                        byte[] data = readFully(in, size + 2);
+                        if (maxItemSize > 0 && size > maxItemSize) {
+                            if (!words[words.length - 1].equals("noreply")) {
+                                versions.offer(TOO_LARGE_REPLY);
+                                out.write(VERSION);
+                            }
+                        } else {
+                            out.write(line);
+                            out.write(data);
+                        }
+                    }
+                    if (in.available() == 0) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException ignore) {
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * @param words words of a command line
+         * @return size of the data block of a storage command, -1 for the other commands
+         */
+        private int dataSize(String[] words) {
+            String command = words[0];
+            if ((command.equals("set") || command.equals("add") || command.equals("replace") || command.equals("append")
+                    || command.equals("prepend") || command.equals("cas")) && words.length >= 5) {
+                return Integer.parseInt(words[4]);
+            }
+            return -1;
+        }
+
+        private void readResponses() {
+            try {
+                InputStream in = new BufferedInputStream(backend.getInputStream());
+                byte[] line;
+                while ((line = readLine(in)) != null) {
+                    long arrival = System.nanoTime();
+                    String text = new String(line, "ISO-8859-1");
+                    byte[] bytes = line;
+                    if (text.startsWith("VALUE ")) {
+                        String[] words = text.trim().split(" ");
+                        byte[] data = readFully(in, Integer.parseInt(words[3]) + 2);
+                        bytes = new byte[line.length + data.length];
+                        System.arraycopy(line, 0, bytes, 0, line.length);
+                        System.arraycopy(data, 0, bytes, line.length, data.length);
+                    } else if (text.startsWith("VERSION ")) {
+                        Reply reply = versions.poll();
+                        byte[] replaced = reply == null ? null : reply.reply();
+                        if (replaced == TOO_LARGE) {
+                            injectedErrors.incrementAndGet();
+                        }
+                        if (replaced != null) {
+                            bytes = replaced;
+                        }
+                    }
+                    responses.put(new Response(bytes, arrival));
+                }
+            } catch (IOException ignore) {
+            } catch (InterruptedException ignore) {
+            } finally {
+                close();
+            }
+        }
+
+        private void deliverResponses() {
+            try {
+                OutputStream out = client.getOutputStream();
+                while (!closed) {
+                    Response response = responses.poll(100, TimeUnit.MILLISECONDS);
+                    if (response == null) {
+                        continue;
+                    }
+                    long delay = latencyMillis;
+                    if (jitterMillis > 0) {
+                        delay += (long) (random.nextDouble() * jitterMillis);
+                    }
+                    if (dropRate > 0 && random.nextDouble() < dropRate) {
+                        droppedPackets.incrementAndGet();
+                        delay += retransmitMillis;
+                    }
+                    long due = response.arrival + TimeUnit.MILLISECONDS.toNanos(delay);
+                    long wait = due - System.nanoTime();
+                    while (!closed && (stalled || wait > 0)) {
+                        TimeUnit.NANOSECONDS.sleep(stalled ? TimeUnit.MILLISECONDS.toNanos(10) : wait);
+                        wait = due - System.nanoTime();
+                    }
+                    out.write(response.bytes);
+                    if (responses.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException ignore) {
+            } catch (InterruptedException ignore) {
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            if (!closed) {
+                closed = true;
+                connections.remove(this);
+                try {
+                    client.close();
+                } catch (IOException ignore) {
+                }
+                try {
+                    backend.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private static class Response {
+        private final byte[] bytes;
+        private final long arrival;
+
+        private Response(byte[] bytes, long arrival) {
+            this.bytes = bytes;
+            this.arrival = arrival;
+        }
+    }
+
+    /**
+     * @param in input
+     * @return the next line with its terminator, null at the end of the stream
+     * @throws IOException if the stream fails
+     */
+    private static byte[] readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) >= 0) {
+            line.write(b);
+            if (b == '\n') {
+                return line.toByteArray();
+            }
+        }
+        return null;
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(bytes, offset, length - offset);
+            if (read < 0) {
+                throw new IOException("end of stream in a data block");
+            }
+            offset += read;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,289 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.jcache.spi.SpyCachingProvider;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.CacheManager;
+import javax.cache.configuration.Factory;
+import javax.cache.expiry.AccessedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import javax.cache.integration.CacheLoader;
+import javax.cache.integration.CacheLoaderException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * SpyCache against a memcached node injecting faults
+ *
+ * @author linux_china
+ */
+public class FaultInjectingMemcachedTest {
+    private static FaultInjectingMemcached node;
+    private static CacheManager cacheManager;
+    private static Cache<String, String> cache;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        node = new FaultInjectingMemcached(11411);
+        node.start();
+        cacheManager = new SpyCachingProvider().getCacheManager(URI.create("cache:memcached:localhost:11411"), null);
+        cache = cacheManager.createCache("faults", new SpyMutableConfiguration<String, String>());
+    }
+
+    @After
+    public void clearFaults() {
+        node.reset();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        cacheManager.close();
+        node.stop();
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        cache.put("latency", "value");
+        node.setLatency(100, 20);
+        long start = System.nanoTime();
+        assertEquals("value", cache.get("latency"));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("get took " + elapsedMillis + " ms", elapsedMillis >= 100);
+    }
+
+    @Test
+    public void testItemSizeError() throws Exception {
+        node.setMaxItemSize(1000);
+        char[] chars = new char[2000];
+        Arrays.fill(chars, 'x');
+        cache.put("large", new String(chars));
+        awaitValue("small", "value");
+        assertNull(cache.get("large"));
+        assertTrue(node.getInjectedErrors() > 0);
+    }
+
+    @Test
+    public void testDisconnect() throws Exception {
+        cache.put("disconnect", "value");
+        node.disconnect();
+        awaitValue("disconnect", "value");
+    }
+
+    @Test
+    public void testDroppedPackets() throws Exception {
+        cache.put("drop", "value");
+        node.setDropRate(1, 50);
+        long start = System.nanoTime();
+        assertEquals("value", cache.get("drop"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        assertTrue(node.getDroppedPackets() > 0);
+    }
+
+    @Test
+    public void testTouchExtendsExpiry() throws Exception {
+        SpyMutableConfiguration<String, String> configuration = new SpyMutableConfiguration<String, String>()
+                .setTouchIntervalMillis(100).setTouchFlushIntervalMillis(50);
+        configuration.setExpiryPolicyFactory(AccessedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, 3)));
+        Cache<String, String> accessed = cacheManager.createCache("touched", configuration);
+        TouchScheduler touchScheduler = accessed.unwrap(SpyCache.class).getTouchScheduler();
+        long start = System.currentTimeMillis();
+        accessed.put("key", "value");
+        accessed.put("untouched", "value");
+        //memcached expiries are in whole seconds, the untouched item expires between 3 and 4 seconds after the put
+        Thread.sleep(2000);
+        assertEquals("value", accessed.get("key"));
+        for (int i = 0; i < 50 && (node.getTouches() == 0 || touchScheduler.getSent() == 0); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, touchScheduler.getSent());
+        assertEquals(1, node.getTouches());
+        //the touched item expires at least 5 seconds after the put
+        Thread.sleep(Math.max(0, start + 4500 - System.currentTimeMillis()));
+        MemcachedClient client = accessed.unwrap(MemcachedClient.class);
+        assertNull(client.get("touched$untouched"));
+        assertEquals("value", client.get("touched$key"));
+        cacheManager.destroyCache("touched");
+    }
+
+    @Test
+    public void testHedgedReads() throws Exception {
+        SpyMutableConfiguration<String, String> configuration = new SpyMutableConfiguration<String, String>()
+                .setLatencyBudgetPercentile(99).setLatencyBudgetMinMillis(50).setLatencyBudgetMaxMillis(100);
+        configuration.setStatisticsEnabled(true);
+        Cache<String, String> miss = cacheManager.createCache("hedgedMiss", configuration);
+        configuration.setReadThrough(true).setCacheLoaderFactory(new Factory<CacheLoader<String, String>>() {
+            private static final long serialVersionUID = -3015278563471125462L;
+
+            @Override
+            public CacheLoader<String, String> create() {
+                return new CacheLoader<String, String>() {
+                    @Override
+                    public String load(String key) throws CacheLoaderException {
+                        return "loaded";
+                    }
+
+                    @Override
+                    public Map<String, String> loadAll(Iterable<? extends String> keys) throws CacheLoaderException {
+                        return Collections.emptyMap();
+                    }
+                };
+            }
+        });
+        Cache<String, String> loading = cacheManager.createCache("hedged", configuration);
+        miss.put("key", "cached");
+        loading.put("key", "cached");
+        //answered within the budget, not hedged
+        assertEquals("cached", miss.get("key"));
+        assertEquals("cached", loading.get("key"));
+        node.setLatency(500, 0);
+        long start = System.nanoTime();
+        //the budget is exceeded, the loader wins the hedge, without loader it is a miss
+        assertEquals("loaded", loading.get("key"));
+        assertNull(miss.get("key"));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("hedged gets took " + elapsedMillis + " ms", elapsedMillis < 500);
+        SpyCache<?, ?> hedged = loading.unwrap(SpyCache.class);
+        SpyCache<?, ?> missing = miss.unwrap(SpyCache.class);
+        assertEquals(1, hedged.getCacheStatisticsMXBean().getCacheHedges());
+        assertEquals(1, hedged.getCacheStatisticsMXBean().getCacheHedgeWins());
+        assertEquals(1, missing.getCacheStatisticsMXBean().getCacheHedges());
+        assertEquals(0, missing.getCacheStatisticsMXBean().getCacheHedgeWins());
+        node.setLatency(0, 0);
+        cacheManager.destroyCache("hedged");
+        cacheManager.destroyCache("hedgedMiss");
+    }
+
+    @Test
+    public void testInFlightReject() throws Exception {
+        Cache<String, String> rejecting = createInFlightCache("inFlightReject", 2, OverflowPolicy.REJECT);
+        InFlightLimiter limiter = rejecting.unwrap(SpyCache.class).getInFlightLimiter();
+        node.setStalled(true);
+        rejecting.put("first", "value");
+        rejecting.put("second", "value");
+        assertEquals(2, limiter.getInFlight());
+        try {
+            rejecting.put("third", "value");
+            fail("put beyond the limit should be rejected");
+        } catch (CacheException expected) {
+        }
+        assertEquals(1, limiter.getRejections());
+        node.setStalled(false);
+        awaitInFlight(limiter, 0);
+        cacheManager.destroyCache("inFlightReject");
+    }
+
+    @Test
+    public void testInFlightBlock() throws Exception {
+        Cache<String, String> blocking = createInFlightCache("inFlightBlock", 1, OverflowPolicy.BLOCK);
+        InFlightLimiter limiter = blocking.unwrap(SpyCache.class).getInFlightLimiter();
+        node.setStalled(true);
+        blocking.put("first", "value");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                node.setStalled(false);
+            }
+        }, 200, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        //waits for the response of the first put
+        blocking.put("second", "value");
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("put blocked " + elapsedMillis + " ms", elapsedMillis >= 150);
+        assertEquals(0, limiter.getRejections());
+        awaitInFlight(limiter, 0);
+        assertEquals("value", blocking.get("second"));
+        scheduler.shutdown();
+        cacheManager.destroyCache("inFlightBlock");
+    }
+
+    @Test
+    public void testInFlightDropOldest() throws Exception {
+        Cache<String, String> dropping = createInFlightCache("inFlightDropOldest", 1, OverflowPolicy.DROP_OLDEST);
+        InFlightLimiter limiter = dropping.unwrap(SpyCache.class).getInFlightLimiter();
+        node.setStalled(true);
+        dropping.put("first", "value");
+        long start = System.nanoTime();
+        //cancels the first put instead of waiting for it
+        dropping.put("second", "value");
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("put blocked " + elapsedMillis + " ms", elapsedMillis < 1000);
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getRejections());
+        node.setStalled(false);
+        awaitInFlight(limiter, 0);
+        cacheManager.destroyCache("inFlightDropOldest");
+    }
+
+    @Test
+    public void testInFlightReleaseOnFailure() throws Exception {
+        Cache<String, String> limited = createInFlightCache("inFlightFailure", 1, OverflowPolicy.REJECT);
+        InFlightLimiter limiter = limited.unwrap(SpyCache.class).getInFlightLimiter();
+        //the client refuses a key longer than 250 bytes before sending it
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'k');
+        try {
+            limited.put(new String(chars), "value");
+            fail("put of a too long key should fail");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, limiter.getInFlight());
+        //the node answers SERVER_ERROR, the failed operation completes and releases its permit
+        node.setMaxItemSize(100);
+        Arrays.fill(chars, 'x');
+        limited.put("large", new String(chars));
+        awaitInFlight(limiter, 0);
+        limited.put("small", "value");
+        awaitInFlight(limiter, 0);
+        assertEquals(0, limiter.getRejections());
+        cacheManager.destroyCache("inFlightFailure");
+    }
+
+    private static Cache<String, String> createInFlightCache(String cacheName, int limit, OverflowPolicy policy) {
+        return cacheManager.createCache(cacheName, new SpyMutableConfiguration<String, String>()
+                .setMaxInFlightOperations(limit).setInFlightOverflowPolicy(policy));
+    }
+
+    private static void awaitInFlight(InFlightLimiter limiter, int inFlight) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (limiter.getInFlight() != inFlight) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError(limiter.getInFlight() + " operations in flight, expected " + inFlight);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * put until the value can be read back, the client reconnects after an error or a disconnect
+     */
+    private static void awaitValue(String key, String value) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                cache.put(key, value);
+                if (value.equals(cache.get(key))) {
+                    return;
+                }
+            } catch (RuntimeException ignore) {
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError(key + " not readable within 10 seconds");
+    }
+}
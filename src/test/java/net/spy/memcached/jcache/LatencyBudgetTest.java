@@ -0,0 +1,50 @@
+package net.spy.memcached.jcache;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * latency budget test
+ */
+public class LatencyBudgetTest {
+    private static final Executor INLINE = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void testRecoveryAfterLatencyStep() {
+        LatencyBudget budget = new LatencyBudget(99, 1, 1000, INLINE);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), budget.getBudgetNanos());
+        //a fast period pins the budget at the lower bound
+        for (int i = 0; i < 1024; i++) {
+            get(budget, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), budget.getBudgetNanos());
+        //the node slows down, the timeouts push the budget up until the gets fit again
+        long slow = TimeUnit.MILLISECONDS.toNanos(50);
+        for (int i = 0; i < 4096; i++) {
+            get(budget, slow);
+        }
+        assertTrue(budget.getBudgetNanos() >= slow);
+        assertTrue(budget.getBudgetNanos() <= 2 * slow);
+    }
+
+    /**
+     * a get of the specified latency waiting within the budget, as SpyCache does
+     */
+    private static void get(LatencyBudget budget, long latency) {
+        long current = budget.getBudgetNanos();
+        if (latency <= current) {
+            budget.record(latency);
+        } else {
+            budget.recordTimeout(current);
+        }
+    }
+}
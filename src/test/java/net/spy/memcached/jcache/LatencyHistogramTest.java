@@ -0,0 +1,50 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.jcache.management.LatencyHistogram;
+import net.spy.memcached.jcache.management.LatencySnapshot;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * latency histogram test
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram("get");
+        //1 to 1000 microseconds
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getPercentile50(), 500 * 0.04);
+        assertEquals(990, histogram.getPercentile99(), 990 * 0.04);
+        assertEquals(1000, histogram.getMax(), 0.001);
+        LatencySnapshot first = histogram.takeIntervalSnapshot();
+        assertEquals(1000, first.getCount());
+        histogram.record(5000000L);
+        LatencySnapshot second = histogram.takeIntervalSnapshot();
+        assertEquals(1, second.getCount());
+        assertEquals(5000, second.getPercentile50(), 5000 * 0.04);
+        assertEquals(5000, second.getMax(), 0.001);
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("put");
+        histogram.record(2000);
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        ObjectName objectName = new ObjectName("javax.cache:type=CacheLatency,Operation=put");
+        mBeanServer.registerMBean(histogram, objectName);
+        assertEquals(1L, mBeanServer.getAttribute(objectName, "Count"));
+        CompositeData snapshot = (CompositeData) mBeanServer.invoke(objectName, "takeIntervalSnapshot", null, null);
+        assertEquals(1L, snapshot.get("count"));
+    }
+}
@@ -0,0 +1,59 @@
+package net.spy.memcached.jcache;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * node circuit breaker test
+ *
+ * @author linux_china
+ */
+public class NodeCircuitBreakerTest {
+
+    @Test
+    public void testTripAndProbe() throws Exception {
+        NodeCircuitBreaker breaker = new NodeCircuitBreaker(new InetSocketAddress("localhost", 11211), 50, 4, 10000, 50);
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordTimeout();
+        assertEquals("CLOSED", breaker.getState());
+        breaker.recordFailure();
+        assertEquals("OPEN", breaker.getState());
+        assertFalse(breaker.allowRequest());
+        Thread.sleep(60);
+        //only one probe in half open state
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals("CLOSED", breaker.getState());
+        assertEquals(1, breaker.getTrips());
+        assertEquals(2, breaker.getRejections());
+    }
+
+    @Test
+    public void testLostProbe() throws Exception {
+        NodeCircuitBreaker breaker = new NodeCircuitBreaker(new InetSocketAddress("localhost", 11211), 50, 1, 10000, 50);
+        long issuedBeforeTrip = System.currentTimeMillis();
+        breaker.recordFailure();
+        assertEquals("OPEN", breaker.getState());
+        Thread.sleep(60);
+        //a released probe lets the next request probe
+        assertTrue(breaker.allowRequest());
+        breaker.releaseProbe();
+        assertTrue(breaker.allowRequest());
+        //a late success of a request issued before the probe does not close the breaker
+        breaker.recordSuccess(issuedBeforeTrip);
+        assertEquals("HALF_OPEN", breaker.getState());
+        assertFalse(breaker.allowRequest());
+        //a probe without outcome expires after the open period
+        Thread.sleep(60);
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals("CLOSED", breaker.getState());
+    }
+}
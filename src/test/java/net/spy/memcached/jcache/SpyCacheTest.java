@@ -7,6 +7,13 @@ import com.thimbleware.jmemcached.MemCacheDaemon;
 import com.thimbleware.jmemcached.storage.CacheStorage;
 import com.thimbleware.jmemcached.storage.hash.ConcurrentLinkedHashMap;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.jcache.event.CacheEntryListenerExecutor;
+import net.spy.memcached.jcache.management.HotKey;
+import net.spy.memcached.jcache.management.PayloadStatistics;
+import net.spy.memcached.jcache.management.SlowOperation;
+import net.spy.memcached.jcache.metrics.CacheMetrics;
+import net.spy.memcached.jcache.metrics.MetricsSink;
+import net.spy.memcached.jcache.metrics.MetricsSnapshot;
 import net.spy.memcached.jcache.spi.SpyCachingProvider;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -15,12 +22,38 @@ import org.junit.Test;
 import javax.cache.Cache;
 import javax.cache.CacheManager;
 import javax.cache.configuration.Factory;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
 import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.expiry.AccessedExpiryPolicy;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
 import javax.cache.integration.CacheLoader;
 import javax.cache.integration.CacheLoaderException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Spy Cache test
@@ -52,7 +85,7 @@ public class SpyCacheTest {
         MemcachedClient memcacheClient = cache.unwrap(MemcachedClient.class);
         Object object = memcacheClient.get("user$1");
         System.out.println("Client:" + object);
-        Map<Integer, Object> store = cache.unwrap(Map.class);
+        Map<?, ?> store = cache.unwrap(Map.class);
         System.out.println("Map:" + store.get(1));
     }
 
@@ -61,6 +94,8 @@ public class SpyCacheTest {
         MutableConfiguration<String, String> configuration = new MutableConfiguration<String, String>();
         configuration.setReadThrough(true);
         configuration.setCacheLoaderFactory(new Factory<CacheLoader<String, String>>() {
+            private static final long serialVersionUID = -6127302284547746288L;
+
             @Override
             public CacheLoader<String, String> create() {
                 return new CacheLoader<String, String>() {
@@ -70,7 +105,7 @@ public class SpyCacheTest {
                     }
 
                     @Override
-                    public Map<String, String> loadAll(Iterable keys) throws CacheLoaderException {
+                    public Map<String, String> loadAll(Iterable<? extends String> keys) throws CacheLoaderException {
                         return null;
                     }
                 };
@@ -80,6 +115,506 @@ public class SpyCacheTest {
         System.out.println(cache.get("1"));
     }
 
+    @Test
+    public void testBatchedGets() throws Exception {
+        SpyMutableConfiguration<Integer, String> configuration = new SpyMutableConfiguration<Integer, String>();
+        configuration.setGetBatchWindowMicros(500).setGetBatchSize(16);
+        final Cache<Integer, String> cache = cacheManager.createCache("batched", configuration);
+        MemcachedClient memcacheClient = cache.unwrap(MemcachedClient.class);
+        for (int i = 0; i < 100; i++) {
+            memcacheClient.set("batched$" + i, 0, "value" + i).get();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 100; i++) {
+            final int key = i;
+            futures.add(executor.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return cache.get(key);
+                }
+            }));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value" + i, futures.get(i).get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBatchedLoads() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final List<Integer> batches = new CopyOnWriteArrayList<Integer>();
+        SpyMutableConfiguration<String, String> configuration = new SpyMutableConfiguration<String, String>()
+                .setLoaderBatchWindowMicros(200000).setLoaderBatchSize(64);
+        configuration.setReadThrough(true).setCacheLoaderFactory(new Factory<CacheLoader<String, String>>() {
+            private static final long serialVersionUID = 7204318655420945786L;
+
+            @Override
+            public CacheLoader<String, String> create() {
+                return new CacheLoader<String, String>() {
+                    @Override
+                    public String load(String key) throws CacheLoaderException {
+                        loads.incrementAndGet();
+                        return "loaded" + key;
+                    }
+
+                    @Override
+                    public Map<String, String> loadAll(Iterable<? extends String> keys) throws CacheLoaderException {
+                        Map<String, String> values = new HashMap<String, String>();
+                        for (String key : keys) {
+                            values.put(key, "loaded" + key);
+                        }
+                        batches.add(values.size());
+                        return values;
+                    }
+                };
+            }
+        });
+        final Cache<String, String> cache = cacheManager.createCache("batchedLoads", configuration);
+        //concurrent misses of different keys within the window are loaded together
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 8; i++) {
+            final String key = "key" + i;
+            futures.add(executor.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return cache.get(key);
+                }
+            }));
+        }
+        for (int i = 0; i < 8; i++) {
+            assertEquals("loadedkey" + i, futures.get(i).get());
+        }
+        executor.shutdown();
+        assertEquals(0, loads.get());
+        assertEquals(Collections.singletonList(8), batches);
+        //the loaded values are written back
+        MemcachedClient memcacheClient = cache.unwrap(MemcachedClient.class);
+        for (int i = 0; i < 50 && memcacheClient.get("batchedLoads$key7") == null; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals("loadedkey7", memcacheClient.get("batchedLoads$key7"));
+        cacheManager.destroyCache("batchedLoads");
+    }
+
+    @Test
+    public void testBulkEvents() throws Exception {
+        final List<Integer> batches = new CopyOnWriteArrayList<Integer>();
+        final CacheEntryUpdatedListener<Integer, String> listener = new CacheEntryUpdatedListener<Integer, String>() {
+            @Override
+            public void onUpdated(Iterable<CacheEntryEvent<? extends Integer, ? extends String>> events) {
+                int size = 0;
+                for (CacheEntryEvent<? extends Integer, ? extends String> ignored : events) {
+                    size++;
+                }
+                batches.add(size);
+            }
+        };
+        MutableConfiguration<Integer, String> configuration = new MutableConfiguration<Integer, String>();
+        configuration.addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<Integer, String>(
+                new Factory<CacheEntryListener<? super Integer, ? super String>>() {
+                    private static final long serialVersionUID = 1910663505691948949L;
+
+                    @Override
+                    public CacheEntryListener<? super Integer, ? super String> create() {
+                        return listener;
+                    }
+                }, null, false, true));
+        Cache<Integer, String> cache = cacheManager.createCache("bulkEvents", configuration);
+        Map<Integer, String> values = new HashMap<Integer, String>();
+        for (int i = 0; i < 10; i++) {
+            values.put(i, "value" + i);
+        }
+        cache.putAll(values);
+        assertEquals(Collections.singletonList(10), batches);
+    }
+
+    @Test
+    public void testListenerDelivery() throws Exception {
+        final Thread caller = Thread.currentThread();
+        final List<String> asynchronous = new CopyOnWriteArrayList<String>();
+        final List<Thread> asynchronousThreads = new CopyOnWriteArrayList<Thread>();
+        final List<String> synchronous = new CopyOnWriteArrayList<String>();
+        final List<Thread> synchronousThreads = new CopyOnWriteArrayList<Thread>();
+        final CacheEntryUpdatedListener<Integer, String> asynchronousListener = new CacheEntryUpdatedListener<Integer, String>() {
+            @Override
+            public void onUpdated(Iterable<CacheEntryEvent<? extends Integer, ? extends String>> events) {
+                for (CacheEntryEvent<? extends Integer, ? extends String> event : events) {
+                    asynchronous.add(event.getValue());
+                    asynchronousThreads.add(Thread.currentThread());
+                }
+            }
+        };
+        final CacheEntryUpdatedListener<Integer, String> synchronousListener = new CacheEntryUpdatedListener<Integer, String>() {
+            @Override
+            public void onUpdated(Iterable<CacheEntryEvent<? extends Integer, ? extends String>> events) {
+                for (CacheEntryEvent<? extends Integer, ? extends String> event : events) {
+                    synchronous.add(event.getValue());
+                    synchronousThreads.add(Thread.currentThread());
+                }
+            }
+        };
+        MutableConfiguration<Integer, String> configuration = new MutableConfiguration<Integer, String>();
+        configuration.addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<Integer, String>(
+                new Factory<CacheEntryListener<? super Integer, ? super String>>() {
+                    private static final long serialVersionUID = -2651876303394021587L;
+
+                    @Override
+                    public CacheEntryListener<? super Integer, ? super String> create() {
+                        return asynchronousListener;
+                    }
+                }, null, false, false));
+        configuration.addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<Integer, String>(
+                new Factory<CacheEntryListener<? super Integer, ? super String>>() {
+                    private static final long serialVersionUID = 5584927331709460132L;
+
+                    @Override
+                    public CacheEntryListener<? super Integer, ? super String> create() {
+                        return synchronousListener;
+                    }
+                }, null, false, true));
+        Cache<Integer, String> cache = cacheManager.createCache("listenerDelivery", configuration);
+        MemcachedClient memcacheClient = cache.unwrap(MemcachedClient.class);
+        //more events than one drain of the listener queue delivers
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            cache.put(1, "value" + i);
+            //wait for the set, jmemcached misreads a long pipeline of sets and the client reconnects
+            memcacheClient.get("listenerDelivery$1");
+            expected.add("value" + i);
+            //the synchronous listener is notified before put returns, on the caller thread
+            assertEquals(i + 1, synchronous.size());
+        }
+        assertEquals(expected, synchronous);
+        for (Thread thread : synchronousThreads) {
+            assertEquals(caller, thread);
+        }
+        for (int i = 0; i < 100 && asynchronous.size() < expected.size(); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, asynchronous);
+        for (Thread thread : asynchronousThreads) {
+            assertTrue(thread != caller);
+        }
+        cacheManager.destroyCache("listenerDelivery");
+    }
+
+    @Test
+    public void testListenerWritingToItsCache() throws Exception {
+        SpyCachingProvider provider = new SpyCachingProvider();
+        CacheManager manager = provider.getCacheManager(URI.create("cache:memcached:localhost:11211?listenerQueueSize=2&listenerThreads=1"), null);
+        final AtomicReference<Cache<Integer, Integer>> cacheReference = new AtomicReference<Cache<Integer, Integer>>();
+        final AtomicInteger notified = new AtomicInteger();
+        final CacheEntryUpdatedListener<Integer, Integer> listener = new CacheEntryUpdatedListener<Integer, Integer>() {
+            @Override
+            public void onUpdated(Iterable<CacheEntryEvent<? extends Integer, ? extends Integer>> events) {
+                for (CacheEntryEvent<? extends Integer, ? extends Integer> event : events) {
+                    notified.incrementAndGet();
+                    //every event writes back more events than the queue holds
+                    if (event.getValue() < 3) {
+                        for (int i = 0; i < 4; i++) {
+                            cacheReference.get().put(event.getKey() * 10 + i, event.getValue() + 1);
+                        }
+                    }
+                }
+            }
+        };
+        MutableConfiguration<Integer, Integer> configuration = new MutableConfiguration<Integer, Integer>();
+        configuration.addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<Integer, Integer>(
+                new Factory<CacheEntryListener<? super Integer, ? super Integer>>() {
+                    private static final long serialVersionUID = 3870254119856431709L;
+
+                    @Override
+                    public CacheEntryListener<? super Integer, ? super Integer> create() {
+                        return listener;
+                    }
+                }, null, false, false));
+        Cache<Integer, Integer> cache = manager.createCache("writingListener", configuration);
+        cacheReference.set(cache);
+        CacheEntryListenerExecutor<?, ?> executor = cache.unwrap(SpyCache.class).getListenerExecutor();
+        cache.put(1, 0);
+        //the listener does not wait for room in its own queue, the deliveries it can not queue are dropped
+        for (int i = 0; i < 100 && (executor.getPending() > 0 || executor.getDelivered() + executor.getDropped() < notified.get()); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, executor.getPending());
+        assertTrue(executor.getDropped() > 0);
+        assertTrue(notified.get() > 1);
+        manager.close();
+    }
+
+    @Test
+    public void testLocalInvalidationBus() throws Exception {
+        SpyCachingProvider provider = new SpyCachingProvider();
+        CacheManager publisher = provider.getCacheManager(URI.create("cache:memcached:localhost:11211?invalidationBus=local&invalidationGroup=test"), null);
+        CacheManager subscriber = provider.getCacheManager(URI.create("cache:memcached:localhost:11211?invalidationBus=local&invalidationGroup=test&node=2"), null);
+        final List<String> received = new CopyOnWriteArrayList<String>();
+        final CacheEntryRemovedListener<String, String> listener = new CacheEntryRemovedListener<String, String>() {
+            @Override
+            public void onRemoved(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+                for (CacheEntryEvent<? extends String, ? extends String> event : events) {
+                    received.add(event.getKey());
+                }
+            }
+        };
+        MutableConfiguration<String, String> configuration = new MutableConfiguration<String, String>();
+        configuration.addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<String, String>(
+                new Factory<CacheEntryListener<? super String, ? super String>>() {
+                    private static final long serialVersionUID = -4264529737674875213L;
+
+                    @Override
+                    public CacheEntryListener<? super String, ? super String> create() {
+                        return listener;
+                    }
+                }, null, false, true));
+        subscriber.createCache("invalidated", configuration);
+        Cache<String, String> cache = publisher.createCache("invalidated", new MutableConfiguration<String, String>());
+        cache.remove("jacky");
+        assertEquals(Collections.singletonList("jacky"), received);
+        publisher.close();
+        subscriber.close();
+    }
+
+    @Test
+    public void testHotKeys() throws Exception {
+        SpyMutableConfiguration<String, String> configuration = new SpyMutableConfiguration<String, String>()
+                .setHotKeyTopK(2).setHotKeySamplePeriod(1);
+        Cache<String, String> cache = cacheManager.createCache("hotKeys", configuration);
+        for (int i = 0; i < 100; i++) {
+            cache.get("hot");
+            cache.get("cold" + i);
+        }
+        HotKeyTracker tracker = cache.unwrap(SpyCache.class).getHotKeyTracker();
+        tracker.rotate();
+        assertEquals("hotKeys$hot", tracker.getHotKeys().get(0).getKey());
+        assertTrue(tracker.getHotKeys().get(0).getNode().endsWith(":11211"));
+    }
+
+    @Test
+    public void testHotKeysSampledPerCache() throws Exception {
+        SpyMutableConfiguration<String, String> configuration = new SpyMutableConfiguration<String, String>()
+                .setHotKeyTopK(2).setHotKeySamplePeriod(2);
+        Cache<String, String> first = cacheManager.createCache("hotKeysFirst", configuration);
+        Cache<String, String> second = cacheManager.createCache("hotKeysSecond", configuration);
+        //the accesses alternate between the caches in step with the sample period
+        for (int i = 0; i < 200; i++) {
+            first.get("hot");
+            second.get("hot");
+        }
+        List<HotKey> firstKeys = first.unwrap(SpyCache.class).getHotKeyTracker().getCurrentHotKeys();
+        List<HotKey> secondKeys = second.unwrap(SpyCache.class).getHotKeyTracker().getCurrentHotKeys();
+        assertEquals("hotKeysFirst$hot", firstKeys.get(0).getKey());
+        assertEquals("hotKeysSecond$hot", secondKeys.get(0).getKey());
+        cacheManager.destroyCache("hotKeysFirst");
+        cacheManager.destroyCache("hotKeysSecond");
+    }
+
+    @Test
+    public void testPayloadStatistics() throws Exception {
+        MutableConfiguration<String, String> configuration = new MutableConfiguration<String, String>().setStatisticsEnabled(true);
+        Cache<String, String> cache = cacheManager.createCache("payload", configuration);
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+        PayloadStatistics statistics = cache.unwrap(SpyCache.class).getCacheStatisticsMXBean().getPayloadStatistics();
+        assertEquals(1, statistics.getValuesWritten());
+        assertEquals(1, statistics.getValuesRead());
+        assertEquals("value".length(), statistics.getMaxValueSize());
+        assertEquals("payload$key".length(), statistics.getMaxKeyLength());
+    }
+
+    @Test
+    public void testPayloadStatisticsOfStampedValues() throws Exception {
+        SpyMutableConfiguration<String, String> configuration = new SpyMutableConfiguration<String, String>().setEarlyRecomputeBeta(1);
+        configuration.setStatisticsEnabled(true).setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(Duration.ONE_MINUTE));
+        Cache<String, String> cache = cacheManager.createCache("stampedPayload", configuration);
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+        PayloadStatistics statistics = cache.unwrap(SpyCache.class).getCacheStatisticsMXBean().getPayloadStatistics();
+        //the stored value carries the expiry and compute time of the stamp
+        assertEquals("value".length() + 12, statistics.getMaxValueSize());
+        assertEquals(2 * ("value".length() + 12), statistics.getBytesWritten() + statistics.getBytesRead());
+        cacheManager.destroyCache("stampedPayload");
+    }
+
+    @Test
+    public void testMetricsSink() throws Exception {
+        SpyCachingProvider provider = new SpyCachingProvider();
+        SpyCacheManager manager = provider.getCacheManager(URI.create("cache:memcached:localhost:11211?platformMBeanServer=true&metricsIntervalMillis=600000"), null)
+                .unwrap(SpyCacheManager.class);
+        final List<MetricsSnapshot> snapshots = new CopyOnWriteArrayList<MetricsSnapshot>();
+        manager.addMetricsSink(new MetricsSink() {
+            @Override
+            public void publish(MetricsSnapshot snapshot) {
+                snapshots.add(snapshot);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        Cache<String, String> cache = manager.createCache("metrics", new MutableConfiguration<String, String>().setStatisticsEnabled(true));
+        manager.enableStatistics("metrics", true);
+        cache.get("missing");
+        manager.getMetricsReporter().report();
+        CacheMetrics metrics = snapshots.get(0).getCaches().get(0);
+        assertEquals("metrics", metrics.getCacheName());
+        assertEquals(1L, metrics.getCounters().get("CacheMisses"));
+        assertEquals(1L, metrics.getLatencies().get("get").getCount());
+        MBeanServer platformMBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName statistics = new ObjectName("javax.cache:type=CacheStatistics,*");
+        assertEquals(1, platformMBeanServer.queryNames(statistics, null).size());
+        manager.close();
+        assertEquals(0, platformMBeanServer.queryNames(statistics, null).size());
+    }
+
+    @Test
+    public void testSlowOperationLog() throws Exception {
+        final List<SlowOperation> logged = new CopyOnWriteArrayList<SlowOperation>();
+        SpyMutableConfiguration<String, String> configuration = new SpyMutableConfiguration<String, String>()
+                .setSlowOperationThresholdMillis(40)
+                .setSlowOperationListener(new SlowOperationListener() {
+                    @Override
+                    public void onSlowOperation(String cacheName, SlowOperation operation) {
+                        logged.add(operation);
+                    }
+                });
+        configuration.setReadThrough(true).setCacheLoaderFactory(new Factory<CacheLoader<String, String>>() {
+            private static final long serialVersionUID = 8599527494078412071L;
+
+            @Override
+            public CacheLoader<String, String> create() {
+                return new CacheLoader<String, String>() {
+                    @Override
+                    public String load(String key) throws CacheLoaderException {
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            throw new CacheLoaderException(e);
+                        }
+                        return "slow";
+                    }
+
+                    @Override
+                    public Map<String, String> loadAll(Iterable<? extends String> keys) throws CacheLoaderException {
+                        return Collections.emptyMap();
+                    }
+                };
+            }
+        });
+        Cache<String, String> cache = cacheManager.createCache("slowOperations", configuration);
+        assertEquals("slow", cache.get("key"));
+        SlowOperationLog log = cache.unwrap(SpyCache.class).getSlowOperationLog();
+        assertEquals(1, log.getSlowOperationCount());
+        SlowOperation operation = log.getSlowOperations().get(0);
+        assertEquals("load", operation.getOperation());
+        assertEquals("slowOperations$key", operation.getKey());
+        assertTrue(operation.getValueSize() > 0);
+        assertTrue(operation.getLatency() >= 100000);
+        assertEquals(Collections.singletonList(operation), logged);
+    }
+
+    @Test
+    public void testAccessedExpiry() throws Exception {
+        assertEquals(60, SpyCache.getExpiration(Duration.ONE_MINUTE));
+        assertEquals(1, SpyCache.getExpiration(new Duration(TimeUnit.MILLISECONDS, 10)));
+        assertEquals(0, SpyCache.getExpiration(Duration.ETERNAL));
+        assertTrue(SpyCache.getExpiration(new Duration(TimeUnit.DAYS, 60)) > System.currentTimeMillis() / 1000);
+        //jmemcached does not know touch, the touches are queued but never sent
+        SpyMutableConfiguration<String, String> configuration = new SpyMutableConfiguration<String, String>()
+                .setTouchFlushIntervalMillis(600000);
+        configuration.setExpiryPolicyFactory(AccessedExpiryPolicy.factoryOf(Duration.ONE_HOUR));
+        Cache<String, String> cache = cacheManager.createCache("accessedExpiry", configuration);
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+        assertEquals("value", cache.get("key"));
+        TouchScheduler touchScheduler = cache.unwrap(SpyCache.class).getTouchScheduler();
+        assertEquals(1, touchScheduler.getPending());
+        assertEquals(1, touchScheduler.getThrottled());
+        //the keys are throttled one by one, many keys are all queued
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(touchScheduler.touch("accessedExpiry$" + i, 3600));
+        }
+        assertEquals(5001, touchScheduler.getPending());
+        assertEquals(1, touchScheduler.getThrottled());
+        cacheManager.destroyCache("accessedExpiry");
+    }
+
+    @Test
+    public void testEarlyRecompute() throws Exception {
+        EarlyExpiration jitter = new EarlyExpiration(0, 0.1);
+        for (int i = 0; i < 100; i++) {
+            long seconds = jitter.jitter(1000);
+            assertTrue(seconds >= 900 && seconds <= 1000);
+        }
+        final AtomicInteger loads = new AtomicInteger();
+        //a huge beta recomputes on the first hit, it misses with a chance of 1 - exp(-60s / (20ms * beta))
+        SpyMutableConfiguration<String, String> configuration = new SpyMutableConfiguration<String, String>()
+                .setEarlyRecomputeBeta(100000000).setTtlJitter(0.1);
+        configuration.setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(Duration.ONE_MINUTE));
+        configuration.setReadThrough(true).setCacheLoaderFactory(new Factory<CacheLoader<String, String>>() {
+            private static final long serialVersionUID = 1347734609539908648L;
+
+            @Override
+            public CacheLoader<String, String> create() {
+                return new CacheLoader<String, String>() {
+                    @Override
+                    public String load(String key) throws CacheLoaderException {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            throw new CacheLoaderException(e);
+                        }
+                        return "loaded" + loads.incrementAndGet();
+                    }
+
+                    @Override
+                    public Map<String, String> loadAll(Iterable<? extends String> keys) throws CacheLoaderException {
+                        return Collections.emptyMap();
+                    }
+                };
+            }
+        });
+        Cache<String, String> cache = cacheManager.createCache("earlyRecompute", configuration);
+        assertEquals("loaded1", cache.get("key"));
+        //the stamped value is read back as the plain value and recomputed in the background
+        assertEquals("loaded1", cache.get("key"));
+        for (int i = 0; i < 50 && loads.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, loads.get());
+        assertTrue(cache.unwrap(SpyCache.class).getEarlyExpiration().getEarlyRecomputes() > 0);
+        cacheManager.destroyCache("earlyRecompute");
+        //the touches of an accessed expiry extend the expiry past the stamp, no early recompute
+        configuration.setExpiryPolicyFactory(AccessedExpiryPolicy.factoryOf(Duration.ONE_MINUTE));
+        //jmemcached does not know touch and would reset the shared connection, the touches are queued but never sent
+        configuration.setTouchFlushIntervalMillis(600000);
+        cache = cacheManager.createCache("earlyRecompute", configuration);
+        assertEquals("loaded3", cache.get("accessed"));
+        assertEquals("loaded3", cache.get("accessed"));
+        Thread.sleep(100);
+        assertEquals(3, loads.get());
+        assertEquals(0, cache.unwrap(SpyCache.class).getEarlyExpiration().getEarlyRecomputes());
+        cacheManager.destroyCache("earlyRecompute");
+    }
+
+    @Test
+    public void testNodeStats() throws Exception {
+        SpyCachingProvider provider = new SpyCachingProvider();
+        CacheManager manager = provider.getCacheManager(URI.create("cache:memcached:localhost:11211?nodeStats=true&nodeStatsIntervalMillis=600000&platformMBeanServer=true"), null);
+        NodeStatsPoller poller = manager.unwrap(SpyCacheManager.class).getNodeStatsPoller();
+        poller.poll();
+        NodeStats stats = poller.getNodeStats(new InetSocketAddress("localhost", 11211));
+        assertTrue(stats.isReachable());
+        assertTrue(stats.getStats().containsKey("get_hits"));
+        MBeanServer platformMBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName nodeStats = new ObjectName("javax.cache:type=CacheNodeStats,*");
+        assertEquals(1, platformMBeanServer.queryNames(nodeStats, null).size());
+        manager.close();
+        //a poll running past the close does not register the MXBeans again
+        poller.getNodeStats(new InetSocketAddress("localhost", 11211));
+        assertEquals(0, platformMBeanServer.queryNames(nodeStats, null).size());
+    }
+
     @Test
     public void testOperation() throws Exception {
         MemcachedClient c = new MemcachedClient(new InetSocketAddress("localhost", 11211));
@@ -0,0 +1,38 @@
+package net.spy.memcached.jcache;
+
+import net.spy.memcached.jcache.management.StripedCounter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * striped counter test
+ */
+public class StripedCounterTest {
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        counter.add(1);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(800000, counter.sum());
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+}
@@ -8,6 +8,7 @@ import java.io.Serializable;
  * @author linux_china
  */
 public class User implements Serializable {
+    private static final long serialVersionUID = 4989163452799510329L;
     private Integer id;
     private String name;
 
@@ -0,0 +1,127 @@
+package net.spy.memcached.jcache;
+
+import org.junit.Test;
+
+import javax.cache.Cache;
+import javax.cache.integration.CacheWriter;
+import javax.cache.integration.CacheWriterException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * write behind queue test
+ *
+ * @author linux_china
+ */
+public class WriteBehindQueueTest {
+
+    @Test
+    public void testCoalescingAndRetry() throws Exception {
+        final Map<String, String> store = new ConcurrentHashMap<String, String>();
+        final AtomicInteger writeAllCalls = new AtomicInteger();
+        CacheWriter<String, String> writer = new CacheWriter<String, String>() {
+            public void write(Cache.Entry<? extends String, ? extends String> entry) {
+                store.put(entry.getKey(), entry.getValue());
+            }
+
+            public void writeAll(Collection<Cache.Entry<? extends String, ? extends String>> entries) {
+                //the first call fails after writing one entry
+                boolean fail = writeAllCalls.incrementAndGet() == 1;
+                Iterator<Cache.Entry<? extends String, ? extends String>> iterator = entries.iterator();
+                while (iterator.hasNext()) {
+                    write(iterator.next());
+                    iterator.remove();
+                    if (fail) {
+                        throw new CacheWriterException("database unavailable");
+                    }
+                }
+            }
+
+            public void delete(Object key) {
+                store.remove(key);
+            }
+
+            public void deleteAll(Collection<?> keys) {
+                for (Object key : keys) {
+                    delete(key);
+                }
+                keys.clear();
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        WriteBehindQueue<String, String> queue = new WriteBehindQueue<String, String>(null, writer, 100, 60000, 1000, 3, 60000, 1000, scheduler);
+        queue.write("a", "1");
+        queue.write("a", "2");
+        queue.write("b", "1");
+        queue.write("c", "1");
+        queue.delete("c");
+        assertEquals(3, queue.getQueueSize());
+        assertEquals(2, queue.getCoalesced());
+        queue.flush();
+        assertEquals(1, queue.getRetries());
+        assertEquals(1, queue.getQueueSize());
+        //still in backoff
+        queue.flush();
+        assertEquals(1, queue.getQueueSize());
+        //close makes a last attempt
+        queue.close();
+        assertEquals(0, queue.getQueueSize());
+        assertEquals("2", store.get("a"));
+        assertEquals("1", store.get("b"));
+        assertFalse(store.containsKey("c"));
+        assertEquals(2, queue.getWrites());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testFullQueue() throws Exception {
+        final AtomicInteger writeAllCalls = new AtomicInteger();
+        CacheWriter<String, String> writer = new CacheWriter<String, String>() {
+            public void write(Cache.Entry<? extends String, ? extends String> entry) {
+                throw new CacheWriterException("database unavailable");
+            }
+
+            public void writeAll(Collection<Cache.Entry<? extends String, ? extends String>> entries) {
+                writeAllCalls.incrementAndGet();
+                throw new CacheWriterException("database unavailable");
+            }
+
+            public void delete(Object key) {
+                throw new CacheWriterException("database unavailable");
+            }
+
+            public void deleteAll(Collection<?> keys) {
+                throw new CacheWriterException("database unavailable");
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        WriteBehindQueue<String, String> queue = new WriteBehindQueue<String, String>(null, writer, 100, 60000, 2, 3, 60000, 50, scheduler);
+        queue.write("a", "1");
+        queue.write("b", "1");
+        //the full queue is flushed once by the caller, the failed keys stay in backoff instead of burning their retries
+        try {
+            queue.write("c", "1");
+            fail("the write should be rejected");
+        } catch (CacheWriterException expected) {
+        }
+        assertEquals(1, writeAllCalls.get());
+        assertEquals(2, queue.getRetries());
+        assertEquals(0, queue.getFailures());
+        assertEquals(1, queue.getRejections());
+        //a queued key is still coalesced
+        queue.write("a", "2");
+        assertEquals(2, queue.getQueueSize());
+        queue.close();
+        assertEquals(2, queue.getFailures());
+        scheduler.shutdown();
+    }
+}
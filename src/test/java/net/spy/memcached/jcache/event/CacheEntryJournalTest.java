@@ -0,0 +1,40 @@
+package net.spy.memcached.jcache.event;
+
+import net.spy.memcached.transcoders.SerializingTranscoder;
+import org.junit.Test;
+
+import javax.cache.event.EventType;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * cache entry journal test
+ */
+public class CacheEntryJournalTest {
+
+    @Test
+    public void testCursors() {
+        CacheEntryJournal<String> journal = new CacheEntryJournal<String>(4, 64, new SerializingTranscoder());
+        CacheEntryJournal<String>.Cursor oldest = journal.newCursorFromOldest();
+        journal.append("a", EventType.UPDATED);
+        CacheEntryJournal<String>.Cursor latest = journal.newCursor();
+        journal.append("b", EventType.REMOVED);
+        List<CacheEntryJournal.Entry<String>> entries = new ArrayList<CacheEntryJournal.Entry<String>>();
+        assertEquals(1, latest.read(entries, 10));
+        assertEquals("b", entries.get(0).getKey());
+        assertEquals(EventType.REMOVED, entries.get(0).getEventType());
+        assertEquals(1, entries.get(0).getSequence());
+        for (int i = 0; i < 5; i++) {
+            journal.append("c" + i, EventType.UPDATED);
+        }
+        //lapped: 7 appended in a buffer of 4
+        entries.clear();
+        assertEquals(4, oldest.read(entries, 10));
+        assertEquals(3, oldest.getMissed());
+        assertEquals("c1", entries.get(0).getKey());
+        assertEquals(0, oldest.getLag());
+        assertEquals(5, latest.getLag());
+    }
+}